@@ -32,6 +32,13 @@ android {
         targetCompatibility = JavaVersion.VERSION_11
     }
 
+    testOptions {
+        unitTests.all {
+            // Per-frame allocation budget of RecognitionAllocationTest: ./gradlew test -PallocationBudgetBytes=64
+            it.systemProperty("allocation.budget.bytes", project.findProperty("allocationBudgetBytes") ?: "0")
+        }
+    }
+
     packagingOptions {
         resources {
             excludes.addAll(listOf(
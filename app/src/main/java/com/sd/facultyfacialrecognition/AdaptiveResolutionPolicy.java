@@ -0,0 +1,92 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * AdaptiveResolutionPolicy picks the ImageAnalysis resolution from how large faces appear.
+ *
+ * A face is useful once it is about as tall as the 160 px FaceNet input. When faces are
+ * so large that they would still be that tall at the next lower resolution, the policy
+ * steps down; when they are smaller than MIN_FACE_PIXELS it steps up. Because a step
+ * halves or doubles the face size, the two conditions cannot both hold, and a change must
+ * persist for holdMillis, and rebinds are at least minRebindIntervalMillis apart, so the
+ * camera is not rebound over and over while someone walks up to the door.
+ *
+ * With no face in view for idleResetMillis the policy drifts back to the default tier.
+ * Not thread-safe: call from the analysis thread only.
+ */
+public class AdaptiveResolutionPolicy {
+
+    public static final int[][] TIERS = {{320, 240}, {640, 480}, {1280, 960}};
+    public static final int DEFAULT_TIER = 1;
+
+    // Face height (upright pixels) below which detection and alignment suffer
+    static final int MIN_FACE_PIXELS = 100;
+    // Face height we want at least once the resolution is lowered
+    static final int TARGET_FACE_PIXELS = FaceAlignment.OUTPUT_SIZE;
+
+    private final long holdMillis;
+    private final long minRebindIntervalMillis;
+    private final long idleResetMillis;
+
+    private int tier = DEFAULT_TIER;
+    private int pendingTier = -1;
+    private long pendingSinceMillis;
+    private long lastRebindMillis = Long.MIN_VALUE / 2;
+    private long lastFaceMillis;
+
+    public AdaptiveResolutionPolicy(long holdMillis, long minRebindIntervalMillis, long idleResetMillis) {
+        this.holdMillis = holdMillis;
+        this.minRebindIntervalMillis = minRebindIntervalMillis;
+        this.idleResetMillis = idleResetMillis;
+    }
+
+    /**
+     * Feeds the height of the largest face in this frame (0 when there is none) and
+     * returns the tier to rebind to, or -1 to keep the current one.
+     */
+    public int onFrame(float largestFaceHeight, long nowMillis) {
+        int wanted = tier;
+        if (largestFaceHeight > 0) {
+            lastFaceMillis = nowMillis;
+            float scaleDown = tier > 0 ? TIERS[tier - 1][1] / (float) TIERS[tier][1] : 0f;
+            if (tier > 0 && largestFaceHeight * scaleDown >= TARGET_FACE_PIXELS) {
+                wanted = tier - 1;
+            } else if (tier < TIERS.length - 1 && largestFaceHeight < MIN_FACE_PIXELS) {
+                wanted = tier + 1;
+            }
+        } else if (nowMillis - lastFaceMillis >= idleResetMillis) {
+            wanted = DEFAULT_TIER;
+        }
+
+        if (wanted == tier) {
+            pendingTier = -1;
+            return -1;
+        }
+        if (wanted != pendingTier) {
+            pendingTier = wanted;
+            pendingSinceMillis = nowMillis;
+            return -1;
+        }
+        if (nowMillis - pendingSinceMillis < holdMillis
+                || nowMillis - lastRebindMillis < minRebindIntervalMillis) {
+            return -1;
+        }
+
+        tier = wanted;
+        pendingTier = -1;
+        lastRebindMillis = nowMillis;
+        lastFaceMillis = nowMillis;
+        return tier;
+    }
+
+    public int getTier() {
+        return tier;
+    }
+
+    public static int getWidth(int tier) {
+        return TIERS[tier][0];
+    }
+
+    public static int getHeight(int tier) {
+        return TIERS[tier][1];
+    }
+}
@@ -37,16 +37,16 @@ import com.google.android.gms.common.api.ApiException;
 import com.google.android.gms.common.api.Scope;
 import com.google.android.gms.tasks.Task;
 import com.google.api.services.drive.DriveScopes;
-import com.google.gson.Gson;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -55,10 +55,18 @@ public class AdminActivity extends AppCompatActivity {
     private static final int REQUEST_CODE_SIGN_IN = 2001;
     private static final int REQUEST_CODE_PICK_IMAGES = 3001;
     private static final int REQUEST_CODE_PICK_LOCAL_IMAGES = 4001;
-    private static final int NUM_PHOTOS_TO_CAPTURE = 20;
+    private static final int REQUEST_CODE_EXPORT_BUNDLE = 5001;
+    private static final int REQUEST_CODE_IMPORT_BUNDLE = 6001;
+    private static final int DIVERSE_PHOTOS_TARGET = 12;
+    private static final float MIN_SIGNATURE_DISTANCE = 0.25f;
+    private static final long CAPTURE_TIMEOUT_MS = 30000;
     private static final long CAPTURE_INTERVAL_MS = 1;
+    // Dataset rebuild: a decode thread per core, ML Kit detections in flight, FaceNet batch size
+    private static final int ENROLL_DETECTORS = 3;
+    private static final int ENROLL_BATCH_SIZE = 8;
 
     private Button buttonAddFaculty, buttonDeleteFaculty, buttonImportDrive, buttonGenerateEmbeddings, buttonImportLocalImages;
+    private Button buttonExportBundle, buttonImportBundle, buttonExportTrace;
     private TextView textStatus;
     private PreviewView previewView;
     private ProgressBar progressBar;
@@ -66,12 +74,19 @@ public class AdminActivity extends AppCompatActivity {
     private String currentFacultyName;
     private File currentFacultyDir;
     private int photoCount = 0;
+    private int skippedSimilarCount = 0;
+    private final EnrollmentDiversityFilter diversityFilter =
+            new EnrollmentDiversityFilter(MIN_SIGNATURE_DISTANCE, DIVERSE_PHOTOS_TARGET, CAPTURE_TIMEOUT_MS);
+    private int[] signaturePixels;
+    private boolean exportIncludeCrops = true;
 
     private ImageCapture imageCapture;
     private ExecutorService cameraExecutor;
 
     private FaceAligner faceAligner;
     private FaceNet faceNet;
+    // The running dataset rebuild, main thread only
+    private EnrollmentPipeline enrollmentPipeline;
 
     private GoogleSignInClient googleSignInClient;
 
@@ -85,15 +100,18 @@ public class AdminActivity extends AppCompatActivity {
         buttonImportDrive = findViewById(R.id.buttonImportDrive);
         buttonGenerateEmbeddings = findViewById(R.id.buttonGenerateEmbeddings);
         buttonImportLocalImages = findViewById(R.id.buttonImportLocalImages);
+        buttonExportBundle = findViewById(R.id.buttonExportBundle);
+        buttonImportBundle = findViewById(R.id.buttonImportBundle);
+        buttonExportTrace = findViewById(R.id.buttonExportTrace);
         textStatus = findViewById(R.id.textStatus);
         previewView = findViewById(R.id.previewView);
         progressBar = findViewById(R.id.progressBar);
 
         cameraExecutor = Executors.newSingleThreadExecutor();
-        faceAligner = new FaceAligner(this);
+        faceAligner = new FaceAligner(FaceAligner.createDetector());
 
         try {
-            faceNet = new FaceNet(this, "facenet.tflite");
+            faceNet = new FaceNet(this, "facenet.tflite", ENROLL_BATCH_SIZE);
         } catch (Exception e) {
             e.printStackTrace();
             textStatus.setText("FaceNet model load failed!");
@@ -106,6 +124,9 @@ public class AdminActivity extends AppCompatActivity {
         buttonImportDrive.setOnClickListener(v -> promptFacultyNameForDriveImport());
         buttonGenerateEmbeddings.setOnClickListener(v -> generateEmbeddings());
         buttonImportLocalImages.setOnClickListener(v -> promptFacultyNameForLocalImport());
+        buttonExportBundle.setOnClickListener(v -> promptBundleExport());
+        buttonImportBundle.setOnClickListener(v -> openBundlePicker());
+        buttonExportTrace.setOnClickListener(v -> exportTrace());
     }
 
     // -------------------- Storage Permissions --------------------
@@ -208,53 +229,28 @@ public class AdminActivity extends AppCompatActivity {
 
     // -------------------- Remove Faculty from Embeddings --------------------
     private void removeFacultyFromEmbeddings(String facultyName) {
-        try {
-            File embeddingsFile = new File(
-                    getExternalFilesDir(Environment.DIRECTORY_PICTURES),
-                    "FacultyPhotos/embeddings.json"
-            );
+        File facultyRoot = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "FacultyPhotos");
 
+        // A migration in progress keeps its own copy; drop the faculty from both
+        for (String fileName : new String[]{FaceGallery.FILE_NAME, FaceGallery.PENDING_FILE_NAME}) {
+            File embeddingsFile = new File(facultyRoot, fileName);
             if (!embeddingsFile.exists()) {
-                Log.e("Embeddings", "Embeddings file not found!");
-                return;
-            }
-
-            // Read JSON file
-            StringBuilder jsonBuilder = new StringBuilder();
-            Scanner scanner = new Scanner(embeddingsFile);
-            while (scanner.hasNextLine()) {
-                jsonBuilder.append(scanner.nextLine());
-            }
-            scanner.close();
-
-            String jsonString = jsonBuilder.toString();
-            if (jsonString.isEmpty()) {
-                Log.e("Embeddings", "Embeddings file empty!");
-                return;
+                Log.d("Embeddings", "Embeddings file not found: " + fileName);
+                continue;
             }
 
-            // Parse and remove faculty entry
-            Gson gson = new Gson();
-            Map<String, List<float[]>> allEmbeddings = gson.fromJson(
-                    jsonString,
-                    new com.google.gson.reflect.TypeToken<Map<String, List<float[]>>>(){}.getType()
-            );
-
-            if (allEmbeddings != null && allEmbeddings.containsKey(facultyName)) {
-                allEmbeddings.remove(facultyName);
-                Log.d("Embeddings", "Removed faculty from embeddings: " + facultyName);
-
-                // Write updated JSON back
-                try (FileWriter writer = new FileWriter(embeddingsFile)) {
-                    gson.toJson(allEmbeddings, writer);
+            try {
+                FaceGallery gallery = FaceGallery.load(embeddingsFile);
+                if (gallery.remove(facultyName)) {
+                    gallery.save(embeddingsFile);
+                    Log.d("Embeddings", "Removed faculty from " + fileName + ": " + facultyName);
+                } else {
+                    Log.d("Embeddings", "Faculty not found in " + fileName + ": " + facultyName);
                 }
-            } else {
-                Log.d("Embeddings", "Faculty not found in embeddings: " + facultyName);
+            } catch (Exception e) {
+                Log.e("Embeddings", "Error removing faculty: " + e.getMessage());
+                e.printStackTrace();
             }
-
-        } catch (Exception e) {
-            Log.e("Embeddings", "Error removing faculty: " + e.getMessage());
-            e.printStackTrace();
         }
     }
 
@@ -274,6 +270,8 @@ public class AdminActivity extends AppCompatActivity {
                 cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture);
 
                 textStatus.setText("Camera ready. Capturing photos automatically...");
+                skippedSimilarCount = 0;
+                diversityFilter.start(System.currentTimeMillis());
                 captureNextPhoto();
             } catch (Exception e) {
                 textStatus.setText("Camera init failed: " + e.getMessage());
@@ -282,8 +280,18 @@ public class AdminActivity extends AppCompatActivity {
     }
 
     private void captureNextPhoto() {
-        if (photoCount >= NUM_PHOTOS_TO_CAPTURE) {
-            textStatus.setText("All photos captured for: " + currentFacultyName);
+        if (diversityFilter.isDone(System.currentTimeMillis())) {
+            if (photoCount == 0) {
+                textStatus.setText("Capture timed out. No face photos saved for: " + currentFacultyName);
+                return;
+            }
+            if (photoCount < DIVERSE_PHOTOS_TARGET) {
+                textStatus.setText("Capture timed out with " + photoCount + " of " + DIVERSE_PHOTOS_TARGET
+                        + " photos for: " + currentFacultyName + " (" + skippedSimilarCount + " similar frames skipped)");
+            } else {
+                textStatus.setText("All photos captured for: " + currentFacultyName + " (" + photoCount
+                        + " kept, " + skippedSimilarCount + " similar frames skipped)");
+            }
             Toast.makeText(this, "Photos ready. Press 'Update Dataset' to continue.", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -291,25 +299,44 @@ public class AdminActivity extends AppCompatActivity {
         imageCapture.takePicture(cameraExecutor, new ImageCapture.OnImageCapturedCallback() {
             @Override
             public void onCaptureSuccess(@NonNull ImageProxy imageProxy) {
+                long traceStart = TraceRecorder.GLOBAL.begin();
                 Bitmap bitmap = imageProxyToBitmap(imageProxy);
                 imageProxy.close();
+                TraceRecorder.GLOBAL.end("enroll: decode capture", traceStart);
 
                 if (bitmap == null) {
                     runOnUiThread(() -> textStatus.setText("Capture failed: empty image."));
                     return;
                 }
 
-                Bitmap faceBitmap = faceAligner.alignFace(bitmap);
-                if (faceBitmap == null) {
+                traceStart = TraceRecorder.GLOBAL.begin();
+                FaceAligner.AlignedCrop crop = faceAligner.alignCrop(bitmap);
+                TraceRecorder.GLOBAL.end("enroll: align face", traceStart);
+                if (crop == null) {
                     runOnUiThread(() -> textStatus.setText("No face detected, retrying..."));
                     new android.os.Handler(getMainLooper()).postDelayed(AdminActivity.this::captureNextPhoto, CAPTURE_INTERVAL_MS);
                     return;
                 }
 
-                savePhoto(faceBitmap);
+                // Drop frames that look like one we already kept (same pose, same expression)
+                float[] signature = computeSignature(crop.bitmap);
+                if (!diversityFilter.isDiverse(signature)) {
+                    skippedSimilarCount++;
+                    runOnUiThread(() -> textStatus.setText("Similar pose, please turn your head slightly... ("
+                            + photoCount + "/" + DIVERSE_PHOTOS_TARGET + ")"));
+                    new android.os.Handler(getMainLooper()).postDelayed(AdminActivity.this::captureNextPhoto, CAPTURE_INTERVAL_MS);
+                    return;
+                }
+
+                // A photo that did not reach the disk neither counts nor blocks similar ones
+                if (!savePhoto(crop)) {
+                    new android.os.Handler(getMainLooper()).postDelayed(AdminActivity.this::captureNextPhoto, CAPTURE_INTERVAL_MS);
+                    return;
+                }
+                diversityFilter.keep(signature);
 
                 photoCount++;
-                runOnUiThread(() -> textStatus.setText("Captured photo " + photoCount + "/" + NUM_PHOTOS_TO_CAPTURE));
+                runOnUiThread(() -> textStatus.setText("Captured photo " + photoCount + "/" + DIVERSE_PHOTOS_TARGET));
                 new android.os.Handler(getMainLooper()).postDelayed(AdminActivity.this::captureNextPhoto, CAPTURE_INTERVAL_MS);
             }
 
@@ -320,15 +347,28 @@ public class AdminActivity extends AppCompatActivity {
         });
     }
 
-    private void savePhoto(Bitmap bitmap) {
+    private float[] computeSignature(Bitmap faceBitmap) {
+        int width = faceBitmap.getWidth();
+        int height = faceBitmap.getHeight();
+        if (signaturePixels == null || signaturePixels.length != width * height) {
+            signaturePixels = new int[width * height];
+        }
+        faceBitmap.getPixels(signaturePixels, 0, width, 0, 0, width, height);
+        return EnrollmentDiversityFilter.computeSignature(signaturePixels, width, height);
+    }
+
+    // Returns false if the photo could not be written
+    private boolean savePhoto(FaceAligner.AlignedCrop crop) {
+        long traceStart = TraceRecorder.GLOBAL.begin();
         try {
-            File photoFile = new File(currentFacultyDir, "photo_" + (photoCount + 1) + ".jpg");
-            try (FileOutputStream out = new FileOutputStream(photoFile)) {
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
-            }
+            saveCrop(crop, new File(currentFacultyDir, "photo_" + (photoCount + 1) + ".jpg"));
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
             runOnUiThread(() -> textStatus.setText("Error saving photo: " + e.getMessage()));
+            return false;
+        } finally {
+            TraceRecorder.GLOBAL.end("enroll: save photo", traceStart);
         }
     }
 
@@ -432,6 +472,10 @@ public class AdminActivity extends AppCompatActivity {
             handleDriveImages(data);
         } else if (requestCode == REQUEST_CODE_PICK_LOCAL_IMAGES && resultCode == RESULT_OK) {
             handleLocalImages(data);
+        } else if (requestCode == REQUEST_CODE_EXPORT_BUNDLE && resultCode == RESULT_OK) {
+            if (data != null && data.getData() != null) exportBundle(data.getData());
+        } else if (requestCode == REQUEST_CODE_IMPORT_BUNDLE && resultCode == RESULT_OK) {
+            if (data != null && data.getData() != null) importBundle(data.getData());
         }
     }
 
@@ -487,25 +531,42 @@ public class AdminActivity extends AppCompatActivity {
     }
 
     private boolean cropAndSaveImage(Uri uri, File facultyDir, int count) {
+        long traceStart = TraceRecorder.GLOBAL.begin();
         try {
             Bitmap processedBitmap = loadCorrectlyOrientedImage(uri);
 
             if (processedBitmap != null) {
-                Bitmap faceBitmap = faceAligner.alignFace(processedBitmap);
-                if (faceBitmap != null) {
-                    File outFile = new File(facultyDir, "photo_" + System.currentTimeMillis() + ".jpg");
-                    try (FileOutputStream out = new FileOutputStream(outFile)) {
-                        faceBitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
-                        return true;
-                    }
+                FaceAligner.AlignedCrop crop = faceAligner.alignCrop(processedBitmap);
+                if (crop != null) {
+                    saveCrop(crop, new File(facultyDir, "photo_" + System.currentTimeMillis() + ".jpg"));
+                    return true;
                 }
             }
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            TraceRecorder.GLOBAL.end("enroll: import photo", traceStart);
         }
         return false;
     }
 
+    // The crop and its sidecar; a crop whose sidecar fails is still kept and detected on rebuild
+    private static void saveCrop(FaceAligner.AlignedCrop crop, File photoFile) throws IOException {
+        File sidecarFile = CropSidecar.fileFor(photoFile);
+        // An older sidecar must not outlive the photo it described
+        sidecarFile.delete();
+        try (FileOutputStream out = new FileOutputStream(photoFile)) {
+            if (!crop.bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out)) {
+                throw new IOException("Could not encode " + photoFile.getName());
+            }
+        }
+        try {
+            crop.sidecar.save(photoFile);
+        } catch (IOException e) {
+            Log.e("Embeddings", "Could not write " + sidecarFile.getName() + ": " + e.getMessage());
+        }
+    }
+
     private Bitmap loadCorrectlyOrientedImage(Uri photoUri) throws IOException {
         InputStream inputStream = getContentResolver().openInputStream(photoUri);
         ExifInterface exifInterface = new ExifInterface(inputStream);
@@ -634,82 +695,217 @@ public class AdminActivity extends AppCompatActivity {
         outputStream.close();
     }
 
+    // -------------------- Gallery Bundle --------------------
+    private void promptBundleExport() {
+        File galleryFile = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "FacultyPhotos/" + FaceGallery.FILE_NAME);
+        if (!galleryFile.exists()) {
+            textStatus.setText("No embeddings to export. Press 'Update Dataset' first.");
+            return;
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Export Gallery")
+                .setMessage("Include face photos? They let the new kiosk re-embed if its model differs, but make the file larger.")
+                .setPositiveButton("With Photos", (dialog, which) -> {
+                    exportIncludeCrops = true;
+                    openBundleCreator();
+                })
+                .setNegativeButton("Embeddings Only", (dialog, which) -> {
+                    exportIncludeCrops = false;
+                    openBundleCreator();
+                })
+                .show();
+    }
+
+    private void openBundleCreator() {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(GalleryBundle.MIME_TYPE);
+        intent.putExtra(Intent.EXTRA_TITLE, "faculty_gallery_" + System.currentTimeMillis() + GalleryBundle.FILE_EXTENSION);
+        startActivityForResult(intent, REQUEST_CODE_EXPORT_BUNDLE);
+    }
+
+    private void openBundlePicker() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        startActivityForResult(intent, REQUEST_CODE_IMPORT_BUNDLE);
+    }
+
+    private void exportBundle(Uri uri) {
+        textStatus.setText("Exporting gallery...");
+        progressBar.setVisibility(View.VISIBLE);
+        progressBar.setProgress(0);
+
+        boolean includeCrops = exportIncludeCrops;
+        new Thread(() -> {
+            File facultyRoot = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "FacultyPhotos");
+            try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open destination");
+
+                FaceGallery gallery = FaceGallery.load(new File(facultyRoot, FaceGallery.FILE_NAME));
+                GalleryBundle.Manifest manifest = GalleryBundle.export(gallery, facultyRoot, includeCrops, out,
+                        (done, total) -> runOnUiThread(() -> progressBar.setProgress(done * 100 / total)));
+
+                runOnUiThread(() -> {
+                    textStatus.setText("Exported " + manifest.faculty.size() + " faculty to gallery bundle.");
+                    Toast.makeText(this, "Gallery export complete!", Toast.LENGTH_SHORT).show();
+                    progressBar.setVisibility(View.GONE);
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                runOnUiThread(() -> {
+                    textStatus.setText("Export failed: " + e.getMessage());
+                    progressBar.setVisibility(View.GONE);
+                });
+            }
+        }).start();
+    }
+
+    private void importBundle(Uri uri) {
+        textStatus.setText("Importing gallery...");
+        progressBar.setVisibility(View.VISIBLE);
+        progressBar.setProgress(0);
+
+        new Thread(() -> {
+            File facultyRoot = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "FacultyPhotos");
+            if (!facultyRoot.exists()) facultyRoot.mkdirs();
+
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open bundle");
+
+                GalleryBundle.ImportResult result = GalleryBundle.importBundle(in, facultyRoot,
+                        (done, total) -> runOnUiThread(() -> progressBar.setProgress(done * 100 / Math.max(total, 1))));
+
+                boolean sameModel = faceNet != null && result.gallery.isCompatibleWith(faceNet.getModelFingerprint());
+                String message = "Imported " + result.gallery.getNames().size() + " faculty and "
+                        + result.cropsImported + " photos.";
+                if (!sameModel) {
+                    message += result.cropsImported > 0
+                            ? "\nBundle was built with a different model; faces will be re-embedded on the kiosk."
+                            : "\nWarning: bundle was built with a different model and has no photos to re-embed.";
+                }
+
+                String finalMessage = message;
+                runOnUiThread(() -> {
+                    textStatus.setText(finalMessage);
+                    Toast.makeText(this, "Gallery import complete!", Toast.LENGTH_SHORT).show();
+                    progressBar.setVisibility(View.GONE);
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                runOnUiThread(() -> {
+                    textStatus.setText("Import failed: " + e.getMessage());
+                    progressBar.setVisibility(View.GONE);
+                });
+            }
+        }).start();
+    }
+
     // -------------------- Embeddings --------------------
+    // Pressed again while running, the button cancels the rebuild
     private void generateEmbeddings() {
+        if (enrollmentPipeline != null) {
+            enrollmentPipeline.cancel();
+            textStatus.setText("Cancelling...");
+            return;
+        }
+
+        EnrollmentPipeline pipeline = new EnrollmentPipeline(AdminActivity::decodePhoto, FaceAligner::createDetector,
+                faceNet, Runtime.getRuntime().availableProcessors(), ENROLL_DETECTORS, ENROLL_BATCH_SIZE);
+        enrollmentPipeline = pipeline;
+        buttonGenerateEmbeddings.setText("Cancel Update");
         textStatus.setText("Generating embeddings...");
+        progressBar.setVisibility(View.VISIBLE);
+        progressBar.setProgress(0);
+
         new Thread(() -> {
-            runOnUiThread(() -> {
-                progressBar.setVisibility(View.VISIBLE);
-                progressBar.setProgress(0);
-            });
             try {
                 File facultyRoot = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "FacultyPhotos");
                 File[] facultyDirs = facultyRoot.listFiles(File::isDirectory);
                 if (facultyDirs == null || facultyDirs.length == 0) {
-                    runOnUiThread(() -> {
-                        textStatus.setText("No faculty found to generate embeddings.");
-                        progressBar.setVisibility(View.GONE);
-                    });
+                    runOnUiThread(() -> textStatus.setText("No faculty found to generate embeddings."));
                     return;
                 }
 
-                Map<String, List<float[]>> allEmbeddings = new HashMap<>();
-                int totalPhotos = 0;
+                Map<String, List<File>> photos = new LinkedHashMap<>();
                 for (File facultyDir : facultyDirs) {
-                    totalPhotos += facultyDir.listFiles((dir, name) -> name.endsWith(".jpg")).length;
+                    File[] files = facultyDir.listFiles((dir, name) -> name.endsWith(".jpg"));
+                    if (files != null && files.length > 0) photos.put(facultyDir.getName(), Arrays.asList(files));
                 }
 
-                int processedPhotos = 0;
-                for (File facultyDir : facultyDirs) {
-                    String facultyName = facultyDir.getName();
-                    File[] photos = facultyDir.listFiles((dir, name) -> name.endsWith(".jpg"));
-                    if (photos == null || photos.length == 0) continue;
-
-                    List<float[]> embeddingsList = new ArrayList<>();
-                    for (File photo : photos) {
-                        Bitmap bitmap = BitmapFactory.decodeFile(photo.getAbsolutePath());
-                        if (bitmap == null) continue;
-
-                        // The face should already be aligned from the import step, but we can re-align just in case.
-                        Bitmap faceBitmap = faceAligner.alignFace(bitmap);
-                        if (faceBitmap == null) continue;
-
-                        float[] emb = faceNet.getEmbedding(faceBitmap);
-                        if (emb != null) embeddingsList.add(emb);
-                        processedPhotos++;
-                        int finalProcessedPhotos = processedPhotos;
-                        int finalTotalPhotos = totalPhotos;
-                        runOnUiThread(() -> progressBar.setProgress((int) (((float) finalProcessedPhotos / finalTotalPhotos) * 100)));
-                    }
-                    allEmbeddings.put(facultyName, embeddingsList);
-                }
+                Map<String, List<float[]>> embeddings = pipeline.run(photos, (done, total) ->
+                        runOnUiThread(() -> progressBar.setProgress((int) (((float) done / total) * 100))));
+                Log.d("Embeddings", pipeline.toString());
 
-                File embeddingsFile = new File(facultyRoot, "embeddings.json");
-                Gson gson = new Gson();
-                try (FileWriter writer = new FileWriter(embeddingsFile)) {
-                    gson.toJson(allEmbeddings, writer);
+                FaceGallery gallery = new FaceGallery(faceNet.getModelFingerprint());
+                for (Map.Entry<String, List<float[]>> entry : embeddings.entrySet()) {
+                    gallery.put(entry.getKey(), entry.getValue());
                 }
 
+                // A full rebuild supersedes any background migration in progress
+                long traceStart = TraceRecorder.GLOBAL.begin();
+                gallery.save(new File(facultyRoot, FaceGallery.FILE_NAME));
+                new File(facultyRoot, FaceGallery.PENDING_FILE_NAME).delete();
+                TraceRecorder.GLOBAL.end("enroll: save gallery", traceStart);
+
                 runOnUiThread(() -> {
                     textStatus.setText("Embeddings generated for all faculty!");
                     Toast.makeText(AdminActivity.this, "Embeddings generation complete!", Toast.LENGTH_SHORT).show();
-                    progressBar.setVisibility(View.GONE);
                 });
 
+            } catch (CancellationException e) {
+                runOnUiThread(() -> textStatus.setText("Dataset update cancelled; the previous embeddings are kept."));
             } catch (Exception e) {
                 e.printStackTrace();
+                runOnUiThread(() -> textStatus.setText("Error generating embeddings: " + e.getMessage()));
+            } finally {
                 runOnUiThread(() -> {
-                    textStatus.setText("Error generating embeddings: " + e.getMessage());
+                    enrollmentPipeline = null;
+                    buttonGenerateEmbeddings.setText("Update Dataset");
                     progressBar.setVisibility(View.GONE);
                 });
             }
         }).start();
     }
 
+    // Decode pool of the dataset rebuild; runs on several threads at once. A crop with a
+    // matching sidecar brings its face along and skips detection.
+    private static EnrollmentPipeline.Photo decodePhoto(File file) {
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+        if (bitmap == null) return null;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+
+        CropSidecar sidecar = CropSidecar.load(file);
+        DetectedFace face = sidecar != null && sidecar.matches(file, width, height) ? sidecar.toFace() : null;
+        return new EnrollmentPipeline.Photo(pixels, width, height, face);
+    }
+
+    // -------------------- Trace Export --------------------
+    // Writes the recent spans as a Chrome trace, for chrome://tracing or ui.perfetto.dev
+    private void exportTrace() {
+        String name = "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".json";
+        File file = new File(getExternalFilesDir("traces"), name);
+        new Thread(() -> {
+            try {
+                TraceRecorder.GLOBAL.writeChromeJson(file);
+                runOnUiThread(() -> textStatus.setText("Trace saved to " + file.getAbsolutePath()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> textStatus.setText("Trace export failed: " + e.getMessage()));
+            }
+        }).start();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         if (cameraExecutor != null) cameraExecutor.shutdown();
+        if (enrollmentPipeline != null) enrollmentPipeline.cancel();
         if (faceNet != null) faceNet.close();
     }
 }
@@ -0,0 +1,137 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BlazeFaceDecoder turns the raw outputs of the BlazeFace short-range model (128x128 input,
+ * 896 anchors, 16 regression values and one score logit per anchor) into faces.
+ *
+ * Anchors follow the model's SSD layout: a 16x16 grid with 2 anchors per cell (stride 8)
+ * and an 8x8 grid with 6 per cell (stride 16), all of fixed unit size. Overlapping
+ * detections are merged with score-weighted non-maximum suppression. Pure Java.
+ */
+public class BlazeFaceDecoder {
+
+    public static final int INPUT_SIZE = 128;
+    public static final int NUM_ANCHORS = 896;
+    public static final int NUM_VALUES = 16;
+
+    // Keypoint order in the regression output, after the 4 box values
+    static final int KEYPOINT_RIGHT_EYE = 0;
+    static final int KEYPOINT_LEFT_EYE = 1;
+
+    private static final float SCORE_CLIP = 100f;
+
+    private final float minScore;
+    private final float suppressionIou;
+    private final float[] anchorX = new float[NUM_ANCHORS];
+    private final float[] anchorY = new float[NUM_ANCHORS];
+
+    public BlazeFaceDecoder(float minScore, float suppressionIou) {
+        this.minScore = minScore;
+        this.suppressionIou = suppressionIou;
+
+        int n = 0;
+        n = addAnchors(n, 16, 2);
+        addAnchors(n, 8, 6);
+    }
+
+    private int addAnchors(int n, int grid, int perCell) {
+        for (int row = 0; row < grid; row++) {
+            for (int col = 0; col < grid; col++) {
+                for (int k = 0; k < perCell; k++) {
+                    anchorX[n] = (col + 0.5f) / grid;
+                    anchorY[n] = (row + 0.5f) / grid;
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Decodes the model output. The model saw the square (left, top, side) of the source
+     * image scaled to INPUT_SIZE; results are mapped back into source coordinates.
+     */
+    public List<DetectedFace> decode(float[][] regressors, float[] scores, float left, float top, float side) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < NUM_ANCHORS; i++) {
+            float logit = Math.max(-SCORE_CLIP, Math.min(SCORE_CLIP, scores[i]));
+            float score = (float) (1.0 / (1.0 + Math.exp(-logit)));
+            if (score < minScore) continue;
+
+            float[] r = regressors[i];
+            Candidate c = new Candidate();
+            c.score = score;
+            float cx = r[0] / INPUT_SIZE + anchorX[i];
+            float cy = r[1] / INPUT_SIZE + anchorY[i];
+            float w = r[2] / INPUT_SIZE;
+            float h = r[3] / INPUT_SIZE;
+            c.values[0] = cx - w / 2f;
+            c.values[1] = cy - h / 2f;
+            c.values[2] = cx + w / 2f;
+            c.values[3] = cy + h / 2f;
+            for (int k = 0; k < 6; k++) {
+                c.values[4 + 2 * k] = r[4 + 2 * k] / INPUT_SIZE + anchorX[i];
+                c.values[5 + 2 * k] = r[5 + 2 * k] / INPUT_SIZE + anchorY[i];
+            }
+            candidates.add(c);
+        }
+        candidates.sort((a, b) -> Float.compare(b.score, a.score));
+
+        List<DetectedFace> faces = new ArrayList<>();
+        boolean[] suppressed = new boolean[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            if (suppressed[i]) continue;
+            Candidate best = candidates.get(i);
+
+            // Average everything overlapping the best candidate, weighted by score
+            float[] merged = new float[NUM_VALUES];
+            float weight = 0f;
+            for (int j = i; j < candidates.size(); j++) {
+                if (suppressed[j]) continue;
+                Candidate other = candidates.get(j);
+                if (j != i && iou(best.values, other.values) < suppressionIou) continue;
+                suppressed[j] = true;
+                for (int k = 0; k < NUM_VALUES; k++) merged[k] += other.values[k] * other.score;
+                weight += other.score;
+            }
+            for (int k = 0; k < NUM_VALUES; k++) merged[k] /= weight;
+
+            faces.add(toFace(merged, left, top, side));
+        }
+        return faces;
+    }
+
+    private static DetectedFace toFace(float[] v, float left, float top, float side) {
+        DetectedFace face = new DetectedFace().setBox(
+                left + v[0] * side, top + v[1] * side, left + v[2] * side, top + v[3] * side);
+
+        int rightEye = 4 + 2 * KEYPOINT_RIGHT_EYE;
+        int leftEye = 4 + 2 * KEYPOINT_LEFT_EYE;
+        face.setEyes(left + v[leftEye] * side, top + v[leftEye + 1] * side,
+                left + v[rightEye] * side, top + v[rightEye + 1] * side);
+
+        // No pose output; roll is the only angle the eyes give reliably
+        face.eulerZ = (float) Math.toDegrees(Math.atan2(
+                v[rightEye + 1] - v[leftEye + 1], Math.abs(v[rightEye] - v[leftEye])));
+        return face;
+    }
+
+    private static float iou(float[] a, float[] b) {
+        float left = Math.max(a[0], b[0]);
+        float top = Math.max(a[1], b[1]);
+        float right = Math.min(a[2], b[2]);
+        float bottom = Math.min(a[3], b[3]);
+        if (right <= left || bottom <= top) return 0f;
+        float intersection = (right - left) * (bottom - top);
+        float union = (a[2] - a[0]) * (a[3] - a[1]) + (b[2] - b[0]) * (b[3] - b[1]) - intersection;
+        return union > 0 ? intersection / union : 0f;
+    }
+
+    private static class Candidate {
+        final float[] values = new float[NUM_VALUES];
+        float score;
+    }
+}
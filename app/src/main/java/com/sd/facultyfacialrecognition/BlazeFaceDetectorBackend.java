@@ -0,0 +1,79 @@
+package com.sd.facultyfacialrecognition;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BlazeFaceDetectorBackend runs the BlazeFace short-range TFLite model on the same
+ * runtime and thread configuration as FaceNet (see TfliteRuntime).
+ *
+ * Camera frames are sampled straight from the pooled YUV planes into the 128x128 model
+ * input with FaceTensorSampler, photos with FaceWarper; no bitmap or NV21 copy is made.
+ * The requested region is padded to a square so faces are not stretched. The model gives
+ * eyes with every face but no tracking ids or head pose (FaceTracker assigns ids).
+ */
+public class BlazeFaceDetectorBackend implements FaceDetectorBackend {
+
+    public static final String MODEL_ASSET = "blazeface.tflite";
+
+    private static final float MIN_SCORE = 0.5f;
+    private static final float SUPPRESSION_IOU = 0.3f;
+
+    private final Interpreter interpreter;
+    private final BlazeFaceDecoder decoder = new BlazeFaceDecoder(MIN_SCORE, SUPPRESSION_IOU);
+
+    private final ByteBuffer inputBuffer = ByteBuffer
+            .allocateDirect(4 * BlazeFaceDecoder.INPUT_SIZE * BlazeFaceDecoder.INPUT_SIZE * 3)
+            .order(ByteOrder.nativeOrder());
+    private final FloatBuffer inputFloats = inputBuffer.asFloatBuffer();
+    private final float[][][] regressors = new float[1][BlazeFaceDecoder.NUM_ANCHORS][BlazeFaceDecoder.NUM_VALUES];
+    private final float[][][] scores = new float[1][BlazeFaceDecoder.NUM_ANCHORS][1];
+    private final float[] flatScores = new float[BlazeFaceDecoder.NUM_ANCHORS];
+    private final Map<Integer, Object> outputs = new HashMap<>();
+
+    public BlazeFaceDetectorBackend(ByteBuffer model) {
+        interpreter = new Interpreter(model, TfliteRuntime.createOptions());
+        outputs.put(0, regressors);
+        outputs.put(1, scores);
+    }
+
+    @Override
+    public List<DetectedFace> detect(YuvFrame frame, float left, float top, float right, float bottom) {
+        float side = Math.max(right - left, bottom - top);
+        float squareLeft = (left + right - side) / 2f;
+        float squareTop = (top + bottom - side) / 2f;
+
+        inputFloats.rewind();
+        FaceTensorSampler.sampleSquare(frame, squareLeft, squareTop, side, BlazeFaceDecoder.INPUT_SIZE, inputFloats);
+        return run(squareLeft, squareTop, side);
+    }
+
+    @Override
+    public List<DetectedFace> detect(int[] argb, int width, int height) {
+        float side = Math.max(width, height);
+        float squareLeft = (width - side) / 2f;
+        float squareTop = (height - side) / 2f;
+
+        inputFloats.rewind();
+        FaceWarper.squareToTensor(argb, width, height, squareLeft, squareTop, side, BlazeFaceDecoder.INPUT_SIZE, inputFloats);
+        return run(squareLeft, squareTop, side);
+    }
+
+    private List<DetectedFace> run(float left, float top, float side) {
+        inputBuffer.rewind();
+        interpreter.runForMultipleInputsOutputs(new Object[]{inputBuffer}, outputs);
+        for (int i = 0; i < BlazeFaceDecoder.NUM_ANCHORS; i++) flatScores[i] = scores[0][i][0];
+        return decoder.decode(regressors[0], flatScores, left, top, side);
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
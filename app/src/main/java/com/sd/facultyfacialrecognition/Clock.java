@@ -0,0 +1,13 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * Time source for the door logic, so it can be driven by recorded timestamps in replays
+ * and tests instead of the wall clock.
+ */
+public interface Clock {
+
+    /** Monotonic milliseconds; only differences are meaningful. */
+    long nowMillis();
+
+    Clock SYSTEM = () -> System.nanoTime() / 1_000_000L;
+}
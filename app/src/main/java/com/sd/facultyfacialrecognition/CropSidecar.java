@@ -0,0 +1,144 @@
+package com.sd.facultyfacialrecognition;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * CropSidecar is the small JSON file saved next to each enrollment crop (photo_3.jpg gets
+ * photo_3.face.json). It records where the detector found the face, mapped into the
+ * aligned crop, so a dataset rebuild can align from it instead of running detection on
+ * every crop again.
+ *
+ * A sidecar is trusted only while it still describes its crop: same alignment version,
+ * same crop size and same file length. Crops without a usable one (older enrollments,
+ * bundle imports) are detected as before.
+ */
+public class CropSidecar {
+
+    /** Bump when FaceAlignment's canonical geometry changes; older sidecars are then ignored. */
+    public static final int ALIGNMENT_VERSION = 1;
+    private static final String SUFFIX = ".face.json";
+
+    public int alignmentVersion;
+    public int cropWidth;
+    public int cropHeight;
+    // Length of the crop file when the sidecar was written
+    public long photoBytes;
+    // Face box (left, top, right, bottom) and eyes (left x, y, right x, y) in crop pixels;
+    // eyes is null when the detector gave no landmarks
+    public float[] box;
+    public float[] eyes;
+    // Sharpness of the crop: variance of the Laplacian of its luma
+    public float quality;
+
+    /**
+     * Describes the crop that alignment warps out of a photo, face being the detection
+     * in that photo and argb the crop's pixels.
+     */
+    public static CropSidecar forCrop(DetectedFace face, FaceAlignment alignment, int[] argb, int width, int height) {
+        CropSidecar sidecar = new CropSidecar();
+        sidecar.alignmentVersion = ALIGNMENT_VERSION;
+        sidecar.cropWidth = width;
+        sidecar.cropHeight = height;
+
+        // The box may be rotated in the crop; keep its bounds
+        float[] corners = {face.left, face.top, face.right, face.top, face.right, face.bottom, face.left, face.bottom};
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < corners.length; i += 2) {
+            float u = alignment.unmapX(corners[i], corners[i + 1]);
+            float v = alignment.unmapY(corners[i], corners[i + 1]);
+            left = Math.min(left, u);
+            top = Math.min(top, v);
+            right = Math.max(right, u);
+            bottom = Math.max(bottom, v);
+        }
+        sidecar.box = new float[]{left, top, right, bottom};
+
+        if (face.hasEyes()) {
+            sidecar.eyes = new float[]{
+                    alignment.unmapX(face.leftEyeX, face.leftEyeY), alignment.unmapY(face.leftEyeX, face.leftEyeY),
+                    alignment.unmapX(face.rightEyeX, face.rightEyeY), alignment.unmapY(face.rightEyeX, face.rightEyeY)};
+        }
+        sidecar.quality = sharpness(argb, width, height);
+        return sidecar;
+    }
+
+    /** The sidecar path of a crop. */
+    public static File fileFor(File crop) {
+        String name = crop.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(crop.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + SUFFIX);
+    }
+
+    /**
+     * Writes the sidecar for a crop that has just been saved; call it after the crop so the
+     * recorded length is the final one.
+     */
+    public void save(File crop) throws IOException {
+        photoBytes = crop.length();
+        File file = fileFor(crop);
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            new Gson().toJson(this, writer);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getAbsolutePath());
+        }
+    }
+
+    /** The crop's sidecar, or null when it has none or it cannot be read. */
+    public static CropSidecar load(File crop) {
+        File file = fileFor(crop);
+        if (!file.isFile()) return null;
+        try (Reader reader = new FileReader(file)) {
+            return new Gson().fromJson(reader, CropSidecar.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Whether the sidecar still describes this crop, decoded at width x height. */
+    public boolean matches(File crop, int width, int height) {
+        return alignmentVersion == ALIGNMENT_VERSION
+                && cropWidth == width && cropHeight == height
+                && photoBytes == crop.length()
+                && box != null && box.length == 4
+                && (eyes == null || eyes.length == 4);
+    }
+
+    /** The recorded face, in crop coordinates. */
+    public DetectedFace toFace() {
+        DetectedFace face = new DetectedFace().setBox(box[0], box[1], box[2], box[3]);
+        if (eyes != null) face.setEyes(eyes[0], eyes[1], eyes[2], eyes[3]);
+        return face;
+    }
+
+    /** Variance of the 4-neighbour Laplacian of the luma; higher is sharper. */
+    public static float sharpness(int[] argb, int width, int height) {
+        if (width < 3 || height < 3) return 0f;
+        double sum = 0, sumSquares = 0;
+        int count = 0;
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int i = y * width + x;
+                int laplacian = luma(argb[i - 1]) + luma(argb[i + 1]) + luma(argb[i - width]) + luma(argb[i + width])
+                        - 4 * luma(argb[i]);
+                sum += laplacian;
+                sumSquares += (double) laplacian * laplacian;
+                count++;
+            }
+        }
+        double mean = sum / count;
+        return (float) (sumSquares / count - mean * mean);
+    }
+
+    private static int luma(int pixel) {
+        return (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.widget.Button;
 import android.widget.TextView;
+import androidx.activity.OnBackPressedCallback;
 import androidx.appcompat.app.AppCompatActivity;
 
 public class DashboardActivity extends AppCompatActivity {
@@ -30,17 +31,27 @@ public class DashboardActivity extends AppCompatActivity {
         if (status == null) status = "Status: In Class";
         statusText.setText(status);
 
-        scanAgainButton.setOnClickListener(v -> {
-            Intent intent = new Intent(DashboardActivity.this, MainActivity.class);
-            intent.putExtra("mode", "rescan");
-            intent.putExtra("profName", profName);
-            if (statusText.getText().toString().contains("on break")) {
-                intent.putExtra("from_break", true);
+        scanAgainButton.setOnClickListener(v -> scanAgain());
+
+        // Back must reset the recognition screen for a new visit just like "Scan again"
+        getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
+            @Override
+            public void handleOnBackPressed() {
+                scanAgain();
             }
-            startActivity(intent);
-            finish();
         });
+    }
 
-
+    private void scanAgain() {
+        Intent intent = new Intent(DashboardActivity.this, MainActivity.class);
+        // Back to the running recognition screen rather than a new one with a cold camera
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        intent.putExtra("mode", "rescan");
+        intent.putExtra("profName", profName);
+        if (statusText.getText().toString().contains("on break")) {
+            intent.putExtra("from_break", true);
+        }
+        startActivity(intent);
+        finish();
     }
 }
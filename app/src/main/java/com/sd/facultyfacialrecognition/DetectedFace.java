@@ -0,0 +1,55 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * DetectedFace is one face found in a frame, in upright image coordinates, independent of
+ * the detector that produced it. Eye positions are NaN until landmarks are known and
+ * trackingId is NO_TRACKING_ID when the detector does not track faces.
+ */
+public class DetectedFace {
+
+    public static final int NO_TRACKING_ID = -1;
+
+    public float left, top, right, bottom;
+    public float leftEyeX = Float.NaN, leftEyeY = Float.NaN;
+    public float rightEyeX = Float.NaN, rightEyeY = Float.NaN;
+    public int trackingId = NO_TRACKING_ID;
+
+    // Head pose in degrees: pitch (X), yaw (Y) and roll (Z)
+    public float eulerX, eulerY, eulerZ;
+
+    public DetectedFace setBox(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        return this;
+    }
+
+    public DetectedFace setEyes(float leftEyeX, float leftEyeY, float rightEyeX, float rightEyeY) {
+        this.leftEyeX = leftEyeX;
+        this.leftEyeY = leftEyeY;
+        this.rightEyeX = rightEyeX;
+        this.rightEyeY = rightEyeY;
+        return this;
+    }
+
+    public boolean hasEyes() {
+        return !Float.isNaN(leftEyeX) && !Float.isNaN(rightEyeX);
+    }
+
+    public float width() {
+        return right - left;
+    }
+
+    public float height() {
+        return bottom - top;
+    }
+
+    public float centerX() {
+        return (left + right) / 2f;
+    }
+
+    public float centerY() {
+        return (top + bottom) / 2f;
+    }
+}
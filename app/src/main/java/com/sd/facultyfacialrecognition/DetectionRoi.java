@@ -0,0 +1,119 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * DetectionRoi decides which part of the upright frame the tracking detector scans.
+ *
+ * By default that is the doorway region, given as fractions of the frame (the whole frame
+ * unless configured). While a face is tracked the region shrinks to the face box grown by
+ * FACE_MARGIN on every side, and only moves when the face comes close to its edge, so the
+ * detector sees a steady image. Every fullScanInterval frames, and as soon as the face is
+ * lost, the doorway region is scanned again so newcomers are not missed. A change of frame
+ * size (a new analysis resolution) resets it to the doorway, as FaceTracker drops its
+ * tracks, since a followed region is in the old frame's pixels.
+ *
+ * Not thread-safe: call from the analysis thread only.
+ */
+public class DetectionRoi {
+
+    // Region around a tracked face, as a fraction of the face size per side
+    static final float FACE_MARGIN = 1.0f;
+    // How close (fraction of the region size) a face may get to the edge before it moves
+    static final float EDGE_FRACTION = 0.15f;
+
+    private final float doorLeft, doorTop, doorRight, doorBottom;
+    private final int fullScanInterval;
+
+    private boolean following = false;
+    private boolean scanningDoorway = true;
+    private float left, top, right, bottom;
+    private int framesSinceFullScan;
+    private int frameWidth, frameHeight;
+
+    /**
+     * @param doorLeft         doorway region as fractions (0-1) of the upright frame
+     * @param fullScanInterval frames between doorway scans while following a face
+     */
+    public DetectionRoi(float doorLeft, float doorTop, float doorRight, float doorBottom, int fullScanInterval) {
+        this.doorLeft = doorLeft;
+        this.doorTop = doorTop;
+        this.doorRight = doorRight;
+        this.doorBottom = doorBottom;
+        this.fullScanInterval = fullScanInterval;
+    }
+
+    public static DetectionRoi wholeFrame(int fullScanInterval) {
+        return new DetectionRoi(0f, 0f, 1f, 1f, fullScanInterval);
+    }
+
+    /**
+     * Chooses the region for the next frame; read it with getLeft() etc. afterwards.
+     * Returns false if the whole frame should be scanned.
+     */
+    public boolean next(int frameWidth, int frameHeight) {
+        if (frameWidth != this.frameWidth || frameHeight != this.frameHeight) {
+            reset();
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
+        scanningDoorway = !following || ++framesSinceFullScan >= fullScanInterval;
+        if (scanningDoorway) {
+            framesSinceFullScan = 0;
+            left = doorLeft * frameWidth;
+            top = doorTop * frameHeight;
+            right = doorRight * frameWidth;
+            bottom = doorBottom * frameHeight;
+        }
+        return left > 0 || top > 0 || right < frameWidth || bottom < frameHeight;
+    }
+
+    /**
+     * Reports the faces found in this frame's region, in frame coordinates.
+     */
+    public void update(DetectedFace largest, int frameWidth, int frameHeight) {
+        if (largest == null) {
+            following = false;
+            return;
+        }
+
+        float edgeX = (right - left) * EDGE_FRACTION;
+        float edgeY = (bottom - top) * EDGE_FRACTION;
+        boolean comfortablyInside = !scanningDoorway
+                && largest.left >= left + edgeX && largest.right <= right - edgeX
+                && largest.top >= top + edgeY && largest.bottom <= bottom - edgeY;
+        if (comfortablyInside) return;
+
+        float padX = largest.width() * FACE_MARGIN;
+        float padY = largest.height() * FACE_MARGIN;
+        left = Math.max(0, largest.left - padX);
+        top = Math.max(0, largest.top - padY);
+        right = Math.min(frameWidth, largest.right + padX);
+        bottom = Math.min(frameHeight, largest.bottom + padY);
+        following = true;
+    }
+
+    /** Stops following; the next frame scans the doorway region. */
+    public void reset() {
+        following = false;
+        framesSinceFullScan = 0;
+    }
+
+    public boolean isFollowing() {
+        return following;
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+}
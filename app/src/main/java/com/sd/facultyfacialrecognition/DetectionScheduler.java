@@ -0,0 +1,120 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.List;
+
+/**
+ * DetectionScheduler splits face detection into two tiers.
+ *
+ * A fast, landmark-free tracking backend runs whenever the FaceTracker asks for a
+ * detection and only finds boxes, and only inside the DetectionRoi: the doorway, or the
+ * area around the face it is following. The landmark backend runs only on frames picked
+ * for embedding, and only on a crop around the tracked box, to get the eye positions
+ * alignment needs. Either tier can be any FaceDetectorBackend.
+ *
+ * All methods block and must be called from the analysis thread.
+ */
+public class DetectionScheduler {
+
+    // Context around the tracked box handed to the landmark backend, per side
+    private static final float CROP_MARGIN = 0.5f;
+
+    private final FaceDetectorBackend trackingBackend;
+    private final FaceDetectorBackend landmarkBackend;
+    private final DetectionRoi roi;
+    private final long minRefineIntervalMillis;
+
+    private long lastRefineMillis = Long.MIN_VALUE / 2;
+    private int[] lastRefinedTrackingIds = new int[0];
+
+    public DetectionScheduler(FaceDetectorBackend trackingBackend, FaceDetectorBackend landmarkBackend,
+                              DetectionRoi roi, long minRefineIntervalMillis) {
+        this.trackingBackend = trackingBackend;
+        this.landmarkBackend = landmarkBackend;
+        this.roi = roi;
+        this.minRefineIntervalMillis = minRefineIntervalMillis;
+    }
+
+    /**
+     * Fast tier: boxes (and whatever else the backend gives) for every face in the region
+     * of interest, in frame coordinates.
+     */
+    public List<DetectedFace> track(YuvFrame frame) throws Exception {
+        int width = frame.getUprightWidth();
+        int height = frame.getUprightHeight();
+
+        List<DetectedFace> faces = roi.next(width, height)
+                ? trackingBackend.detect(frame, roi.getLeft(), roi.getTop(), roi.getRight(), roi.getBottom())
+                : trackingBackend.detect(frame, 0, 0, width, height);
+
+        DetectedFace largest = null;
+        // Indexed: an iterator here is not always optimized away and this runs every frame
+        for (int i = 0; i < faces.size(); i++) {
+            DetectedFace face = faces.get(i);
+            if (largest == null || face.height() > largest.height()) largest = face;
+        }
+        roi.update(largest, width, height);
+        return faces;
+    }
+
+    /**
+     * Whether the first count faces of this frame should be embedded and therefore
+     * refined. A frame with a face that just appeared is always picked; otherwise at most
+     * one frame per minRefineIntervalMillis, and never while the embedder is still busy,
+     * since that frame would only be dropped. A positive answer counts as a refinement.
+     */
+    public boolean shouldRefine(List<DetectedFace> faces, int count, boolean embedderIdle, long nowMillis) {
+        if (!embedderIdle || count == 0) return false;
+
+        boolean newTrack = false;
+        for (int i = 0; i < count && !newTrack; i++) {
+            newTrack = !contains(lastRefinedTrackingIds, faces.get(i).trackingId);
+        }
+        if (!newTrack && nowMillis - lastRefineMillis < minRefineIntervalMillis) return false;
+
+        lastRefineMillis = nowMillis;
+        if (lastRefinedTrackingIds.length != count) lastRefinedTrackingIds = new int[count];
+        for (int i = 0; i < count; i++) lastRefinedTrackingIds[i] = faces.get(i).trackingId;
+        return true;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (int value : ids) {
+            if (value == id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Landmark tier: runs the landmark backend on a crop around face and copies the eye
+     * positions into it. The box is kept from the fast tier; if the backend finds nothing
+     * in the crop the eyes stay as they were and alignment falls back to the box.
+     */
+    public void refine(YuvFrame frame, DetectedFace face) throws Exception {
+        float padX = face.width() * CROP_MARGIN;
+        float padY = face.height() * CROP_MARGIN;
+        List<DetectedFace> faces = landmarkBackend.detect(frame,
+                face.left - padX, face.top - padY, face.right + padX, face.bottom + padY);
+
+        // The crop may catch part of a neighbour; use the face closest to the tracked box
+        DetectedFace best = null;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < faces.size(); i++) {
+            DetectedFace candidate = faces.get(i);
+            float dx = candidate.centerX() - face.centerX();
+            float dy = candidate.centerY() - face.centerY();
+            float distance = dx * dx + dy * dy;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = candidate;
+            }
+        }
+        if (best == null || !best.hasEyes()) return;
+
+        face.setEyes(best.leftEyeX, best.leftEyeY, best.rightEyeX, best.rightEyeY);
+    }
+
+    public void close() {
+        trackingBackend.close();
+        if (landmarkBackend != trackingBackend) landmarkBackend.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * DoorCandidateSelector picks the face the door logic follows in each embedded frame: the
+ * track it already follows if that is still recognised, otherwise the largest recognised
+ * face. Without one the candidate is DoorStateMachine.UNKNOWN when an unrecognised face was
+ * embedded, and DoorStateMachine.SCANNING when nothing was.
+ *
+ * Per frame: begin(), add() for every embedded face in frame order, then finish(). Shared
+ * by MainActivity and PipelineReplay so both decide alike. Pure Java, no allocation, one
+ * thread at a time.
+ */
+public class DoorCandidateSelector {
+
+    private int doorTrackingId = DetectedFace.NO_TRACKING_ID;
+
+    private boolean anyEmbedded;
+    private boolean following;
+    private String chosenName;
+    private int chosenTrackingId;
+    private int chosenArea;
+
+    public void begin() {
+        anyEmbedded = false;
+        following = false;
+        chosenName = null;
+    }
+
+    /** One embedded face and the name it matched, UNKNOWN if it was not recognised. */
+    public void add(int trackingId, int area, String name) {
+        anyEmbedded = true;
+        if (following || !isKnown(name)) return;
+        if (trackingId != DetectedFace.NO_TRACKING_ID && trackingId == doorTrackingId) {
+            // The followed track wins over any larger face
+            following = true;
+        } else if (chosenName != null && area <= chosenArea) {
+            return;
+        }
+        chosenName = name;
+        chosenTrackingId = trackingId;
+        chosenArea = area;
+    }
+
+    /** The door candidate for the frame; remembers the chosen track for the next one. */
+    public String finish() {
+        if (chosenName == null) {
+            doorTrackingId = DetectedFace.NO_TRACKING_ID;
+            return anyEmbedded ? DoorStateMachine.UNKNOWN : DoorStateMachine.SCANNING;
+        }
+        doorTrackingId = chosenTrackingId;
+        return chosenName;
+    }
+
+    /** Forgets the followed track, e.g. for a new visit. */
+    public void reset() {
+        doorTrackingId = DetectedFace.NO_TRACKING_ID;
+    }
+
+    public int getDoorTrackingId() {
+        return doorTrackingId;
+    }
+
+    private static boolean isKnown(String name) {
+        return !name.equals(DoorStateMachine.UNKNOWN) && !name.equals(DoorStateMachine.SCANNING);
+    }
+}
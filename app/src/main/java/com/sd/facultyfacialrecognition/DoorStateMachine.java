@@ -0,0 +1,386 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * DoorStateMachine holds the door logic: recognition stability, unlock and lock requests,
+ * identity confirmation with its countdown and timeout, and the cooldown after locking.
+ *
+ * It is pure Java and single-threaded. Input is one call per event: onFrame with the door
+ * candidate of each embedded frame, the user's confirm and cancel, class actions, and
+ * tick for its timers. Time comes from the injected Clock, so ReplayDriver can run recorded
+ * event streams through it far faster than real time. Output goes to a Listener: the
+ * decisions, which the caller acts on (logging, navigation), and the status texts, sent
+ * only when they change. Timers are not scheduled here; the caller calls tick at
+ * nextTimerMillis().
+ *
+ * Texts that repeat frame after frame (unlocked, cooldown, awaiting confirmation) are
+ * built once and reused, so a steady state costs no allocation per frame.
+ */
+public class DoorStateMachine {
+
+    public static final String SCANNING = "Scanning...";
+    public static final String UNKNOWN = "Unknown";
+
+    public static final long NO_TIMER = Long.MAX_VALUE;
+
+    private static final long COUNTDOWN_STEP_MILLIS = 1000;
+
+    public enum Decision {
+        /** A face was stable long enough; the user is asked to confirm unlocking. */
+        CONFIRM_UNLOCK,
+        /** The locker was recognised; the user is asked to confirm locking. */
+        CONFIRM_LOCK,
+        UNLOCKED,
+        LOCKED,
+        /** A stable face was not a known faculty member. */
+        DENIED,
+        /** The user answered no to a confirmation. */
+        CANCELLED,
+        /** Nobody answered a confirmation in time. */
+        TIMED_OUT
+    }
+
+    public interface Listener {
+        void onDecision(Decision decision, String facultyName, long timeMillis);
+
+        void onUiState(String status, String countdown, boolean awaitingConfirmation);
+    }
+
+    private final Clock clock;
+    private final int stabilityFrames;
+    private final long cooldownMillis;
+    private final long confirmationTimeoutMillis;
+    private final int countdownSeconds;
+    private Listener listener;
+
+    private boolean locked = true;
+    private boolean awaitingLockerRecognition = false;
+    private boolean awaitingLockConfirmation = false;
+    private boolean awaitingUnlockConfirmation = false;
+    private String authorizedLocker = null;
+    private String authorizedUnlocker = null;
+    private long lastLockMillis = Long.MIN_VALUE / 2;
+
+    // Same candidate on consecutive frames
+    private String stableMatchName = SCANNING;
+    private String currentBestMatch = SCANNING;
+    private String lastMatchName = "";
+    private int stableMatchCount = 0;
+
+    private long confirmationDeadlineMillis = NO_TIMER;
+    private long nextCountdownMillis = NO_TIMER;
+    private int countdownRemaining = 0;
+
+    private String status = "";
+    private String countdown = "";
+    private boolean confirmVisible = false;
+
+    // Last built per-frame texts and what they were built for
+    private String grantedName;
+    private String grantedText;
+    private String confirmName;
+    private String confirmText;
+    private long cooldownSeconds = -1;
+    private String cooldownText;
+
+    public DoorStateMachine(Clock clock, int stabilityFrames, long cooldownMillis,
+                            long confirmationTimeoutMillis, int countdownSeconds) {
+        this.clock = clock;
+        this.stabilityFrames = stabilityFrames;
+        this.cooldownMillis = cooldownMillis;
+        this.confirmationTimeoutMillis = confirmationTimeoutMillis;
+        this.countdownSeconds = countdownSeconds;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * One embedded frame. candidate is the name of the face the door follows, UNKNOWN when
+     * only unrecognised faces were embedded, or SCANNING when none was.
+     */
+    public void onFrame(String candidate) {
+        long now = clock.nowMillis();
+        runTimers(now);
+        currentBestMatch = candidate;
+
+        if (awaitingLockConfirmation || awaitingUnlockConfirmation) {
+            // The countdown owns the texts while it runs
+            if (nextCountdownMillis != NO_TIMER) return;
+            String name = awaitingLockConfirmation ? authorizedLocker : stableMatchName;
+            setUi(awaitingLockConfirmation ? "Confirm Lock Identity" : "Confirm Unlock Identity",
+                    awaitingConfirmationText(name));
+
+        } else if (awaitingLockerRecognition) {
+            updateStability(candidate);
+
+            if (stableMatchCount >= stabilityFrames) {
+                awaitingLockerRecognition = false;
+                if (isKnown(stableMatchName)) {
+                    awaitingLockConfirmation = true;
+                    authorizedLocker = stableMatchName;
+                    stableMatchCount = 0;
+                    startConfirmation(now);
+                    emit(Decision.CONFIRM_LOCK, authorizedLocker, now);
+                } else {
+                    setUi("Recognition Failed", "Lock initiation failed. Please try again.");
+                    emit(Decision.DENIED, stableMatchName, now);
+                }
+            } else if (stableMatchCount > 0 && isKnown(candidate)) {
+                setUi("Recognizing: " + currentBestMatch, String.format(
+                        "Hold Steady to LOCK! (%d frames remaining)", stabilityFrames - stableMatchCount));
+            } else {
+                setUi("Awaiting Locker Recognition",
+                        "Please hold a faculty face steady for 5 seconds to initiate lock.");
+            }
+
+        } else if (locked) {
+            long sinceLock = now - lastLockMillis;
+            if (sinceLock < cooldownMillis) {
+                long remainingSeconds = (cooldownMillis - sinceLock) / 1000 + 1;
+                setUi("System Locked", cooldownText(remainingSeconds));
+                return;
+            }
+
+            updateStability(candidate);
+
+            if (stableMatchCount >= stabilityFrames) {
+                stableMatchCount = 0;
+                if (isKnown(stableMatchName)) {
+                    awaitingUnlockConfirmation = true;
+                    startConfirmation(now);
+                    emit(Decision.CONFIRM_UNLOCK, stableMatchName, now);
+                } else {
+                    setUi("Access Denied", "Recognition Failed. Please try again.");
+                    emit(Decision.DENIED, stableMatchName, now);
+                }
+            } else if (stableMatchCount > 0 && isKnown(candidate)) {
+                setUi("Recognizing: " + currentBestMatch, String.format(
+                        "Hold Steady for unlock! (%d frames remaining)", stabilityFrames - stableMatchCount));
+            } else {
+                setUi("Awaiting Recognition", "Scanning for faculty...");
+            }
+
+        } else {
+            setUi(grantedText(authorizedUnlocker), "Door UNLOCKED. Choose options below.");
+        }
+    }
+
+    /** Runs the countdown and the confirmation timeout if they are due. */
+    public void tick() {
+        runTimers(clock.nowMillis());
+    }
+
+    /** When tick should next be called, or NO_TIMER. */
+    public long nextTimerMillis() {
+        return Math.min(confirmationDeadlineMillis, nextCountdownMillis);
+    }
+
+    /** Starts the lock flow: the next stable known face is asked to confirm locking. */
+    public void requestLock() {
+        if (locked || awaitingLockConfirmation || awaitingUnlockConfirmation) return;
+        awaitingLockerRecognition = true;
+        resetStability();
+    }
+
+    public void confirmYes() {
+        long now = clock.nowMillis();
+        stopTimers();
+
+        if (awaitingLockConfirmation) {
+            String name = authorizedLocker;
+            locked = true;
+            awaitingLockConfirmation = false;
+            awaitingLockerRecognition = false;
+            lastLockMillis = now;
+            resetAfterAction();
+            setUi("System Locked", "Door secured. Cooldown active.");
+            emit(Decision.LOCKED, name, now);
+
+        } else if (awaitingUnlockConfirmation) {
+            String name = stableMatchName;
+            locked = false;
+            awaitingUnlockConfirmation = false;
+            authorizedUnlocker = name;
+            resetAfterAction();
+            setUi("Access Granted:\n" + name, "Door UNLOCKED. Choose options below.");
+            emit(Decision.UNLOCKED, name, now);
+        }
+    }
+
+    public void confirmNo() {
+        cancelConfirmation(true);
+    }
+
+    /** The class was ended from the unlocked screen; the door is locked without a cooldown. */
+    public void endClass() {
+        locked = true;
+    }
+
+    /** The professor is back from a break and has to be recognised again. */
+    public void backInClass() {
+        authorizedUnlocker = null;
+        resetAfterAction();
+        setUi("Professor Back in Class", "Please scan to confirm identity.");
+    }
+
+    /** A new visit to the recognition screen: locked, no cooldown, nothing pending. */
+    public void reset() {
+        stopTimers();
+        locked = true;
+        awaitingLockerRecognition = false;
+        awaitingLockConfirmation = false;
+        awaitingUnlockConfirmation = false;
+        authorizedUnlocker = null;
+        lastLockMillis = Long.MIN_VALUE / 2;
+        lastMatchName = "";
+        resetAfterAction();
+        setUi("Awaiting Recognition", "Scanning for faculty...");
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    public boolean isAwaitingConfirmation() {
+        return awaitingLockConfirmation || awaitingUnlockConfirmation;
+    }
+
+    public String getAuthorizedUnlocker() {
+        return authorizedUnlocker;
+    }
+
+    public String getStableMatchName() {
+        return stableMatchName;
+    }
+
+    public int getStableMatchCount() {
+        return stableMatchCount;
+    }
+
+    private void updateStability(String candidate) {
+        if (!candidate.equals(lastMatchName)) {
+            stableMatchCount = 0;
+            lastMatchName = candidate;
+        }
+        stableMatchCount++;
+
+        if (stableMatchCount >= stabilityFrames) {
+            stableMatchName = candidate;
+        } else if (candidate.equals(SCANNING)) {
+            stableMatchName = SCANNING;
+        }
+    }
+
+    private void resetStability() {
+        stableMatchCount = 0;
+        stableMatchName = SCANNING;
+        currentBestMatch = SCANNING;
+    }
+
+    private void resetAfterAction() {
+        authorizedLocker = null;
+        resetStability();
+    }
+
+    private void cancelConfirmation(boolean byUser) {
+        long now = clock.nowMillis();
+        stopTimers();
+
+        boolean wasAwaiting = isAwaitingConfirmation();
+        if (awaitingLockConfirmation) {
+            awaitingLockConfirmation = false;
+            awaitingLockerRecognition = false;
+            authorizedLocker = null;
+            if (byUser) setUi("Access Granted: " + authorizedUnlocker, "Lock cancelled by user. Door is UNLOCKED.");
+        } else if (awaitingUnlockConfirmation) {
+            awaitingUnlockConfirmation = false;
+            if (byUser) setUi("Access Denied", "Unlock cancelled by user. Awaiting recognition.");
+        }
+
+        String name = stableMatchName;
+        resetStability();
+        if (wasAwaiting && byUser) emit(Decision.CANCELLED, name, now);
+    }
+
+    private void startConfirmation(long now) {
+        confirmationDeadlineMillis = now + confirmationTimeoutMillis;
+        countdownRemaining = countdownSeconds;
+        nextCountdownMillis = now;
+        runTimers(now);
+    }
+
+    private void stopTimers() {
+        confirmationDeadlineMillis = NO_TIMER;
+        nextCountdownMillis = NO_TIMER;
+    }
+
+    private void runTimers(long now) {
+        while (nextCountdownMillis <= now) {
+            String action = awaitingLockConfirmation ? "Lock" : "Unlock";
+            String name = awaitingLockConfirmation ? authorizedLocker : stableMatchName;
+            if (countdownRemaining > 0) {
+                setUi("Confirm " + action + " Identity", "Is this you: " + name + "?\nAction auto-cancels in "
+                        + (confirmationTimeoutMillis / 1000) + "s (Visual countdown: " + countdownRemaining + "s).");
+                countdownRemaining--;
+                nextCountdownMillis += COUNTDOWN_STEP_MILLIS;
+            } else {
+                setUi("Confirm " + action + " Identity", awaitingConfirmationText(name));
+                nextCountdownMillis = NO_TIMER;
+            }
+        }
+
+        if (confirmationDeadlineMillis <= now) {
+            boolean lock = awaitingLockConfirmation;
+            String name = lock ? authorizedLocker : stableMatchName;
+            cancelConfirmation(false);
+            if (lock) {
+                setUi("Lock Timed Out", "Lock request cancelled due to inactivity.");
+            } else {
+                setUi("Unlock Timed Out", "Unlock request cancelled due to inactivity.");
+            }
+            emit(Decision.TIMED_OUT, name, now);
+        }
+    }
+
+    private String grantedText(String name) {
+        if (grantedText == null || name != grantedName) {
+            grantedName = name;
+            grantedText = "Access Granted: " + name;
+        }
+        return grantedText;
+    }
+
+    private String awaitingConfirmationText(String name) {
+        if (confirmText == null || name != confirmName) {
+            confirmName = name;
+            confirmText = "Is this you: " + name + "? (Awaiting confirmation)";
+        }
+        return confirmText;
+    }
+
+    private String cooldownText(long remainingSeconds) {
+        if (remainingSeconds != cooldownSeconds) {
+            cooldownSeconds = remainingSeconds;
+            cooldownText = String.format("Unlock Cooldown Active: %d seconds remaining.", remainingSeconds);
+        }
+        return cooldownText;
+    }
+
+    private void setUi(String status, String countdown) {
+        boolean awaiting = isAwaitingConfirmation();
+        if (status.equals(this.status) && countdown.equals(this.countdown) && awaiting == confirmVisible) return;
+        this.status = status;
+        this.countdown = countdown;
+        this.confirmVisible = awaiting;
+        if (listener != null) listener.onUiState(status, countdown, awaiting);
+    }
+
+    private void emit(Decision decision, String facultyName, long timeMillis) {
+        if (listener != null) listener.onDecision(decision, facultyName, timeMillis);
+    }
+
+    private static boolean isKnown(String name) {
+        return !name.equals(UNKNOWN) && !name.equals(SCANNING);
+    }
+}
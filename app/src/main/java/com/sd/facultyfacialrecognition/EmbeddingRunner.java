@@ -0,0 +1,215 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * EmbeddingRunner feeds face tensors to the embedding model: it owns the model input and
+ * output, resizes the model to the batch size and falls back to one face at a time when
+ * the model cannot take a batch. FaceNet wraps the TFLite interpreter in a Model; tests
+ * pass a stand-in.
+ *
+ * Input and output are allocated once for maxBatch faces. The model keeps its resized
+ * shape: a smaller batch fills the first slots and ignores the rest, and the model only
+ * shrinks after SHRINK_AFTER_RUNS smaller batches in a row, so faces coming and going do
+ * not reallocate the interpreter's tensors every frame.
+ *
+ * Not thread-safe; FaceNet calls it under its own lock.
+ */
+public class EmbeddingRunner implements FaceEmbedder {
+
+    public static final int TENSOR_LENGTH = FaceTensorSampler.INPUT_SIZE * FaceTensorSampler.INPUT_SIZE * 3;
+
+    // Runs below the model's shape before it is resized down; about two seconds of frames
+    static final int SHRINK_AFTER_RUNS = 30;
+    // batchSize once the model cannot even be set to one face; nothing is retried after that
+    private static final int UNUSABLE = 0;
+
+    /** The interpreter calls the runner needs. */
+    public interface Model {
+        /** Resizes the input to count faces and reallocates the tensors. */
+        void resizeBatch(int count) throws Exception;
+
+        /** Runs the model on input, which holds exactly as many faces as output has rows. */
+        void run(ByteBuffer input, float[][] output) throws Exception;
+    }
+
+    public interface ErrorListener {
+        void onError(String message, Exception e);
+    }
+
+    /**
+     * Fills the model input (160x160x3 floats, normalized to [-1, 1]) at the buffer's position.
+     */
+    public interface TensorWriter {
+        void write(FloatBuffer input);
+    }
+
+    // Output rows, with views of the first n rows for every model shape n and of each
+    // single row for running faces one at a time
+    private static final class Output {
+        final float[][] rows;
+        final float[][][] shapes;
+        final float[][][] singles;
+
+        Output(int maxBatch, int embeddingSize) {
+            rows = new float[maxBatch][embeddingSize];
+            shapes = new float[maxBatch + 1][][];
+            singles = new float[maxBatch][][];
+            for (int n = 1; n <= maxBatch; n++) {
+                shapes[n] = new float[n][];
+                System.arraycopy(rows, 0, shapes[n], 0, n);
+            }
+            for (int i = 0; i < maxBatch; i++) singles[i] = new float[][]{rows[i]};
+        }
+    }
+
+    private final Model model;
+    private final int maxBatch;
+    private final ErrorListener errors;
+
+    // One input for maxBatch faces, with a view per model shape: the interpreter checks the
+    // buffer's capacity against its input tensor
+    private final FloatBuffer inputFloats;
+    private final ByteBuffer[] inputs;
+    // getEmbeddings() hands out its rows and results; getEmbedding() copies from its own rows
+    // so a single embedding never overwrites a batch the caller is still reading
+    private final Output batchOutput;
+    private final Output singleOutput;
+    private final float[][] results;
+
+    private int batchSize = 1;
+    private int smallerRuns;
+    // Cleared if the model cannot be resized to a batch, then batches run one face at a time
+    private boolean batchSupported = true;
+
+    public EmbeddingRunner(Model model, int embeddingSize, int maxBatch, ErrorListener errors) {
+        this.model = model;
+        this.maxBatch = maxBatch;
+        this.errors = errors;
+
+        ByteBuffer input = ByteBuffer.allocateDirect(4 * TENSOR_LENGTH * maxBatch).order(ByteOrder.nativeOrder());
+        inputFloats = input.asFloatBuffer();
+        inputs = new ByteBuffer[maxBatch + 1];
+        for (int n = 1; n <= maxBatch; n++) {
+            ByteBuffer view = input.duplicate();
+            view.limit(4 * TENSOR_LENGTH * n);
+            inputs[n] = view.slice().order(ByteOrder.nativeOrder());
+        }
+        batchOutput = new Output(maxBatch, embeddingSize);
+        singleOutput = new Output(maxBatch, embeddingSize);
+        results = new float[maxBatch][];
+    }
+
+    /** One L2-normalized embedding in a new array, or null if inference fails. */
+    public float[] getEmbedding(TensorWriter writer) {
+        if (!fitBatch(1)) return null;
+        inputFloats.rewind();
+        writer.write(inputFloats);
+
+        float[][] output = singleOutput.shapes[batchSize];
+        if (!run(output, "Error running inference")) return null;
+
+        float[] emb = output[0].clone();
+        l2Normalize(emb);
+        return emb;
+    }
+
+    /**
+     * Embeds the first count tensors (TENSOR_LENGTH floats each, as written by
+     * FaceTensorSampler) with a single model call, or one at a time if the model cannot
+     * take the batch. Entries of the result are null where inference failed. The result
+     * and its arrays are overwritten by the next call.
+     */
+    @Override
+    public float[][] getEmbeddings(float[][] tensors, int count) {
+        if (count > maxBatch) throw new IllegalArgumentException("Batch of " + count + " exceeds " + maxBatch);
+        if (count == 0) return results;
+
+        if (fitBatch(count)) {
+            inputFloats.rewind();
+            for (int i = 0; i < count; i++) inputFloats.put(tensors[i], 0, TENSOR_LENGTH);
+            boolean ok = run(batchOutput.shapes[batchSize], "Error running batched inference");
+            for (int i = 0; i < count; i++) results[i] = ok ? normalized(batchOutput.rows[i]) : null;
+            return results;
+        }
+
+        for (int i = 0; i < count; i++) {
+            results[i] = null;
+            if (!fitBatch(1)) continue;
+            inputFloats.rewind();
+            inputFloats.put(tensors[i], 0, TENSOR_LENGTH);
+            if (run(batchOutput.singles[i], "Error running inference")) results[i] = normalized(batchOutput.rows[i]);
+        }
+        return results;
+    }
+
+    public boolean isBatchSupported() {
+        return batchSupported;
+    }
+
+    /**
+     * Makes the model hold at least count faces. Resizing reallocates the interpreter's
+     * tensors, so it grows at once but only shrinks after a run of smaller batches.
+     * Returns false if the model cannot take count faces.
+     */
+    private boolean fitBatch(int count) {
+        if (batchSize == UNUSABLE) return false;
+        if (count == batchSize) {
+            smallerRuns = 0;
+            return true;
+        }
+        if (count < batchSize && ++smallerRuns < SHRINK_AFTER_RUNS) return true;
+        if (count > batchSize && !batchSupported) return false;
+
+        smallerRuns = 0;
+        try {
+            model.resizeBatch(count);
+            batchSize = count;
+            return true;
+        } catch (Exception e) {
+            batchSize = UNUSABLE;
+            if (count == 1) {
+                errors.onError("Model cannot be resized to a single face, embedding disabled", e);
+                return false;
+            }
+            errors.onError("Model does not accept a batch of " + count + ", embedding one face at a time", e);
+            batchSupported = false;
+        }
+        // The input may be half resized; force it back to a single face, which is still not
+        // the batch the caller asked for
+        try {
+            model.resizeBatch(1);
+            batchSize = 1;
+        } catch (Exception e) {
+            errors.onError("Model cannot be resized to a single face, embedding disabled", e);
+        }
+        return false;
+    }
+
+    private boolean run(float[][] output, String message) {
+        ByteBuffer input = inputs[batchSize];
+        input.rewind();
+        try {
+            model.run(input, output);
+            return true;
+        } catch (Exception e) {
+            errors.onError(message, e);
+            return false;
+        }
+    }
+
+    private static float[] normalized(float[] emb) {
+        l2Normalize(emb);
+        return emb;
+    }
+
+    private static void l2Normalize(float[] emb) {
+        double sum = 0.0;
+        for (float v : emb) sum += v * v;
+        double norm = Math.sqrt(sum);
+        if (norm == 0) return;
+        for (int i = 0; i < emb.length; i++) emb[i] /= norm;
+    }
+}
@@ -0,0 +1,112 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EnrollmentDiversityFilter decides which captured face crops are worth keeping during
+ * camera enrollment. Each crop is reduced to a small zero-mean luma signature and is only
+ * kept if it is far enough from every signature kept so far.
+ */
+public class EnrollmentDiversityFilter {
+
+    public static final int SIGNATURE_SIZE = 16;
+
+    private final float minDistance;
+    private final int targetCount;
+    private final long timeoutMillis;
+
+    private final List<float[]> keptSignatures = new ArrayList<>();
+    private long startMillis;
+
+    public EnrollmentDiversityFilter(float minDistance, int targetCount, long timeoutMillis) {
+        this.minDistance = minDistance;
+        this.targetCount = targetCount;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void start(long nowMillis) {
+        keptSignatures.clear();
+        startMillis = nowMillis;
+    }
+
+    /**
+     * Downsamples an ARGB face crop to SIGNATURE_SIZE x SIGNATURE_SIZE luma by box averaging,
+     * removes the mean and L2-normalizes it, so the distance ignores overall brightness.
+     */
+    public static float[] computeSignature(int[] argb, int width, int height) {
+        float[] sig = new float[SIGNATURE_SIZE * SIGNATURE_SIZE];
+        int[] counts = new int[sig.length];
+
+        for (int y = 0; y < height; y++) {
+            int sy = y * SIGNATURE_SIZE / height;
+            for (int x = 0; x < width; x++) {
+                int sx = x * SIGNATURE_SIZE / width;
+                int pixel = argb[y * width + x];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                int idx = sy * SIGNATURE_SIZE + sx;
+                sig[idx] += 0.299f * r + 0.587f * g + 0.114f * b;
+                counts[idx]++;
+            }
+        }
+
+        float mean = 0f;
+        for (int i = 0; i < sig.length; i++) {
+            if (counts[i] > 0) sig[i] /= counts[i];
+            mean += sig[i];
+        }
+        mean /= sig.length;
+
+        float norm = 0f;
+        for (int i = 0; i < sig.length; i++) {
+            sig[i] -= mean;
+            norm += sig[i] * sig[i];
+        }
+        norm = (float) Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < sig.length; i++) sig[i] /= norm;
+        }
+        return sig;
+    }
+
+    /**
+     * Whether the frame is worth storing: the target is not reached yet and the signature is
+     * at least minDistance away from all kept signatures. Nothing is kept until keep().
+     */
+    public boolean isDiverse(float[] signature) {
+        if (isTargetReached()) return false;
+        for (float[] kept : keptSignatures) {
+            if (FaceNet.distance(signature, kept) < minDistance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Counts the frame as kept; call once it is actually stored. */
+    public void keep(float[] signature) {
+        keptSignatures.add(signature);
+    }
+
+    public int getKeptCount() {
+        return keptSignatures.size();
+    }
+
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    public boolean isTargetReached() {
+        return keptSignatures.size() >= targetCount;
+    }
+
+    public boolean isTimedOut(long nowMillis) {
+        return nowMillis - startMillis >= timeoutMillis;
+    }
+
+    public boolean isDone(long nowMillis) {
+        return isTargetReached() || isTimedOut(nowMillis);
+    }
+}
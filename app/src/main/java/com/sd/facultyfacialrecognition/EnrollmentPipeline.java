@@ -0,0 +1,387 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EnrollmentPipeline embeds a whole photo dataset on every core instead of one photo at a
+ * time. It has three stages connected by bounded queues:
+ *
+ *     decode pool (decodeThreads) -> detectors (detectorThreads, one backend each)
+ *         -> embedding stage (the run() thread, batches of up to batchSize)
+ *
+ * Each detector thread owns its backend, so several detections are in flight at once. The
+ * embedding stage is the only one touching the interpreter. It waits briefly to fill a
+ * batch, so FaceNet is not resized for every odd batch size. Aligned tensors come from a
+ * fixed pool, so a slow stage holds back the ones before it. Only a few decoded photos and
+ * tensors exist at once, however large the dataset.
+ *
+ * A photo decoded with its face already known (an aligned crop with a CropSidecar) skips
+ * detection and is aligned from that face. Detector backends are created on the first
+ * photo that needs one, so a dataset of such crops never loads the detector.
+ *
+ * Every photo finishes exactly once, embedded or failed (unreadable, no face, inference
+ * error), and the listener hears about each one. cancel() from any thread stops every
+ * stage and makes run() throw CancellationException; a detector that cannot be created
+ * stops them too, and run() rethrows its exception. Pure Java: decoding, detectors and
+ * the embedder are injected, BitmapFactory, ML Kit and FaceNet on the device.
+ */
+public class EnrollmentPipeline {
+
+    private static final int TENSOR_LENGTH = FaceTensorSampler.INPUT_SIZE * FaceTensorSampler.INPUT_SIZE * 3;
+    // How often blocked stages look for cancellation and the end of their input
+    private static final long POLL_MILLIS = 50;
+    // How long the embedding stage waits for a batch to fill once it has one tensor
+    private static final long BATCH_WAIT_MILLIS = 20;
+
+    /** One photo as upright ARGB pixels, with its face when that is already known. */
+    public static class Photo {
+        public final int[] argb;
+        public final int width;
+        public final int height;
+        public final DetectedFace face;
+
+        public Photo(int[] argb, int width, int height) {
+            this(argb, width, height, null);
+        }
+
+        public Photo(int[] argb, int width, int height, DetectedFace face) {
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+            this.face = face;
+        }
+    }
+
+    public interface Decoder {
+        /** The photo's pixels, or null if the file is not a readable image. Called from several threads. */
+        Photo decode(File file) throws Exception;
+    }
+
+    public interface DetectorFactory {
+        /** A new backend for one detector thread; the pipeline closes it. */
+        FaceDetectorBackend create();
+    }
+
+    public interface Listener {
+        /** Called from the pipeline's threads after every photo, embedded or not. */
+        void onProgress(int done, int total);
+    }
+
+    // One photo of the dataset; index is its place in the listing
+    private static final class Job {
+        final int index;
+        final File file;
+
+        Job(int index, File file) {
+            this.index = index;
+            this.file = file;
+        }
+    }
+
+    private static final class Decoded {
+        final Job job;
+        final Photo photo;
+
+        Decoded(Job job, Photo photo) {
+            this.job = job;
+            this.photo = photo;
+        }
+    }
+
+    private static final class Aligned {
+        final Job job;
+        final float[] tensor;
+
+        Aligned(Job job, float[] tensor) {
+            this.job = job;
+            this.tensor = tensor;
+        }
+    }
+
+    private final Decoder decoder;
+    private final DetectorFactory detectorFactory;
+    private final FaceEmbedder embedder;
+    private final int decodeThreads;
+    private final int detectorThreads;
+    private final int batchSize;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger nextJob = new AtomicInteger();
+    private final AtomicInteger liveDecoders = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger embedded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger detected = new AtomicInteger();
+    private final AtomicInteger trusted = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile RuntimeException failure;
+    private boolean started = false;
+
+    private List<Job> jobs;
+    private float[][] results;
+    private Listener listener;
+    private BlockingQueue<Decoded> decoded;
+    private BlockingQueue<Aligned> aligned;
+    private BlockingQueue<float[]> freeTensors;
+
+    public EnrollmentPipeline(Decoder decoder, DetectorFactory detectorFactory, FaceEmbedder embedder,
+                              int decodeThreads, int detectorThreads, int batchSize) {
+        this.decoder = decoder;
+        this.detectorFactory = detectorFactory;
+        this.embedder = embedder;
+        this.decodeThreads = Math.max(1, decodeThreads);
+        this.detectorThreads = Math.max(1, detectorThreads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Embeds every photo and blocks until all are done, running the embedding stage on the
+     * calling thread. Returns the embeddings per identity in photo order; identities with no
+     * usable photo map to an empty list. A pipeline runs once.
+     */
+    public Map<String, List<float[]>> run(Map<String, List<File>> photos, Listener listener)
+            throws InterruptedException {
+        synchronized (this) {
+            if (started) throw new IllegalStateException("An EnrollmentPipeline runs once");
+            started = true;
+        }
+        this.listener = listener;
+        jobs = new ArrayList<>();
+        for (List<File> files : photos.values()) {
+            for (File file : files) jobs.add(new Job(jobs.size(), file));
+        }
+        results = new float[jobs.size()][];
+
+        int tensors = 2 * batchSize + detectorThreads;
+        decoded = new ArrayBlockingQueue<>(detectorThreads);
+        aligned = new ArrayBlockingQueue<>(tensors);
+        freeTensors = new ArrayBlockingQueue<>(tensors);
+        for (int i = 0; i < tensors; i++) freeTensors.add(new float[TENSOR_LENGTH]);
+
+        try {
+            startWorkers();
+            runEmbedding();
+        } finally {
+            stopWorkers();
+        }
+        if (failure != null) throw failure;
+        if (cancelled) throw new CancellationException("Enrollment cancelled");
+
+        Map<String, List<float[]>> embeddings = new LinkedHashMap<>();
+        int index = 0;
+        for (Map.Entry<String, List<File>> entry : photos.entrySet()) {
+            List<float[]> list = new ArrayList<>();
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                float[] embedding = results[index++];
+                if (embedding != null) list.add(embedding);
+            }
+            embeddings.put(entry.getKey(), list);
+        }
+        return embeddings;
+    }
+
+    /** Stops every stage; run() then throws CancellationException. */
+    public void cancel() {
+        cancelled = true;
+        stopAll();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getEmbeddedCount() {
+        return embedded.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /** Photos aligned from the face they came with, without detection. */
+    public int getTrustedCount() {
+        return trusted.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "enrollment: %d/%d done, %d embedded, %d failed, %d detected, %d from sidecars"
+                        + " (%d decoders, %d detectors, batch %d)",
+                done.get(), jobs != null ? jobs.size() : 0, embedded.get(), failed.get(), detected.get(), trusted.get(),
+                decodeThreads, detectorThreads, batchSize);
+    }
+
+    private void startWorkers() {
+        liveDecoders.set(decodeThreads);
+        synchronized (workers) {
+            for (int i = 0; i < decodeThreads; i++) workers.add(new Thread(this::runDecoder, "enroll-decode-" + i));
+            for (int i = 0; i < detectorThreads; i++) workers.add(new Thread(this::runDetector, "enroll-detect-" + i));
+            for (Thread worker : workers) worker.start();
+        }
+    }
+
+    private void stopWorkers() throws InterruptedException {
+        stopAll();
+        for (Thread worker : workers) worker.join();
+    }
+
+    private void stopAll() {
+        synchronized (workers) {
+            for (Thread worker : workers) worker.interrupt();
+        }
+    }
+
+    // Decode stage: threads take the next photo in the listing until none are left
+    private void runDecoder() {
+        try {
+            int index;
+            while (!cancelled && (index = nextJob.getAndIncrement()) < jobs.size()) {
+                Job job = jobs.get(index);
+                long traceStart = TraceRecorder.GLOBAL.begin();
+                Photo photo = null;
+                try {
+                    photo = decoder.decode(job.file);
+                } catch (Exception e) {
+                    // Counted as failed below
+                }
+                TraceRecorder.GLOBAL.end("enroll: decode photo", traceStart);
+
+                if (photo == null) {
+                    finish(job, null);
+                } else {
+                    decoded.put(new Decoded(job, photo));
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled
+        } finally {
+            liveDecoders.decrementAndGet();
+        }
+    }
+
+    // Detect stage: first face of each photo, or the one it came with, warped straight into a pooled tensor
+    private void runDetector() {
+        FaceDetectorBackend detector = null;
+        FaceAlignment alignment = new FaceAlignment();
+        try {
+            while (!cancelled) {
+                Decoded item = decoded.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    // Decoders put before they finish, so an empty queue after the last one is the end
+                    if (liveDecoders.get() == 0 && decoded.isEmpty()) return;
+                    continue;
+                }
+
+                Photo photo = item.photo;
+                if (photo.face == null && detector == null) detector = detectorFactory.create();
+
+                long traceStart = TraceRecorder.GLOBAL.begin();
+                float[] tensor = null;
+                try {
+                    DetectedFace face = photo.face;
+                    if (face != null) {
+                        trusted.incrementAndGet();
+                    } else {
+                        detected.incrementAndGet();
+                        List<DetectedFace> faces = detector.detect(photo.argb, photo.width, photo.height);
+                        if (!faces.isEmpty()) face = faces.get(0);
+                    }
+                    if (face != null) {
+                        alignment.setFromDetection(face.left, face.top, face.right, face.bottom,
+                                face.leftEyeX, face.leftEyeY, face.rightEyeX, face.rightEyeY);
+                        tensor = freeTensors.take();
+                        FaceWarper.warpToTensor(photo.argb, photo.width, photo.height, alignment, FloatBuffer.wrap(tensor));
+                    }
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    if (tensor != null) freeTensors.offer(tensor);
+                    tensor = null;
+                }
+                TraceRecorder.GLOBAL.end(photo.face != null ? "enroll: align from sidecar" : "enroll: detect and align", traceStart);
+
+                if (tensor == null) {
+                    finish(item.job, null);
+                } else {
+                    aligned.put(new Aligned(item.job, tensor));
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled
+        } catch (RuntimeException e) {
+            // The decoders would wait for this detector forever
+            failure = e;
+            stopAll();
+        } finally {
+            if (detector != null) detector.close();
+        }
+    }
+
+    // Embedding stage, on the run() thread
+    private void runEmbedding() throws InterruptedException {
+        List<Aligned> batch = new ArrayList<>(batchSize);
+        float[][] tensors = new float[batchSize][];
+        while (!cancelled && failure == null && done.get() < jobs.size()) {
+            Aligned first = aligned.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                // Every worker ended without finishing the dataset, e.g. a detector failed to start
+                if (!workersAlive() && aligned.isEmpty()) break;
+                continue;
+            }
+
+            batch.clear();
+            batch.add(first);
+            while (batch.size() < batchSize) {
+                Aligned next = aligned.poll(BATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (next == null) break;
+                batch.add(next);
+            }
+
+            int count = batch.size();
+            for (int i = 0; i < count; i++) tensors[i] = batch.get(i).tensor;
+            long traceStart = TraceRecorder.GLOBAL.begin();
+            float[][] embeddings = embedder.getEmbeddings(tensors, count);
+            TraceRecorder.GLOBAL.end("enroll: embed batch", traceStart);
+
+            for (int i = 0; i < count; i++) {
+                Aligned item = batch.get(i);
+                float[] embedding = embeddings != null ? embeddings[i] : null;
+                // The embedder may reuse its arrays on the next call
+                finish(item.job, embedding != null ? embedding.clone() : null);
+                freeTensors.offer(item.tensor);
+                tensors[i] = null;
+            }
+        }
+    }
+
+    private boolean workersAlive() {
+        synchronized (workers) {
+            for (Thread worker : workers) {
+                if (worker.isAlive()) return true;
+            }
+        }
+        return false;
+    }
+
+    private void finish(Job job, float[] embedding) {
+        results[job.index] = embedding;
+        if (embedding != null) {
+            embedded.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+        int finished = done.incrementAndGet();
+        if (listener != null) listener.onProgress(finished, jobs.size());
+    }
+}
@@ -1,49 +1,81 @@
 package com.sd.facultyfacialrecognition;
 
-import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import com.google.android.gms.tasks.Tasks;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 
 import java.util.List;
 
 /**
- * FaceAligner detects a face in a bitmap, crops it, and resizes it to 160x160 for FaceNet.
+ * FaceAligner detects a face in a bitmap and warps it to the aligned 160x160 FaceNet input,
+ * using the same FaceAlignment as live recognition.
  */
 public class FaceAligner {
 
-    private final FaceDetector detector;
+    private final FaceDetectorBackend detector;
 
-    public FaceAligner(@NonNull Context context) {
-        // High-speed face detection
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
+    public FaceAligner(@NonNull FaceDetectorBackend detector) {
+        this.detector = detector;
+    }
+
+    /** The photo detector enrollment uses; one per thread, as backends are not thread-safe. */
+    public static FaceDetectorBackend createDetector() {
+        // High-speed face detection; eye landmarks drive the alignment
+        return new MlKitFaceDetectorBackend(new FaceDetectorOptions.Builder()
                 .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
                 .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
-                .build();
+                .build());
+    }
 
-        detector = FaceDetection.getClient(options);
+    /** An aligned crop and the sidecar that describes it. */
+    public static class AlignedCrop {
+        public final Bitmap bitmap;
+        public final CropSidecar sidecar;
+
+        AlignedCrop(Bitmap bitmap, CropSidecar sidecar) {
+            this.bitmap = bitmap;
+            this.sidecar = sidecar;
+        }
     }
 
     /**
-     * Detects the first face in the bitmap, crops it, and resizes to 160x160.
+     * Detects the first face in the bitmap and warps it to 160x160 in a single pass, with
+     * the sidecar to save next to the crop so a rebuild need not detect the face again.
      * Returns null if no face is found.
      */
-    public Bitmap alignFace(Bitmap bitmap) {
+    public AlignedCrop alignCrop(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        DetectedFace face = detectFace(bitmap, pixels);
+        if (face == null) return null;
+
+        FaceAlignment alignment = alignmentOf(face);
+        int[] aligned = new int[FaceWarper.OUTPUT_SIZE * FaceWarper.OUTPUT_SIZE];
+        FaceWarper.warp(pixels, width, height, alignment, aligned);
+        CropSidecar sidecar = CropSidecar.forCrop(face, alignment, aligned, FaceWarper.OUTPUT_SIZE, FaceWarper.OUTPUT_SIZE);
+        return new AlignedCrop(Bitmap.createBitmap(aligned, FaceWarper.OUTPUT_SIZE, FaceWarper.OUTPUT_SIZE,
+                Bitmap.Config.ARGB_8888), sidecar);
+    }
+
+    private static FaceAlignment alignmentOf(DetectedFace face) {
+        return new FaceAlignment().setFromDetection(face.left, face.top, face.right, face.bottom,
+                face.leftEyeX, face.leftEyeY, face.rightEyeX, face.rightEyeY);
+    }
+
+    // Fills pixels with the bitmap contents and runs detection on them
+    private DetectedFace detectFace(Bitmap bitmap, int[] pixels) {
         try {
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
 
             // Blocking call for simplicity
-            List<Face> faces = Tasks.await(detector.process(image));
+            List<DetectedFace> faces = detector.detect(pixels, width, height);
 
             if (faces.size() == 0) {
                 Log.d("FaceAligner", "No face detected.");
@@ -51,18 +83,7 @@ public class FaceAligner {
             }
 
             // Take the first detected face
-            Rect bounds = faces.get(0).getBoundingBox();
-
-            // Ensure bounds are within bitmap dimensions
-            int left = Math.max(bounds.left, 0);
-            int top = Math.max(bounds.top, 0);
-            int width = Math.min(bounds.width(), bitmap.getWidth() - left);
-            int height = Math.min(bounds.height(), bitmap.getHeight() - top);
-
-            Bitmap faceCrop = Bitmap.createBitmap(bitmap, left, top, width, height);
-
-            // Resize to 160x160 for FaceNet
-            return Bitmap.createScaledBitmap(faceCrop, 160, 160, true);
+            return faces.get(0);
 
         } catch (Exception e) {
             e.printStackTrace();
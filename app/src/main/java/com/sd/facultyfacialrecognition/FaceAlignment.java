@@ -0,0 +1,135 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * FaceAlignment is the single transform from the 160x160 FaceNet input to the upright
+ * source image. With both eyes known it is a similarity transform that puts the eyes at
+ * fixed canonical positions; otherwise it crops the padded face box. Camera frames
+ * (FaceTensorSampler) and photos (FaceWarper) both sample through it, so enrollment and
+ * recognition see faces framed the same way, and no intermediate crop or rotated bitmap
+ * is created.
+ *
+ * Instances are mutable and meant to be reused between frames.
+ */
+public class FaceAlignment {
+
+    public static final int OUTPUT_SIZE = 160;
+    public static final float PADDING_FACTOR = 0.15f;
+
+    // Where the image-left and image-right eye land in the output, in pixels
+    public static final float CANONICAL_LEFT_EYE_X = 56f;
+    public static final float CANONICAL_RIGHT_EYE_X = 104f;
+    public static final float CANONICAL_EYE_Y = 64f;
+    private static final float MIN_EYE_DISTANCE = 2f;
+
+    // Output pixel centre (u + 0.5, v + 0.5) -> source (x, y):
+    // x = m00 * u + m01 * v + m02, y = m10 * u + m11 * v + m12
+    float m00, m01, m02;
+    float m10, m11, m12;
+
+    /**
+     * Uses the eyes when both are present and not degenerate, the padded box otherwise.
+     * All coordinates are in the upright source image; pass NaN for a missing eye.
+     */
+    public FaceAlignment setFromDetection(float left, float top, float right, float bottom,
+                                          float eyeAx, float eyeAy, float eyeBx, float eyeBy) {
+        if (!Float.isNaN(eyeAx) && !Float.isNaN(eyeBx)
+                && Math.hypot(eyeBx - eyeAx, eyeBy - eyeAy) >= MIN_EYE_DISTANCE) {
+            return setFromEyes(eyeAx, eyeAy, eyeBx, eyeBy);
+        }
+        return setFromBox(left, top, right, bottom, eyeAx, eyeAy, eyeBx, eyeBy);
+    }
+
+    /**
+     * Similarity transform (rotation, uniform scale, translation) that maps the two eyes
+     * onto the canonical eye positions. Eye order does not matter.
+     */
+    public FaceAlignment setFromEyes(float eyeAx, float eyeAy, float eyeBx, float eyeBy) {
+        float leftX = eyeAx, leftY = eyeAy, rightX = eyeBx, rightY = eyeBy;
+        if (eyeBx < eyeAx) {
+            leftX = eyeBx;
+            leftY = eyeBy;
+            rightX = eyeAx;
+            rightY = eyeAy;
+        }
+
+        float dx = rightX - leftX;
+        float dy = rightY - leftY;
+        float scale = (float) Math.hypot(dx, dy) / (CANONICAL_RIGHT_EYE_X - CANONICAL_LEFT_EYE_X);
+        double angle = Math.atan2(dy, dx);
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+
+        m00 = scale * cos;
+        m01 = -scale * sin;
+        m10 = scale * sin;
+        m11 = scale * cos;
+
+        // Output pixel centre (u + 0.5, v + 0.5) relative to the canonical left eye
+        float du = 0.5f - CANONICAL_LEFT_EYE_X;
+        float dv = 0.5f - CANONICAL_EYE_Y;
+        m02 = leftX + m00 * du + m01 * dv;
+        m12 = leftY + m10 * du + m11 * dv;
+        return this;
+    }
+
+    /**
+     * Aligns to a detector box in upright image coordinates. The eye positions level the
+     * face when both are given (pass NaN otherwise); their order does not matter.
+     */
+    public FaceAlignment setFromBox(float left, float top, float right, float bottom,
+                                    float eyeAx, float eyeAy, float eyeBx, float eyeBy) {
+        float cropWidth = (right - left) * (1 + 2 * PADDING_FACTOR);
+        float cropHeight = (bottom - top) * (1 + 2 * PADDING_FACTOR);
+        float centerX = (left + right) / 2f;
+        float centerY = (top + bottom) / 2f;
+
+        double angle = 0;
+        if (!Float.isNaN(eyeAx) && !Float.isNaN(eyeBx)) {
+            float dx = eyeBx - eyeAx;
+            float dy = eyeBy - eyeAy;
+            // Measure from the image-left eye so the face is never turned upside down
+            if (dx < 0) {
+                dx = -dx;
+                dy = -dy;
+            }
+            angle = Math.atan2(dy, dx);
+        }
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+
+        float sx = cropWidth / OUTPUT_SIZE;
+        float sy = cropHeight / OUTPUT_SIZE;
+        m00 = sx * cos;
+        m01 = -sy * sin;
+        m10 = sx * sin;
+        m11 = sy * cos;
+
+        // Output pixel 0 sits half a pixel in from the crop corner
+        float u0 = 0.5f - OUTPUT_SIZE / 2f;
+        m02 = centerX + m00 * u0 + m01 * u0;
+        m12 = centerY + m10 * u0 + m11 * u0;
+        return this;
+    }
+
+    public float mapX(float u, float v) {
+        return m00 * u + m01 * v + m02;
+    }
+
+    public float mapY(float u, float v) {
+        return m10 * u + m11 * v + m12;
+    }
+
+    /**
+     * Inverse of mapX/mapY: where a source point lands in the output, in output pixel
+     * edges (0 to OUTPUT_SIZE), the convention detector boxes use.
+     */
+    public float unmapX(float x, float y) {
+        float det = m00 * m11 - m01 * m10;
+        return (m11 * (x - m02) - m01 * (y - m12)) / det + 0.5f;
+    }
+
+    public float unmapY(float x, float y) {
+        float det = m00 * m11 - m01 * m10;
+        return (m00 * (y - m12) - m10 * (x - m02)) / det + 0.5f;
+    }
+}
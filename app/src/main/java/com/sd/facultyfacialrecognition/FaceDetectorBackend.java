@@ -0,0 +1,27 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.List;
+
+/**
+ * A face detector the recognition pipeline can run on camera frames and photos.
+ *
+ * Implementations: MlKitFaceDetectorBackend (Google's detector, with tracking ids and
+ * head pose) and BlazeFaceDetectorBackend (a TFLite model on the same runtime as FaceNet,
+ * which also runs on the JVM for off-device benchmarks). Not thread-safe; use one instance
+ * per thread.
+ */
+public interface FaceDetectorBackend {
+
+    /**
+     * Detects faces inside the upright region of the frame. Results are in upright frame
+     * coordinates; eyes are NaN when the backend gives no landmarks.
+     */
+    List<DetectedFace> detect(YuvFrame frame, float left, float top, float right, float bottom) throws Exception;
+
+    /**
+     * Detects faces in an upright ARGB image, e.g. a decoded photo.
+     */
+    List<DetectedFace> detect(int[] argb, int width, int height) throws Exception;
+
+    void close();
+}
@@ -0,0 +1,15 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * Turns aligned face tensors into embeddings. FaceNet on the device; PipelineReplay can run
+ * with any stand-in off-device.
+ */
+public interface FaceEmbedder {
+
+    /**
+     * Embeds the first count tensors (FaceTensorSampler layout, 160x160x3 floats each).
+     * Entries are null where inference failed; the result is null if the embedder is closed.
+     * The result and its arrays may be reused by the next call, so copy what you keep.
+     */
+    float[][] getEmbeddings(float[][] tensors, int count);
+}
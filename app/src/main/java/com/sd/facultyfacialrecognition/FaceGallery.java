@@ -0,0 +1,154 @@
+package com.sd.facultyfacialrecognition;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FaceGallery is the in-memory form of embeddings.json: the enrolled faculty, their
+ * embeddings, and the fingerprint of the FaceNet model that produced them.
+ *
+ * Galleries written before fingerprints existed are a plain name -> embeddings map and
+ * load with a null fingerprint, which never matches a running model.
+ */
+public class FaceGallery {
+
+    public static final String FILE_NAME = "embeddings.json";
+    public static final String PENDING_FILE_NAME = "embeddings.pending.json";
+    private static final int FORMAT_VERSION = 2;
+
+    private String modelFingerprint;
+    private final Map<String, List<float[]>> embeddings = new LinkedHashMap<>();
+
+    public FaceGallery(String modelFingerprint) {
+        this.modelFingerprint = modelFingerprint;
+    }
+
+    // Shape of the versioned file as Gson sees it
+    private static class GalleryFile {
+        int formatVersion;
+        String modelFingerprint;
+        Map<String, List<float[]>> faculty;
+    }
+
+    public static FaceGallery load(File file) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            return read(reader);
+        }
+    }
+
+    public static FaceGallery read(Reader reader) {
+        JsonElement root = JsonParser.parseReader(reader);
+        Gson gson = new Gson();
+
+        if (root == null || !root.isJsonObject()) {
+            return new FaceGallery(null);
+        }
+
+        JsonObject obj = root.getAsJsonObject();
+        if (obj.has("formatVersion")) {
+            GalleryFile file = gson.fromJson(obj, GalleryFile.class);
+            FaceGallery gallery = new FaceGallery(file.modelFingerprint);
+            if (file.faculty != null) gallery.embeddings.putAll(file.faculty);
+            return gallery;
+        }
+
+        // Legacy gallery: the whole object is the faculty map
+        Map<String, List<float[]>> legacy = gson.fromJson(
+                obj, new TypeToken<Map<String, List<float[]>>>() {}.getType());
+        FaceGallery gallery = new FaceGallery(null);
+        if (legacy != null) gallery.embeddings.putAll(legacy);
+        return gallery;
+    }
+
+    /**
+     * Writes to a temporary file first and renames it over the target, so a reader never
+     * sees a half-written gallery.
+     */
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            write(writer);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getAbsolutePath());
+        }
+    }
+
+    public void write(Writer writer) {
+        GalleryFile file = new GalleryFile();
+        file.formatVersion = FORMAT_VERSION;
+        file.modelFingerprint = modelFingerprint;
+        file.faculty = embeddings;
+        new Gson().toJson(file, writer);
+    }
+
+    public String getModelFingerprint() {
+        return modelFingerprint;
+    }
+
+    public void setModelFingerprint(String modelFingerprint) {
+        this.modelFingerprint = modelFingerprint;
+    }
+
+    public boolean isCompatibleWith(String fingerprint) {
+        return modelFingerprint != null && modelFingerprint.equals(fingerprint);
+    }
+
+    public Map<String, List<float[]>> getEmbeddings() {
+        return embeddings;
+    }
+
+    public List<String> getNames() {
+        return new ArrayList<>(embeddings.keySet());
+    }
+
+    public List<float[]> get(String name) {
+        return embeddings.get(name);
+    }
+
+    public void put(String name, List<float[]> faceEmbeddings) {
+        embeddings.put(name, faceEmbeddings);
+    }
+
+    public boolean remove(String name) {
+        return embeddings.remove(name) != null;
+    }
+
+    public boolean isEmpty() {
+        return embeddings.isEmpty();
+    }
+
+    /**
+     * Average of all embeddings of one person, used as their single reference vector.
+     * Returns null for an empty list.
+     */
+    public static float[] centroid(List<float[]> faceEmbeddings) {
+        if (faceEmbeddings == null || faceEmbeddings.isEmpty()) return null;
+
+        int embSize = faceEmbeddings.get(0).length;
+        float[] avgEmb = new float[embSize];
+        for (float[] emb : faceEmbeddings) {
+            for (int j = 0; j < embSize; j++) {
+                avgEmb[j] += emb[j];
+            }
+        }
+        for (int j = 0; j < embSize; j++) {
+            avgEmb[j] /= faceEmbeddings.size();
+        }
+        return avgEmb;
+    }
+}
@@ -0,0 +1,132 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.Map;
+
+/**
+ * FaceMatcher finds the enrolled identity nearest to an embedding, by Euclidean distance
+ * to each identity's centroid.
+ *
+ * The gallery is held as an immutable snapshot of parallel arrays that setGallery()
+ * replaces in one write, so the matching thread never sees a half-loaded gallery and
+ * match() neither locks, iterates a map nor allocates. The result goes into a Result the
+ * caller owns and reuses.
+ *
+ * Given a HotLog category, match() logs every comparison of the faces it samples.
+ */
+public class FaceMatcher {
+
+    /** Outcome of one match; reuse one per thread. */
+    public static class Result {
+        /** The nearest identity, or UNKNOWN when it is beyond the threshold. */
+        public String name = DoorStateMachine.UNKNOWN;
+        /** The nearest identity whatever its distance; UNKNOWN with an empty gallery. */
+        public String nearestName = DoorStateMachine.UNKNOWN;
+        public float distance = Float.MAX_VALUE;
+
+        public boolean isKnown() {
+            return !name.equals(DoorStateMachine.UNKNOWN);
+        }
+    }
+
+    private static final class Snapshot {
+        final String[] names;
+        final float[][] centroids;
+
+        Snapshot(String[] names, float[][] centroids) {
+            this.names = names;
+            this.centroids = centroids;
+        }
+    }
+
+    private final HotLog.Category log;
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new float[0][]);
+
+    public FaceMatcher() {
+        this(null);
+    }
+
+    public FaceMatcher(HotLog.Category log) {
+        this.log = log;
+    }
+
+    /** Replaces the gallery with a copy of the given centroids; null centroids are left out. */
+    public void setGallery(Map<String, float[]> centroids) {
+        int count = 0;
+        String[] names = new String[centroids.size()];
+        float[][] vectors = new float[names.length][];
+        for (Map.Entry<String, float[]> entry : centroids.entrySet()) {
+            // A concurrent map can grow while it is copied
+            if (count == names.length || entry.getValue() == null) continue;
+            names[count] = entry.getKey();
+            vectors[count++] = entry.getValue().clone();
+        }
+        if (count < names.length) {
+            String[] trimmedNames = new String[count];
+            float[][] trimmedVectors = new float[count][];
+            System.arraycopy(names, 0, trimmedNames, 0, count);
+            System.arraycopy(vectors, 0, trimmedVectors, 0, count);
+            names = trimmedNames;
+            vectors = trimmedVectors;
+        }
+        snapshot = new Snapshot(names, vectors);
+    }
+
+    public int size() {
+        return snapshot.names.length;
+    }
+
+    /**
+     * L2-normalizes the embedding in place and writes the nearest identity into result,
+     * with name UNKNOWN when its distance is above threshold.
+     */
+    public void match(float[] embedding, float threshold, Result result) {
+        normalize(embedding);
+
+        Snapshot gallery = snapshot;
+        // One sampling decision per face, so a logged face has all of its comparisons
+        boolean logged = HotLog.DEBUG_COMPILED && log != null && log.sample(HotLog.DEBUG);
+        String bestName = DoorStateMachine.UNKNOWN;
+        float bestSquared = Float.MAX_VALUE;
+        for (int i = 0; i < gallery.names.length; i++) {
+            float squared = squaredDistance(embedding, gallery.centroids[i]);
+            if (logged) {
+                log.event(HotLog.DEBUG, "compare").put("name", gallery.names[i])
+                        .put("distance", Math.sqrt(squared)).commit();
+            }
+            if (squared < bestSquared) {
+                bestSquared = squared;
+                bestName = gallery.names[i];
+            }
+        }
+
+        float bestDistance = bestSquared == Float.MAX_VALUE ? Float.MAX_VALUE : (float) Math.sqrt(bestSquared);
+        if (logged) {
+            log.event(HotLog.DEBUG, "best").put("name", bestName).put("distance", bestDistance)
+                    .put("threshold", threshold).commit();
+        }
+
+        result.nearestName = bestName;
+        result.distance = bestDistance;
+        result.name = bestDistance > threshold ? DoorStateMachine.UNKNOWN : bestName;
+    }
+
+    public static void normalize(float[] embedding) {
+        float norm = 0;
+        for (float v : embedding) norm += v * v;
+        norm = (float) Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < embedding.length; i++) embedding[i] /= norm;
+        }
+    }
+
+    // As FaceNet.distance, without the square root; mismatched lengths never match
+    private static float squaredDistance(float[] a, float[] b) {
+        if (a.length != b.length) return Float.MAX_VALUE;
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
@@ -1,50 +1,74 @@
 package com.sd.facultyfacialrecognition;
 
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.util.Log;
 
 import org.tensorflow.lite.Interpreter;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
-public class FaceNet {
+public class FaceNet implements FaceEmbedder {
     private static final String TAG = "FaceNet";
     private Interpreter tflite;
     private static final int INPUT_SIZE = 160;
-    private static final int EMBEDDING_SIZE = 128;
+    public static final int EMBEDDING_SIZE = 128;
+    private String modelFingerprint;
+
+    private final EmbeddingRunner runner;
 
     public FaceNet(Context context, String modelPath) throws IOException {
+        this(context, modelPath, FrameTask.MAX_FACES);
+    }
+
+    /** maxBatch is the most tensors getEmbeddings() is given at once. */
+    public FaceNet(Context context, String modelPath, int maxBatch) throws IOException {
+        MappedByteBuffer model = TfliteRuntime.loadModel(context, modelPath, "facenet.tflite");
+        modelFingerprint = fingerprint(model);
+        tflite = new Interpreter(model, TfliteRuntime.createOptions());
+        runner = new EmbeddingRunner(new EmbeddingRunner.Model() {
+            @Override
+            public void resizeBatch(int count) {
+                tflite.resizeInput(0, new int[]{count, INPUT_SIZE, INPUT_SIZE, 3});
+                tflite.allocateTensors();
+            }
+
+            @Override
+            public void run(ByteBuffer input, float[][] output) {
+                tflite.run(input, output);
+            }
+        }, EMBEDDING_SIZE, maxBatch, (message, e) -> Log.e(TAG, message, e));
+        Log.d(TAG, "FaceNet model fingerprint: " + modelFingerprint);
+    }
+
+    /**
+     * SHA-256 of the model bytes. Galleries are stamped with this so embeddings from a
+     * different model are never compared against ours.
+     */
+    public static String fingerprint(ByteBuffer model) {
         try {
-            tflite = new Interpreter(loadModelFile(context, modelPath));
-            Log.d(TAG, "FaceNet model loaded successfully from file path.");
-        } catch (Exception e) {
-            Log.w(TAG, "Could not load model from file, trying assets...");
-            tflite = new Interpreter(loadModelFromAssets(context, "facenet.tflite"));
-            Log.d(TAG, "FaceNet model loaded successfully from assets.");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.duplicate());
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
-    private MappedByteBuffer loadModelFile(Context context, String modelPath) throws IOException {
-        FileInputStream fis = new FileInputStream(modelPath);
-        FileChannel fc = fis.getChannel();
-        long declaredLength = fc.size();
-        return fc.map(FileChannel.MapMode.READ_ONLY, 0, declaredLength);
+    public String getModelFingerprint() {
+        return modelFingerprint;
     }
 
-    private MappedByteBuffer loadModelFromAssets(Context context, String assetName) throws IOException {
-        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(assetName);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    /**
+     * Fills the model input (160x160x3 floats, normalized to [-1, 1]) at the buffer's position.
+     */
+    public interface TensorWriter extends EmbeddingRunner.TensorWriter {
     }
 
     public float[] getEmbedding(Bitmap bitmap) {
@@ -53,46 +77,38 @@ public class FaceNet {
             return null;
         }
 
-        // Scaling (from InputImageUtils.getBitmapFromInputImage or alignAndCropFace)
-        // must result in a face that can be scaled to 160x160 here
+        // Expects an already aligned face (FaceAligner output or a stored crop)
         Bitmap scaled = Bitmap.createScaledBitmap(bitmap, INPUT_SIZE, INPUT_SIZE, true);
+        int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+        scaled.getPixels(pixels, 0, INPUT_SIZE, 0, 0, INPUT_SIZE, INPUT_SIZE);
 
-        float[][][][] input = new float[1][INPUT_SIZE][INPUT_SIZE][3];
-        for (int y = 0; y < INPUT_SIZE; y++) {
-            for (int x = 0; x < INPUT_SIZE; x++) {
-                int pixel = scaled.getPixel(x, y);
-                float r = ((pixel >> 16) & 0xFF) / 255.0f;
-                float g = ((pixel >> 8) & 0xFF) / 255.0f;
-                float b = (pixel & 0xFF) / 255.0f;
-                // **Pre-processing (Normalization to [-1, 1]):**
-                // This must exactly match the model's training!
-                input[0][y][x][0] = (r - 0.5f) * 2.0f;
-                input[0][y][x][1] = (g - 0.5f) * 2.0f;
-                input[0][y][x][2] = (b - 0.5f) * 2.0f;
-            }
-        }
+        return getEmbedding(input -> FaceTensorSampler.writePixels(pixels, input));
+    }
 
-        float[][] embedding = new float[1][EMBEDDING_SIZE];
-        try {
-            tflite.run(input, embedding);
-        } catch (Exception e) {
-            Log.e(TAG, "Error running inference", e);
+    // The interpreter is not thread-safe; recognition and background re-embedding share it
+    public synchronized float[] getEmbedding(TensorWriter writer) {
+        if (tflite == null) {
+            Log.e(TAG, "Interpreter is closed");
             return null;
         }
 
-        float[] emb = embedding[0];
-        // **L2 Normalization (often required for FaceNet embeddings):**
-        l2Normalize(emb);
-
-        return emb;
+        return runner.getEmbedding(writer);
     }
 
-    private void l2Normalize(float[] emb) {
-        double sum = 0.0;
-        for (float v : emb) sum += v * v;
-        double norm = Math.sqrt(sum);
-        if (norm == 0) return;
-        for (int i = 0; i < emb.length; i++) emb[i] /= norm;
+    /**
+     * Embeds the first count tensors (as written by FaceTensorSampler) with a single
+     * interpreter call if the model takes a batch. Entries of the result are null where
+     * inference failed; the whole result is null if the interpreter is closed. The result
+     * is reused by the next call.
+     */
+    @Override
+    public synchronized float[][] getEmbeddings(float[][] tensors, int count) {
+        if (tflite == null) {
+            Log.e(TAG, "Interpreter is closed");
+            return null;
+        }
+
+        return runner.getEmbeddings(tensors, count);
     }
 
     public static float distance(float[] emb1, float[] emb2) {
@@ -108,7 +124,7 @@ public class FaceNet {
         return (float) Math.sqrt(sum);
     }
 
-    public void close() {
+    public synchronized void close() {
         if (tflite != null) {
             tflite.close();
             tflite = null;
@@ -3,20 +3,47 @@ package com.sd.facultyfacialrecognition;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
+/**
+ * FaceOverlayView draws the tracked face boxes over the camera preview.
+ *
+ * Analysis results arrive at analysis rate from the matching thread (beginFrame, addFace,
+ * endFrame). Each box then glides from where it is drawn towards its new position over
+ * about one analysis interval, driven by Choreographer callbacks, so the overlay moves at
+ * display rate whatever the analysis fps. Boxes are matched across results by tracking id.
+ * Drawing reuses preallocated state; nothing is allocated per frame or per face.
+ */
+public class FaceOverlayView extends View implements Choreographer.FrameCallback, FrameMatcher.Overlay {
+
+    private static final int MAX_FACES = FrameTask.MAX_FACES;
+
+    // Bounds on how long a box takes to reach its new position
+    private static final long MIN_GLIDE_NANOS = 16_000_000L;
+    private static final long MAX_GLIDE_NANOS = 250_000_000L;
 
-public class FaceOverlayView extends View {
-    private List<FaceGraphic> faces = new ArrayList<>();
     private Paint boxPaint;
     private Paint textPaint;
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    // Written by the publishing thread, guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private final int[] pendingIds = new int[MAX_FACES];
+    private final float[] pendingBoxes = new float[MAX_FACES * 4];
+    private final String[] pendingLabels = new String[MAX_FACES];
+    private int pendingCount = 0;
+    private int pendingImageWidth = 0;
+    private int pendingImageHeight = 0;
+    private boolean hasPending = false;
+    private boolean callbackPosted = false;
 
+    // UI thread only
+    private Track[] tracks = newTracks();
+    private Track[] spareTracks = newTracks();
+    private int trackCount = 0;
     private int imageWidth = 0;
     private int imageHeight = 0;
     private boolean isFrontCamera = true;
@@ -37,61 +64,203 @@ public class FaceOverlayView extends View {
         textPaint.setColor(Color.WHITE);
     }
 
-    public void setFaces(List<FaceGraphic> newFaces) {
-        this.faces = newFaces;
-        invalidate();
+    private static Track[] newTracks() {
+        Track[] result = new Track[MAX_FACES];
+        for (int i = 0; i < MAX_FACES; i++) result[i] = new Track();
+        return result;
     }
 
-    public void setImageSourceInfo(int width, int height, boolean isFront) {
-        this.imageWidth = width;
-        this.imageHeight = height;
+    /** Whether the preview is mirrored. UI thread. */
+    public void setFrontCamera(boolean isFront) {
         this.isFrontCamera = isFront;
+        invalidate();
+    }
+
+    /**
+     * Starts a new set of faces, in upright image coordinates of the given size. Any thread;
+     * follow with addFace for each face and endFrame.
+     */
+    @Override
+    public void beginFrame(int imageWidth, int imageHeight) {
+        synchronized (pendingLock) {
+            pendingImageWidth = imageWidth;
+            pendingImageHeight = imageHeight;
+            pendingCount = 0;
+            // Superseded; keeps a vsync from picking up a half-written set
+            hasPending = false;
+        }
+    }
+
+    @Override
+    public void addFace(int trackingId, float left, float top, float right, float bottom, String label) {
+        synchronized (pendingLock) {
+            if (pendingCount == MAX_FACES) return;
+            int i = pendingCount++;
+            pendingIds[i] = trackingId;
+            pendingBoxes[4 * i] = left;
+            pendingBoxes[4 * i + 1] = top;
+            pendingBoxes[4 * i + 2] = right;
+            pendingBoxes[4 * i + 3] = bottom;
+            pendingLabels[i] = label;
+        }
+    }
+
+    /** Publishes the faces added since beginFrame; they are picked up on the next vsync. */
+    @Override
+    public void endFrame() {
+        synchronized (pendingLock) {
+            hasPending = true;
+            postCallbackLocked();
+        }
+    }
+
+    private void postCallbackLocked() {
+        if (callbackPosted) return;
+        callbackPosted = true;
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        boolean animating = false;
+        synchronized (pendingLock) {
+            callbackPosted = false;
+            if (hasPending) {
+                applyPendingLocked(frameTimeNanos);
+                hasPending = false;
+            }
+        }
+
+        for (int i = 0; i < trackCount; i++) {
+            animating |= tracks[i].step(frameTimeNanos);
+        }
+        invalidate();
+
+        if (animating) {
+            synchronized (pendingLock) {
+                postCallbackLocked();
+            }
+        }
+    }
+
+    // Rebuilds the track list from the pending faces, keeping the drawn position of known ids
+    private void applyPendingLocked(long frameTimeNanos) {
+        imageWidth = pendingImageWidth;
+        imageHeight = pendingImageHeight;
+
+        Track[] next = spareTracks;
+        for (int i = 0; i < pendingCount; i++) {
+            Track previous = find(pendingIds[i]);
+            Track track = next[i];
+            if (previous != null) {
+                long interval = frameTimeNanos - previous.lastUpdateNanos;
+                track.copyFrom(previous);
+                track.retarget(pendingBoxes, 4 * i, frameTimeNanos,
+                        Math.max(MIN_GLIDE_NANOS, Math.min(MAX_GLIDE_NANOS, interval)));
+            } else {
+                track.place(pendingBoxes, 4 * i, frameTimeNanos);
+            }
+            track.trackingId = pendingIds[i];
+            track.label = pendingLabels[i];
+            pendingLabels[i] = null;
+        }
+
+        spareTracks = tracks;
+        tracks = next;
+        trackCount = pendingCount;
+    }
+
+    private Track find(int trackingId) {
+        if (trackingId == DetectedFace.NO_TRACKING_ID) return null;
+        for (int i = 0; i < trackCount; i++) {
+            if (tracks[i].trackingId == trackingId) return tracks[i];
+        }
+        return null;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        synchronized (pendingLock) {
+            choreographer.removeFrameCallback(this);
+            callbackPosted = false;
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (faces == null || faces.isEmpty() || imageWidth == 0 || imageHeight == 0) return;
+        if (trackCount == 0 || imageWidth == 0 || imageHeight == 0) return;
 
         float scaleX = getWidth() / (float) imageWidth;
         float scaleY = getHeight() / (float) imageHeight;
 
-        Matrix transform = new Matrix();
-        if (isFrontCamera) {
-            transform.setScale(-1, 1);
-            transform.postTranslate(getWidth(), 0);
-        }
-
-        for (FaceGraphic face : faces) {
-            Rect rect = face.rect;
+        for (int i = 0; i < trackCount; i++) {
+            Track track = tracks[i];
+            float left = track.shown[0] * scaleX;
+            float top = track.shown[1] * scaleY;
+            float right = track.shown[2] * scaleX;
+            float bottom = track.shown[3] * scaleY;
 
-            float left = rect.left * scaleX;
-            float top = rect.top * scaleY;
-            float right = rect.right * scaleX;
-            float bottom = rect.bottom * scaleY;
+            if (isFrontCamera) {
+                float mirroredLeft = getWidth() - right;
+                right = getWidth() - left;
+                left = mirroredLeft;
+            }
 
-            float[] pts = {left, top, right, bottom};
-            transform.mapPoints(pts);
+            canvas.drawRect(left, top, right, bottom, boxPaint);
+            if (track.label != null) {
+                canvas.drawText(track.label, left, Math.max(top - 10, 40), textPaint);
+            }
+        }
+    }
 
-            float newLeft = Math.min(pts[0], pts[2]);
-            float newRight = Math.max(pts[0], pts[2]);
+    // One box as drawn, gliding linearly from one analysis result to the next
+    private static class Track {
+        final float[] from = new float[4];
+        final float[] to = new float[4];
+        final float[] shown = new float[4];
+        int trackingId;
+        String label;
+        long startNanos;
+        long glideNanos;
+        long lastUpdateNanos;
 
-            Rect scaledRect = new Rect((int) newLeft, (int) top, (int) newRight, (int) bottom);
+        void place(float[] box, int offset, long nowNanos) {
+            System.arraycopy(box, offset, to, 0, 4);
+            System.arraycopy(box, offset, shown, 0, 4);
+            glideNanos = 0;
+            lastUpdateNanos = nowNanos;
+        }
 
-            canvas.drawRect(scaledRect, boxPaint);
-            canvas.drawText(face.label, scaledRect.left, Math.max(scaledRect.top - 10, 40), textPaint);
+        void retarget(float[] box, int offset, long nowNanos, long glide) {
+            System.arraycopy(shown, 0, from, 0, 4);
+            System.arraycopy(box, offset, to, 0, 4);
+            startNanos = nowNanos;
+            glideNanos = glide;
+            lastUpdateNanos = nowNanos;
         }
-    }
 
-    public static class FaceGraphic {
-        public Rect rect;
-        public String label;
-        public float distance;
+        void copyFrom(Track other) {
+            System.arraycopy(other.from, 0, from, 0, 4);
+            System.arraycopy(other.to, 0, to, 0, 4);
+            System.arraycopy(other.shown, 0, shown, 0, 4);
+            startNanos = other.startNanos;
+            glideNanos = other.glideNanos;
+            lastUpdateNanos = other.lastUpdateNanos;
+        }
 
-        public FaceGraphic(Rect rect, String label, float distance) {
-            this.rect = rect;
-            this.label = label;
-            this.distance = distance;
+        /** Moves the drawn box for this vsync; true while it has not arrived yet. */
+        boolean step(long nowNanos) {
+            if (glideNanos == 0) return false;
+            float t = (nowNanos - startNanos) / (float) glideNanos;
+            if (t >= 1f) {
+                System.arraycopy(to, 0, shown, 0, 4);
+                glideNanos = 0;
+                return false;
+            }
+            for (int k = 0; k < 4; k++) shown[k] = from[k] + (to[k] - from[k]) * t;
+            return true;
         }
     }
-}
\ No newline at end of file
+}
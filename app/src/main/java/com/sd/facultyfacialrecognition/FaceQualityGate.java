@@ -0,0 +1,143 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * FaceQualityGate rejects faces that would only produce a noisy embedding, before any
+ * landmark detection or inference is spent on them.
+ *
+ * Checks run cheapest first: box size, head pose from the tracking detector, then a
+ * SAMPLE_SIZE x SAMPLE_SIZE luma grid over the box for exposure (mean and clipped
+ * fraction) and sharpness (variance of the 4-neighbour Laplacian). Every verdict is
+ * counted so rejections show up next to the pipeline stats.
+ *
+ * check() must be called from one thread; the counters can be read from any thread.
+ */
+public class FaceQualityGate {
+
+    static final int SAMPLE_SIZE = 48;
+
+    public enum Verdict { OK, TOO_SMALL, POSE, EXPOSURE, BLUR }
+
+    public static class Thresholds {
+        public int minFacePixels = 64;
+        // Degrees; roll is undone by alignment, so it is allowed more
+        public float maxYaw = 30f;
+        public float maxPitch = 25f;
+        public float maxRoll = 40f;
+        public float minMeanLuma = 40f;
+        public float maxMeanLuma = 215f;
+        // Share of pixels at or below 10 / at or above 245
+        public float maxClippedFraction = 0.25f;
+        // Laplacian variance on the luma grid
+        public float minSharpness = 30f;
+    }
+
+    private final Thresholds thresholds;
+    private final int[] luma = new int[SAMPLE_SIZE * SAMPLE_SIZE];
+    private final AtomicLongArray counts = new AtomicLongArray(Verdict.values().length);
+
+    private float lastMeanLuma;
+    private float lastSharpness;
+
+    public FaceQualityGate(Thresholds thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    public Verdict check(YuvFrame frame, DetectedFace face) {
+        Verdict verdict = evaluate(frame, face);
+        counts.incrementAndGet(verdict.ordinal());
+        return verdict;
+    }
+
+    private Verdict evaluate(YuvFrame frame, DetectedFace face) {
+        if (Math.min(face.width(), face.height()) < thresholds.minFacePixels) return Verdict.TOO_SMALL;
+
+        if (Math.abs(face.eulerY) > thresholds.maxYaw
+                || Math.abs(face.eulerX) > thresholds.maxPitch
+                || Math.abs(face.eulerZ) > thresholds.maxRoll) {
+            return Verdict.POSE;
+        }
+
+        sampleLuma(frame, face);
+
+        long sum = 0;
+        int clipped = 0;
+        for (int value : luma) {
+            sum += value;
+            if (value <= 10 || value >= 245) clipped++;
+        }
+        lastMeanLuma = sum / (float) luma.length;
+        if (lastMeanLuma < thresholds.minMeanLuma || lastMeanLuma > thresholds.maxMeanLuma
+                || clipped > thresholds.maxClippedFraction * luma.length) {
+            return Verdict.EXPOSURE;
+        }
+
+        lastSharpness = laplacianVariance();
+        if (lastSharpness < thresholds.minSharpness) return Verdict.BLUR;
+
+        return Verdict.OK;
+    }
+
+    // Nearest-neighbour grid over the upright box, read from the raw Y plane
+    private void sampleLuma(YuvFrame frame, DetectedFace face) {
+        ByteBuffer y = frame.yPlane;
+        int base = y.position();
+        float stepX = face.width() / SAMPLE_SIZE;
+        float stepY = face.height() / SAMPLE_SIZE;
+
+        for (int row = 0; row < SAMPLE_SIZE; row++) {
+            float uy = face.top + (row + 0.5f) * stepY;
+            for (int col = 0; col < SAMPLE_SIZE; col++) {
+                float ux = face.left + (col + 0.5f) * stepX;
+                int rx = clamp((int) YuvCropper.toRawX(frame, ux, uy), frame.width - 1);
+                int ry = clamp((int) YuvCropper.toRawY(frame, ux, uy), frame.height - 1);
+                luma[row * SAMPLE_SIZE + col] = y.get(base + ry * frame.yRowStride + rx) & 0xFF;
+            }
+        }
+    }
+
+    private float laplacianVariance() {
+        double sum = 0;
+        double sumSquares = 0;
+        int n = 0;
+        for (int row = 1; row < SAMPLE_SIZE - 1; row++) {
+            for (int col = 1; col < SAMPLE_SIZE - 1; col++) {
+                int i = row * SAMPLE_SIZE + col;
+                int lap = luma[i - 1] + luma[i + 1] + luma[i - SAMPLE_SIZE] + luma[i + SAMPLE_SIZE] - 4 * luma[i];
+                sum += lap;
+                sumSquares += (double) lap * lap;
+                n++;
+            }
+        }
+        double mean = sum / n;
+        return (float) (sumSquares / n - mean * mean);
+    }
+
+    public long getCount(Verdict verdict) {
+        return counts.get(verdict.ordinal());
+    }
+
+    public float getLastMeanLuma() {
+        return lastMeanLuma;
+    }
+
+    public float getLastSharpness() {
+        return lastSharpness;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("quality gate");
+        for (Verdict verdict : Verdict.values()) {
+            sb.append(' ').append(verdict.name().toLowerCase(Locale.US)).append('=').append(getCount(verdict));
+        }
+        return sb.toString();
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
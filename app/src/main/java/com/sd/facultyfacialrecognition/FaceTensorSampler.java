@@ -0,0 +1,148 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * FaceTensorSampler fills the FaceNet input tensor straight from a camera frame.
+ *
+ * For each of the 160x160 output pixels it maps through the FaceAlignment (crop, eye
+ * levelling, scale) and the frame rotation in one combined affine step, samples luma
+ * bilinearly and chroma at the nearest sample, converts to RGB and writes the values
+ * normalized to [-1, 1]. Only the face region of the frame is ever read.
+ */
+public class FaceTensorSampler {
+
+    public static final int INPUT_SIZE = FaceAlignment.OUTPUT_SIZE;
+
+    /**
+     * Writes INPUT_SIZE * INPUT_SIZE * 3 floats (RGB, row-major) at the buffer's current
+     * position. Source pixels outside the frame come out black.
+     */
+    public static void sample(YuvFrame frame, FaceAlignment alignment, FloatBuffer out) {
+        sample(frame, alignment.m00, alignment.m01, alignment.m02,
+                alignment.m10, alignment.m11, alignment.m12, INPUT_SIZE, out);
+    }
+
+    /**
+     * Writes size * size * 3 floats covering the upright square at (left, top) with the
+     * given side, scaled without rotation. Used for detector inputs.
+     */
+    public static void sampleSquare(YuvFrame frame, float left, float top, float side, int size, FloatBuffer out) {
+        float scale = side / size;
+        sample(frame, scale, 0f, left + 0.5f * scale, 0f, scale, top + 0.5f * scale, size, out);
+    }
+
+    // (m00 .. m12) map output pixel (u, v) to the upright source, as in FaceAlignment
+    private static void sample(YuvFrame frame, float m00, float m01, float m02,
+                               float m10, float m11, float m12, int size, FloatBuffer out) {
+        int w = frame.width;
+        int h = frame.height;
+
+        // Upright -> raw sensor coordinates for the frame rotation
+        float r00, r01, r02, r10, r11, r12;
+        switch (frame.rotationDegrees) {
+            case 90:
+                r00 = 0; r01 = 1; r02 = 0;
+                r10 = -1; r11 = 0; r12 = h;
+                break;
+            case 180:
+                r00 = -1; r01 = 0; r02 = w;
+                r10 = 0; r11 = -1; r12 = h;
+                break;
+            case 270:
+                r00 = 0; r01 = -1; r02 = w;
+                r10 = 1; r11 = 0; r12 = 0;
+                break;
+            default:
+                r00 = 1; r01 = 0; r02 = 0;
+                r10 = 0; r11 = 1; r12 = 0;
+                break;
+        }
+
+        // Output pixel -> raw sensor coordinates, shifted so integers are pixel centres
+        float a00 = r00 * m00 + r01 * m10;
+        float a01 = r00 * m01 + r01 * m11;
+        float a02 = r00 * m02 + r01 * m12 + r02 - 0.5f;
+        float a10 = r10 * m00 + r11 * m10;
+        float a11 = r10 * m01 + r11 * m11;
+        float a12 = r10 * m02 + r11 * m12 + r12 - 0.5f;
+
+        ByteBuffer yPlane = frame.yPlane;
+        ByteBuffer uPlane = frame.uPlane;
+        ByteBuffer vPlane = frame.vPlane;
+        int yBase = yPlane.position();
+        int uBase = uPlane.position();
+        int vBase = vPlane.position();
+        int yStride = frame.yRowStride;
+        int uvStride = frame.uvRowStride;
+        int uvPixelStride = frame.uvPixelStride;
+
+        for (int v = 0; v < size; v++) {
+            float sx = a01 * v + a02;
+            float sy = a11 * v + a12;
+
+            for (int u = 0; u < size; u++, sx += a00, sy += a10) {
+                if (sx < -0.5f || sy < -0.5f || sx > w - 0.5f || sy > h - 0.5f) {
+                    out.put(-1f).put(-1f).put(-1f);
+                    continue;
+                }
+
+                int x0 = clamp((int) Math.floor(sx), w - 1);
+                int y0 = clamp((int) Math.floor(sy), h - 1);
+                int x1 = Math.min(x0 + 1, w - 1);
+                int y1 = Math.min(y0 + 1, h - 1);
+                float fx = clamp01(sx - x0);
+                float fy = clamp01(sy - y0);
+
+                int row0 = yBase + y0 * yStride;
+                int row1 = yBase + y1 * yStride;
+                float top = lerp(yPlane.get(row0 + x0) & 0xFF, yPlane.get(row0 + x1) & 0xFF, fx);
+                float bottom = lerp(yPlane.get(row1 + x0) & 0xFF, yPlane.get(row1 + x1) & 0xFF, fx);
+                int luma = (int) (lerp(top, bottom, fy) + 0.5f);
+
+                int nx = clamp((int) (sx + 0.5f), w - 1) >> 1;
+                int ny = clamp((int) (sy + 0.5f), h - 1) >> 1;
+                int uvIndex = ny * uvStride + nx * uvPixelStride;
+                int argb = YuvConverter.yuvToArgb(luma,
+                        uPlane.get(uBase + uvIndex) & 0xFF,
+                        vPlane.get(vBase + uvIndex) & 0xFF);
+
+                out.put(normalize((argb >> 16) & 0xFF))
+                        .put(normalize((argb >> 8) & 0xFF))
+                        .put(normalize(argb & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * Writes already aligned INPUT_SIZE x INPUT_SIZE ARGB pixels into the tensor.
+     */
+    public static void writePixels(int[] argb, FloatBuffer out) {
+        for (int i = 0; i < INPUT_SIZE * INPUT_SIZE; i++) {
+            int pixel = argb[i];
+            out.put(normalize((pixel >> 16) & 0xFF))
+                    .put(normalize((pixel >> 8) & 0xFF))
+                    .put(normalize(pixel & 0xFF));
+        }
+    }
+
+    /**
+     * Pre-processing (normalization to [-1, 1]). This must exactly match the model's training!
+     */
+    static float normalize(int channel) {
+        return (channel / 255.0f - 0.5f) * 2.0f;
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    private static float clamp01(float value) {
+        return value < 0 ? 0 : (value > 1 ? 1 : value);
+    }
+}
@@ -0,0 +1,279 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FaceTracker carries face boxes and eye landmarks across frames so the detector does not
+ * have to run on every one.
+ *
+ * Each track filters its box centre and size with a constant-velocity Kalman filter per
+ * axis. Detections are matched to tracks greedily by IoU of the predicted box; unmatched
+ * detections start new tracks and tracks that go unmatched for maxMisses detector runs are
+ * dropped. Between detector runs tracks are only predicted and their confidence decays, and
+ * needsDetection() asks for the detector again every detectInterval frames, or sooner
+ * when a track's confidence falls below minConfidence or nothing is being tracked.
+ *
+ * Output faces are DetectedFace records with the tracker's own stable ids, so everything
+ * downstream works the same whether a frame was detected or predicted. The list and the
+ * faces are reused from frame to frame, so predicting and reading faces allocates nothing.
+ * Pure Java and not thread-safe: call from the analysis thread only.
+ */
+public class FaceTracker {
+
+    static final float MIN_IOU = 0.3f;
+    // Per predicted frame without a detection
+    static final float CONFIDENCE_DECAY = 0.85f;
+
+    private final int detectInterval;
+    private final float minConfidence;
+    private final int maxMisses;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final List<DetectedFace> faces = new ArrayList<>();
+    private final List<DetectedFace> facePool = new ArrayList<>();
+    private boolean[] used = new boolean[0];
+    private int nextId = 1;
+    private int framesSinceDetection;
+    private long lastUpdateMillis;
+    private int frameWidth;
+    private int frameHeight;
+
+    public FaceTracker(int detectInterval, float minConfidence, int maxMisses) {
+        this.detectInterval = detectInterval;
+        this.minConfidence = minConfidence;
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * Drops every track when the analysis resolution changed, since old boxes would be in
+     * the wrong coordinate space.
+     */
+    public void setFrameSize(int width, int height) {
+        if (width != frameWidth || height != frameHeight) {
+            tracks.clear();
+            framesSinceDetection = 0;
+            frameWidth = width;
+            frameHeight = height;
+        }
+    }
+
+    public boolean needsDetection() {
+        if (tracks.isEmpty() || framesSinceDetection + 1 >= detectInterval) return true;
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.get(i).confidence < minConfidence) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Folds a detector result into the tracks. Detected eye positions are kept; faces
+     * without eyes keep the eyes of the track they were matched to.
+     */
+    public void update(List<DetectedFace> detections, long nowMillis) {
+        predictAll(nowMillis);
+        framesSinceDetection = 0;
+
+        if (used.length < detections.size()) used = new boolean[detections.size()];
+        for (int i = 0; i < detections.size(); i++) used[i] = false;
+        for (int i = 0; i < tracks.size(); i++) tracks.get(i).matched = false;
+
+        // Greedy: best remaining (track, detection) pair first
+        while (true) {
+            float bestIou = MIN_IOU;
+            Track bestTrack = null;
+            int bestDetection = -1;
+            for (int t = 0; t < tracks.size(); t++) {
+                Track track = tracks.get(t);
+                if (track.matched) continue;
+                for (int i = 0; i < detections.size(); i++) {
+                    if (used[i]) continue;
+                    float iou = iou(track, detections.get(i));
+                    if (iou > bestIou) {
+                        bestIou = iou;
+                        bestTrack = track;
+                        bestDetection = i;
+                    }
+                }
+            }
+            if (bestTrack == null) break;
+
+            bestTrack.correct(detections.get(bestDetection));
+            bestTrack.matched = true;
+            used[bestDetection] = true;
+        }
+
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            Track track = tracks.get(i);
+            if (!track.matched && ++track.misses > maxMisses) tracks.remove(i);
+        }
+
+        for (int i = 0; i < detections.size(); i++) {
+            if (!used[i]) tracks.add(new Track(nextId++, detections.get(i)));
+        }
+    }
+
+    /**
+     * Advances every track to nowMillis without a detection.
+     */
+    public void predict(long nowMillis) {
+        predictAll(nowMillis);
+        framesSinceDetection++;
+        for (int i = 0; i < tracks.size(); i++) tracks.get(i).confidence *= CONFIDENCE_DECAY;
+    }
+
+    /**
+     * Current tracks as faces, in frame coordinates. Tracks that missed the last detector
+     * run are left out so a face that walked away disappears at once. The list and its
+     * faces are overwritten by the next call; the caller may reorder and edit them.
+     */
+    public List<DetectedFace> getFaces() {
+        faces.clear();
+        for (int i = 0; i < tracks.size(); i++) {
+            Track track = tracks.get(i);
+            if (track.misses != 0) continue;
+            if (facePool.size() == faces.size()) facePool.add(new DetectedFace());
+            faces.add(track.toFace(facePool.get(faces.size())));
+        }
+        return faces;
+    }
+
+    public int getTrackCount() {
+        return tracks.size();
+    }
+
+    private void predictAll(long nowMillis) {
+        float dt = lastUpdateMillis == 0 ? 0f : (nowMillis - lastUpdateMillis) / 1000f;
+        lastUpdateMillis = nowMillis;
+        for (int i = 0; i < tracks.size(); i++) tracks.get(i).predict(dt);
+    }
+
+    private static float iou(Track track, DetectedFace face) {
+        float halfW = track.w.position / 2f;
+        float halfH = track.h.position / 2f;
+        float left = Math.max(track.cx.position - halfW, face.left);
+        float top = Math.max(track.cy.position - halfH, face.top);
+        float right = Math.min(track.cx.position + halfW, face.right);
+        float bottom = Math.min(track.cy.position + halfH, face.bottom);
+        if (right <= left || bottom <= top) return 0f;
+
+        float intersection = (right - left) * (bottom - top);
+        float union = track.w.position * track.h.position + face.width() * face.height() - intersection;
+        return union > 0 ? intersection / union : 0f;
+    }
+
+    private static class Track {
+        final int id;
+        final KalmanAxis cx, cy, w, h;
+        // Eyes relative to the box (0-1), so they follow it while predicted
+        float leftEyeU = Float.NaN, leftEyeV = Float.NaN, rightEyeU = Float.NaN, rightEyeV = Float.NaN;
+        float eulerX, eulerY, eulerZ;
+        float confidence = 1f;
+        int misses;
+        boolean matched;
+
+        Track(int id, DetectedFace face) {
+            this.id = id;
+            cx = new KalmanAxis(face.centerX());
+            cy = new KalmanAxis(face.centerY());
+            w = new KalmanAxis(face.width());
+            h = new KalmanAxis(face.height());
+            copyAttributes(face);
+        }
+
+        void predict(float dt) {
+            cx.predict(dt);
+            cy.predict(dt);
+            w.predict(dt);
+            h.predict(dt);
+        }
+
+        void correct(DetectedFace face) {
+            cx.correct(face.centerX());
+            cy.correct(face.centerY());
+            w.correct(face.width());
+            h.correct(face.height());
+            copyAttributes(face);
+            confidence = 1f;
+            misses = 0;
+        }
+
+        private void copyAttributes(DetectedFace face) {
+            if (face.hasEyes()) {
+                leftEyeU = (face.leftEyeX - face.left) / face.width();
+                leftEyeV = (face.leftEyeY - face.top) / face.height();
+                rightEyeU = (face.rightEyeX - face.left) / face.width();
+                rightEyeV = (face.rightEyeY - face.top) / face.height();
+            }
+            eulerX = face.eulerX;
+            eulerY = face.eulerY;
+            eulerZ = face.eulerZ;
+        }
+
+        DetectedFace toFace(DetectedFace out) {
+            float width = Math.max(1f, w.position);
+            float height = Math.max(1f, h.position);
+            float left = cx.position - width / 2f;
+            float top = cy.position - height / 2f;
+            out.setBox(left, top, left + width, top + height);
+            out.setEyes(left + leftEyeU * width, top + leftEyeV * height,
+                    left + rightEyeU * width, top + rightEyeV * height);
+            out.trackingId = id;
+            out.eulerX = eulerX;
+            out.eulerY = eulerY;
+            out.eulerZ = eulerZ;
+            return out;
+        }
+    }
+
+    /**
+     * One-dimensional constant-velocity Kalman filter (state: position, velocity).
+     */
+    static class KalmanAxis {
+        // Acceleration noise (px/s^2) and measurement noise (px), tuned for a walking person at 640x480
+        static final float PROCESS_NOISE = 400f;
+        static final float MEASUREMENT_NOISE = 4f;
+
+        float position;
+        float velocity;
+        private float p00 = MEASUREMENT_NOISE * MEASUREMENT_NOISE;
+        private float p01 = 0f;
+        private float p11 = 1000f;
+
+        KalmanAxis(float position) {
+            this.position = position;
+        }
+
+        void predict(float dt) {
+            if (dt <= 0f) return;
+            position += velocity * dt;
+
+            float q = PROCESS_NOISE * PROCESS_NOISE;
+            float dt2 = dt * dt;
+            float n00 = p00 + dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4f;
+            float n01 = p01 + dt * p11 + q * dt2 * dt / 2f;
+            float n11 = p11 + q * dt2;
+            p00 = n00;
+            p01 = n01;
+            p11 = n11;
+        }
+
+        void correct(float measured) {
+            float r = MEASUREMENT_NOISE * MEASUREMENT_NOISE;
+            float s = p00 + r;
+            float k0 = p00 / s;
+            float k1 = p01 / s;
+            float innovation = measured - position;
+
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+
+            float n00 = (1 - k0) * p00;
+            float n01 = (1 - k0) * p01;
+            float n11 = p11 - k1 * p01;
+            p00 = n00;
+            p01 = n01;
+            p11 = n11;
+        }
+    }
+}
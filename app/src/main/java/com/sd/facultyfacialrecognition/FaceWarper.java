@@ -0,0 +1,91 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.FloatBuffer;
+
+/**
+ * FaceWarper produces the aligned 160x160 face from an ARGB pixel array (a decoded photo)
+ * in one pass: every output pixel is mapped through the FaceAlignment and sampled
+ * bilinearly from the source. It replaces the crop, rotate and rescale steps that each
+ * allocated an intermediate bitmap.
+ */
+public class FaceWarper {
+
+    public static final int OUTPUT_SIZE = FaceAlignment.OUTPUT_SIZE;
+
+    /**
+     * Writes OUTPUT_SIZE * OUTPUT_SIZE ARGB pixels into out. Pixels mapping outside the
+     * source are black.
+     */
+    public static void warp(int[] src, int srcWidth, int srcHeight, FaceAlignment alignment, int[] out) {
+        int i = 0;
+        for (int v = 0; v < OUTPUT_SIZE; v++) {
+            float sx = alignment.m01 * v + alignment.m02 - 0.5f;
+            float sy = alignment.m11 * v + alignment.m12 - 0.5f;
+            for (int u = 0; u < OUTPUT_SIZE; u++, sx += alignment.m00, sy += alignment.m10) {
+                out[i++] = sample(src, srcWidth, srcHeight, sx, sy);
+            }
+        }
+    }
+
+    /**
+     * Same warp, but writes normalized RGB floats straight into the FaceNet input.
+     */
+    public static void warpToTensor(int[] src, int srcWidth, int srcHeight, FaceAlignment alignment, FloatBuffer out) {
+        warpToTensor(src, srcWidth, srcHeight, alignment.m00, alignment.m01, alignment.m02,
+                alignment.m10, alignment.m11, alignment.m12, OUTPUT_SIZE, out);
+    }
+
+    /**
+     * Writes size * size normalized RGB pixels covering the square at (left, top) with the
+     * given side, scaled without rotation. Used for detector inputs.
+     */
+    public static void squareToTensor(int[] src, int srcWidth, int srcHeight,
+                                      float left, float top, float side, int size, FloatBuffer out) {
+        float scale = side / size;
+        warpToTensor(src, srcWidth, srcHeight, scale, 0f, left + 0.5f * scale, 0f, scale, top + 0.5f * scale, size, out);
+    }
+
+    private static void warpToTensor(int[] src, int srcWidth, int srcHeight, float m00, float m01, float m02,
+                                     float m10, float m11, float m12, int size, FloatBuffer out) {
+        for (int v = 0; v < size; v++) {
+            float sx = m01 * v + m02 - 0.5f;
+            float sy = m11 * v + m12 - 0.5f;
+            for (int u = 0; u < size; u++, sx += m00, sy += m10) {
+                int pixel = sample(src, srcWidth, srcHeight, sx, sy);
+                out.put(FaceTensorSampler.normalize((pixel >> 16) & 0xFF))
+                        .put(FaceTensorSampler.normalize((pixel >> 8) & 0xFF))
+                        .put(FaceTensorSampler.normalize(pixel & 0xFF));
+            }
+        }
+    }
+
+    // Bilinear sample at pixel-index coordinates (integers are pixel centres)
+    private static int sample(int[] src, int width, int height, float sx, float sy) {
+        if (sx < -0.5f || sy < -0.5f || sx > width - 0.5f || sy > height - 0.5f) {
+            return 0xFF000000;
+        }
+
+        int x0 = Math.max(0, Math.min((int) Math.floor(sx), width - 1));
+        int y0 = Math.max(0, Math.min((int) Math.floor(sy), height - 1));
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        float fx = Math.max(0f, Math.min(sx - x0, 1f));
+        float fy = Math.max(0f, Math.min(sy - y0, 1f));
+
+        int p00 = src[y0 * width + x0];
+        int p01 = src[y0 * width + x1];
+        int p10 = src[y1 * width + x0];
+        int p11 = src[y1 * width + x1];
+
+        int r = blend(p00 >> 16, p01 >> 16, p10 >> 16, p11 >> 16, fx, fy);
+        int g = blend(p00 >> 8, p01 >> 8, p10 >> 8, p11 >> 8, fx, fy);
+        int b = blend(p00, p01, p10, p11, fx, fy);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int blend(int c00, int c01, int c10, int c11, float fx, float fy) {
+        float top = (c00 & 0xFF) + ((c01 & 0xFF) - (c00 & 0xFF)) * fx;
+        float bottom = (c10 & 0xFF) + ((c11 & 0xFF) - (c10 & 0xFF)) * fx;
+        return (int) (top + (bottom - top) * fy + 0.5f);
+    }
+}
@@ -0,0 +1,199 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * FrameMatcher is the matching stage of the frame pipeline. For each frame it matches the
+ * embedded faces, labels every tracked face for the overlay (a face that was only tracked
+ * keeps its track's last label), picks the door candidate with DoorCandidateSelector and
+ * queues it for the thread that runs the door logic.
+ *
+ * MainActivity runs it on the match thread and drains the decisions on the UI thread;
+ * PipelineReplay and RecognitionAllocationTest do both on one thread. In the steady state
+ * nothing is allocated: per-track results live in small parallel arrays keyed by
+ * tracking id, labels are cached per identity and hundredth of distance, and decisions go
+ * through a fixed ring.
+ */
+public class FrameMatcher {
+
+    /** Where the labelled boxes go; FaceOverlayView on the device, null for none. */
+    public interface Overlay {
+        void beginFrame(int imageWidth, int imageHeight);
+
+        void addFace(int trackingId, float left, float top, float right, float bottom, String label);
+
+        void endFrame();
+    }
+
+    /** Hears every embedded face's match on the match thread, e.g. to prioritise its re-embedding. */
+    public interface MatchListener {
+        void onMatch(FaceMatcher.Result result);
+    }
+
+    /** Receives the queued decisions in frame order. */
+    public interface DecisionListener {
+        void onDecision(String candidate, long captureNanos, long queuedNanos);
+    }
+
+    // Frames decided but not yet drained; more means the UI thread is stalled
+    private static final int MAX_PENDING = 8;
+    // Labels show the distance to two decimals; normalized embeddings are at most 2 apart
+    private static final int LABEL_STEPS = 201;
+
+    // Recognition result per track for one frame
+    private static final class TrackTable {
+        final int[] ids = new int[FrameTask.MAX_FACES];
+        final String[] names = new String[FrameTask.MAX_FACES];
+        final String[] labels = new String[FrameTask.MAX_FACES];
+        int count;
+
+        int find(int trackingId) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == trackingId) return i;
+            }
+            return -1;
+        }
+
+        void add(int trackingId, String name, String label) {
+            if (trackingId == DetectedFace.NO_TRACKING_ID || count == ids.length) return;
+            ids[count] = trackingId;
+            names[count] = name;
+            labels[count++] = label;
+        }
+    }
+
+    private final FaceMatcher matcher;
+    private final float threshold;
+    private final Overlay overlay;
+    private final MatchListener matchListener;
+    private final FaceMatcher.Result result = new FaceMatcher.Result();
+    private final DoorCandidateSelector selector = new DoorCandidateSelector();
+    private final Map<String, String[]> labelCache = new HashMap<>();
+    private volatile boolean resetRequested = false;
+
+    // Last frame's results and this frame's; swapped so tracks that left are forgotten
+    private TrackTable previous = new TrackTable();
+    private TrackTable current = new TrackTable();
+
+    // Guarded by pending
+    private final String[] pending = new String[MAX_PENDING];
+    private final long[] pendingCaptureNanos = new long[MAX_PENDING];
+    private final long[] pendingQueuedNanos = new long[MAX_PENDING];
+    private int pendingStart;
+    private int pendingCount;
+    private long decisionsDropped;
+
+    public FrameMatcher(FaceMatcher matcher, float threshold, Overlay overlay, MatchListener matchListener) {
+        this.matcher = matcher;
+        this.threshold = threshold;
+        this.overlay = overlay;
+        this.matchListener = matchListener;
+    }
+
+    /**
+     * Matches and labels one frame and queues its door candidate. Tracked-only frames move
+     * the boxes but queue nothing, since only embedded frames count toward a decision.
+     * Returns true if the queue was empty before, i.e. a drain has to be scheduled.
+     */
+    public boolean process(FrameTask task) {
+        if (resetRequested) {
+            resetRequested = false;
+            selector.reset();
+        }
+
+        TrackTable seen = current;
+        seen.count = 0;
+        selector.begin();
+        if (overlay != null) overlay.beginFrame(task.imageWidth, task.imageHeight);
+        for (int i = 0; i < task.faceCount; i++) {
+            FrameTask.FaceSlot slot = task.faces[i];
+            String name;
+            String label;
+            if (slot.embedding != null) {
+                matcher.match(slot.embedding, threshold, result);
+                if (matchListener != null) matchListener.onMatch(result);
+                name = result.name;
+                label = result.isKnown() ? label(name, result.distance) : name;
+                selector.add(slot.trackingId, slot.area(), name);
+            } else {
+                // Not embedded this frame: keep the label from the track's last embedding
+                int last = previous.find(slot.trackingId);
+                name = last >= 0 ? previous.names[last] : DoorStateMachine.SCANNING;
+                label = last >= 0 ? previous.labels[last] : DoorStateMachine.SCANNING;
+            }
+            seen.add(slot.trackingId, name, label);
+            if (overlay != null) {
+                overlay.addFace(slot.trackingId, slot.boxLeft, slot.boxTop, slot.boxRight, slot.boxBottom, label);
+            }
+        }
+        // The overlay animates towards these boxes on its own
+        if (overlay != null) overlay.endFrame();
+        current = previous;
+        previous = seen;
+
+        String candidate = selector.finish();
+        if (task.faceCount > 0 && !task.embedded) return false;
+        return queue(candidate, task.captureNanos, System.nanoTime());
+    }
+
+    /** Hands every queued decision to the listener, oldest first. */
+    public void drainDecisions(DecisionListener listener) {
+        while (true) {
+            String candidate;
+            long captureNanos, queuedNanos;
+            synchronized (pending) {
+                if (pendingCount == 0) return;
+                candidate = pending[pendingStart];
+                captureNanos = pendingCaptureNanos[pendingStart];
+                queuedNanos = pendingQueuedNanos[pendingStart];
+                pending[pendingStart] = null;
+                pendingStart = (pendingStart + 1) % MAX_PENDING;
+                pendingCount--;
+            }
+            listener.onDecision(candidate, captureNanos, queuedNanos);
+        }
+    }
+
+    /** Forgets the followed track, e.g. for a new visit; applied before the next frame. Any thread. */
+    public void resetDoorCandidate() {
+        resetRequested = true;
+    }
+
+    public long getDecisionsDropped() {
+        synchronized (pending) {
+            return decisionsDropped;
+        }
+    }
+
+    private boolean queue(String candidate, long captureNanos, long queuedNanos) {
+        synchronized (pending) {
+            if (pendingCount == MAX_PENDING) {
+                decisionsDropped++;
+                return false;
+            }
+            int slot = (pendingStart + pendingCount) % MAX_PENDING;
+            pending[slot] = candidate;
+            pendingCaptureNanos[slot] = captureNanos;
+            pendingQueuedNanos[slot] = queuedNanos;
+            return pendingCount++ == 0;
+        }
+    }
+
+    // "Name (0.42)", formatted once per identity and hundredth
+    private String label(String name, float distance) {
+        int step = Math.min(LABEL_STEPS - 1, Math.max(0, Math.round(distance * 100)));
+        String[] labels = labelCache.get(name);
+        if (labels == null) {
+            labels = new String[LABEL_STEPS];
+            labelCache.put(name, labels);
+        }
+        String label = labels[step];
+        if (label == null) {
+            label = String.format(Locale.US, "%s (%.2f)", name, step / 100f);
+            labels[step] = label;
+        }
+        return label;
+    }
+}
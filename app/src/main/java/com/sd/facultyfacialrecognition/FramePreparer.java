@@ -0,0 +1,100 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * FramePreparer is the camera stage of the frame pipeline once the image is a YuvFrame. It
+ * tracks the faces, fills the FrameTask with their boxes, largest first, and on frames
+ * picked for embedding refines the landmarks of every face that passes the quality gate
+ * and samples its aligned tensor straight from the YUV planes into the task.
+ *
+ * MainActivity runs it on the analysis thread while the ImageProxy is open;
+ * RecognitionAllocationTest runs it with stand-in detector backends. Apart from what the
+ * backends return, nothing is allocated per frame. Not thread-safe.
+ */
+public class FramePreparer {
+
+    // Largest (closest) faces first
+    private static final Comparator<DetectedFace> LARGEST_FIRST = (a, b) -> Float.compare(b.height(), a.height());
+
+    private final FaceTracker tracker;
+    private final DetectionScheduler scheduler;
+    private final FaceQualityGate qualityGate;
+    private final MotionGate motionGate;
+    private final PipelineMetrics metrics;
+    private final FaceAlignment alignment = new FaceAlignment();
+
+    public FramePreparer(FaceTracker tracker, DetectionScheduler scheduler, FaceQualityGate qualityGate,
+                         MotionGate motionGate, PipelineMetrics metrics) {
+        this.tracker = tracker;
+        this.scheduler = scheduler;
+        this.qualityGate = qualityGate;
+        this.motionGate = motionGate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Tracks the faces in frame and prepares task from them. imageWidth and imageHeight are
+     * the camera image's, which the overlay maps the boxes from. embedderIdle is false
+     * while an earlier frame is still waiting for the embedder, so this one is not picked.
+     * Returns the tracked faces in task order; the list is reused by the next call.
+     */
+    public List<DetectedFace> prepare(YuvFrame frame, FrameTask task, int imageWidth, int imageHeight,
+                                      boolean embedderIdle, long nowMillis) throws Exception {
+        task.reset();
+        task.imageWidth = imageWidth;
+        task.imageHeight = imageHeight;
+
+        // Detector every few frames or when a track gets uncertain; predicted boxes in between
+        tracker.setFrameSize(frame.getUprightWidth(), frame.getUprightHeight());
+        if (tracker.needsDetection()) {
+            long start = PipelineMetrics.now();
+            tracker.update(scheduler.track(frame), nowMillis);
+            metrics.record(PipelineMetrics.Stage.DETECTION, start);
+        } else {
+            tracker.predict(nowMillis);
+        }
+        List<DetectedFace> faces = tracker.getFaces();
+        if (!faces.isEmpty()) motionGate.onFaceSeen(nowMillis);
+
+        faces.sort(LARGEST_FIRST);
+        task.faceCount = Math.min(faces.size(), FrameTask.MAX_FACES);
+        for (int i = 0; i < task.faceCount; i++) {
+            DetectedFace face = faces.get(i);
+            FrameTask.FaceSlot slot = task.faces[i];
+            slot.trackingId = face.trackingId;
+            slot.boxLeft = (int) face.left;
+            slot.boxTop = (int) face.top;
+            slot.boxRight = (int) face.right;
+            slot.boxBottom = (int) face.bottom;
+        }
+
+        // Only frames picked for embedding pay for landmarks and sampling
+        if (!scheduler.shouldRefine(faces, task.faceCount, embedderIdle, nowMillis)) return faces;
+
+        for (int i = 0; i < task.faceCount; i++) {
+            DetectedFace face = faces.get(i);
+            if (qualityGate.check(frame, face) != FaceQualityGate.Verdict.OK) continue;
+
+            long start = PipelineMetrics.now();
+            scheduler.refine(frame, face);
+            start = metrics.record(PipelineMetrics.Stage.DETECTION, start);
+
+            // Sample the aligned face straight from the YUV planes into the slot's tensor
+            FrameTask.FaceSlot slot = task.faces[i];
+            alignment.setFromDetection(face.left, face.top, face.right, face.bottom,
+                    face.leftEyeX, face.leftEyeY, face.rightEyeX, face.rightEyeY);
+            start = metrics.record(PipelineMetrics.Stage.ALIGNMENT, start);
+            slot.tensorBuffer.rewind();
+            FaceTensorSampler.sample(frame, alignment, slot.tensorBuffer);
+            metrics.record(PipelineMetrics.Stage.PREPROCESSING, start);
+            slot.hasTensor = true;
+            task.batch[task.batchCount++] = slot.tensor;
+        }
+
+        // A frame whose faces were all rejected casts no vote, rather than an "Unknown" one
+        task.embedded = task.batchCount > 0;
+        return faces;
+    }
+}
@@ -0,0 +1,95 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.FloatBuffer;
+
+/**
+ * FrameTask carries one analyzed frame through the recognition pipeline: the detected
+ * faces and, for frames picked for embedding, their aligned face tensors from the camera
+ * stage, then the embeddings from the inference stage. Instances are pooled and reused.
+ */
+public class FrameTask implements PipelineStage.Item {
+
+    // Faces handled per frame, largest first; more than this at a door is a crowd, not a queue
+    public static final int MAX_FACES = 4;
+
+    public static class FaceSlot {
+        public final float[] tensor = new float[FaceTensorSampler.INPUT_SIZE * FaceTensorSampler.INPUT_SIZE * 3];
+        public final FloatBuffer tensorBuffer = FloatBuffer.wrap(tensor);
+
+        public int boxLeft, boxTop, boxRight, boxBottom;
+        public int trackingId;
+        // Set when the face was aligned and the tensor was filled
+        public boolean hasTensor;
+        public float[] embedding;
+        // The slot's own copy of its embedding; the embedder reuses its arrays for the next frame
+        private float[] embeddingCopy;
+
+        void reset() {
+            trackingId = DetectedFace.NO_TRACKING_ID;
+            hasTensor = false;
+            embedding = null;
+        }
+
+        public int area() {
+            return (boxRight - boxLeft) * (boxBottom - boxTop);
+        }
+
+        void setEmbedding(float[] result) {
+            if (result == null) {
+                embedding = null;
+                return;
+            }
+            if (embeddingCopy == null || embeddingCopy.length != result.length) embeddingCopy = new float[result.length];
+            System.arraycopy(result, 0, embeddingCopy, 0, result.length);
+            embedding = embeddingCopy;
+        }
+    }
+
+    public final FaceSlot[] faces = new FaceSlot[MAX_FACES];
+    public int faceCount;
+    public int imageWidth, imageHeight;
+    // Set when this frame was picked for embedding
+    public boolean embedded;
+    // Sensor capture time in the System.nanoTime() base, 0 if unknown; set for every frame
+    public long captureNanos;
+
+    // Tensors of the slots with hasTensor, in slot order, handed to FaceNet as one batch
+    public final float[][] batch = new float[MAX_FACES][];
+    public int batchCount;
+
+    private long enqueuedNanos;
+
+    public FrameTask() {
+        for (int i = 0; i < MAX_FACES; i++) faces[i] = new FaceSlot();
+    }
+
+    /**
+     * Copies the embedder's results, in batch order, into the slots that had a tensor, so
+     * the embedder can reuse its arrays while this frame is matched. A null result leaves
+     * every slot unembedded.
+     */
+    public void setEmbeddings(float[][] embeddings) {
+        if (embeddings == null) return;
+        int next = 0;
+        for (int i = 0; i < faceCount; i++) {
+            if (faces[i].hasTensor) faces[i].setEmbedding(embeddings[next++]);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < MAX_FACES; i++) faces[i].reset();
+        faceCount = 0;
+        embedded = false;
+        batchCount = 0;
+    }
+
+    @Override
+    public void setEnqueuedNanos(long nanos) {
+        enqueuedNanos = nanos;
+    }
+
+    @Override
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+}
@@ -0,0 +1,350 @@
+package com.sd.facultyfacialrecognition;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * GalleryBundle writes and reads a single self-describing file that carries a whole
+ * gallery to another kiosk: a manifest (model fingerprint and faculty list), the
+ * embedding vectors and, optionally, the stored face crops.
+ *
+ * The file is a sequence of chunks, each with its own CRC32, and is processed one chunk
+ * at a time in both directions, so memory use does not grow with the gallery size.
+ *
+ * Layout: "FFRB", int version, then chunks of [byte type][int length][payload][int crc].
+ */
+public class GalleryBundle {
+
+    public static final String MIME_TYPE = "application/octet-stream";
+    public static final String FILE_EXTENSION = ".ffrb";
+
+    private static final byte[] MAGIC = {'F', 'F', 'R', 'B'};
+    private static final int VERSION = 1;
+    private static final int MAX_CHUNK_BYTES = 16 * 1024 * 1024;
+    private static final String STAGING_DIR_NAME = ".bundle_import";
+
+    private static final byte CHUNK_MANIFEST = 1;
+    private static final byte CHUNK_EMBEDDINGS = 2;
+    private static final byte CHUNK_CROP = 3;
+    private static final byte CHUNK_END = 4;
+
+    public interface ProgressListener {
+        void onProgress(int chunksDone, int chunksTotal);
+    }
+
+    public static class Manifest {
+        public int formatVersion;
+        public String modelFingerprint;
+        public long createdAtMillis;
+        public boolean includesCrops;
+        public List<Entry> faculty = new ArrayList<>();
+
+        public int totalChunks() {
+            int total = 2 + faculty.size();
+            for (Entry entry : faculty) total += entry.crops;
+            return total;
+        }
+    }
+
+    public static class Entry {
+        public String name;
+        public int embeddings;
+        public int crops;
+    }
+
+    public static class ImportResult {
+        public Manifest manifest;
+        public FaceGallery gallery;
+        public int cropsImported;
+    }
+
+    // -------------------- Export --------------------
+
+    /**
+     * Streams the gallery (and the .jpg crops under facultyRoot/<name>/ when includeCrops
+     * is set) into out. The stream is flushed but not closed.
+     */
+    public static Manifest export(FaceGallery gallery, File facultyRoot, boolean includeCrops,
+                                  OutputStream out, ProgressListener progress) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.formatVersion = VERSION;
+        manifest.modelFingerprint = gallery.getModelFingerprint();
+        manifest.createdAtMillis = System.currentTimeMillis();
+        manifest.includesCrops = includeCrops;
+
+        for (String name : gallery.getNames()) {
+            Entry entry = new Entry();
+            entry.name = name;
+            entry.embeddings = gallery.get(name).size();
+            entry.crops = includeCrops ? listCrops(new File(facultyRoot, name)).length : 0;
+            manifest.faculty.add(entry);
+        }
+
+        int total = manifest.totalChunks();
+        int done = 0;
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.write(MAGIC);
+        data.writeInt(VERSION);
+
+        writeChunk(data, CHUNK_MANIFEST, new Gson().toJson(manifest).getBytes(StandardCharsets.UTF_8));
+        if (progress != null) progress.onProgress(++done, total);
+
+        for (Entry entry : manifest.faculty) {
+            writeChunk(data, CHUNK_EMBEDDINGS, encodeEmbeddings(entry.name, gallery.get(entry.name)));
+            if (progress != null) progress.onProgress(++done, total);
+
+            if (!includeCrops) continue;
+            for (File crop : listCrops(new File(facultyRoot, entry.name))) {
+                writeChunk(data, CHUNK_CROP, encodeCrop(entry.name, crop));
+                if (progress != null) progress.onProgress(++done, total);
+            }
+        }
+
+        ByteArrayOutputStream end = new ByteArrayOutputStream();
+        new DataOutputStream(end).writeInt(total);
+        writeChunk(data, CHUNK_END, end.toByteArray());
+        if (progress != null) progress.onProgress(++done, total);
+
+        data.flush();
+        return manifest;
+    }
+
+    private static File[] listCrops(File facultyDir) {
+        File[] crops = facultyDir.listFiles((dir, name) -> name.endsWith(".jpg"));
+        return crops != null ? crops : new File[0];
+    }
+
+    private static byte[] encodeEmbeddings(String name, List<float[]> embeddings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int dim = embeddings.isEmpty() ? 0 : embeddings.get(0).length;
+        out.writeUTF(name);
+        out.writeInt(embeddings.size());
+        out.writeInt(dim);
+        for (float[] emb : embeddings) {
+            for (int i = 0; i < dim; i++) out.writeFloat(emb[i]);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCrop(String name, File crop) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) crop.length() + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(name);
+        out.writeUTF(crop.getName());
+        try (InputStream in = new FileInputStream(crop)) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // -------------------- Import --------------------
+
+    /**
+     * Reads a bundle from in and installs it under facultyRoot. Crops are staged and only
+     * moved into place, and the gallery only saved, after every chunk has verified; a
+     * corrupt or truncated bundle leaves the existing gallery untouched.
+     *
+     * Identities in the bundle replace same-named ones. If the existing gallery was built
+     * with a different model than the bundle, it is replaced instead of merged.
+     */
+    public static ImportResult importBundle(InputStream in, File facultyRoot,
+                                            ProgressListener progress) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) throw new IOException("Not a gallery bundle");
+        }
+        int version = data.readInt();
+        if (version > VERSION) throw new IOException("Unsupported bundle version " + version);
+
+        File staging = new File(facultyRoot, STAGING_DIR_NAME);
+        deleteRecursive(staging);
+
+        ImportResult result = new ImportResult();
+        int done = 0;
+        boolean ended = false;
+
+        try {
+            while (!ended) {
+                byte type;
+                try {
+                    type = data.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("Bundle is truncated");
+                }
+                byte[] payload = readChunk(data);
+
+                if (result.manifest == null && type != CHUNK_MANIFEST) {
+                    throw new IOException("Bundle does not start with a manifest");
+                }
+
+                switch (type) {
+                    case CHUNK_MANIFEST:
+                        result.manifest = new Gson().fromJson(
+                                new String(payload, StandardCharsets.UTF_8), Manifest.class);
+                        result.gallery = new FaceGallery(result.manifest.modelFingerprint);
+                        break;
+                    case CHUNK_EMBEDDINGS:
+                        decodeEmbeddings(payload, result.gallery);
+                        break;
+                    case CHUNK_CROP:
+                        stageCrop(payload, staging);
+                        result.cropsImported++;
+                        break;
+                    case CHUNK_END:
+                        int expected = new DataInputStream(new ByteArrayInputStream(payload)).readInt();
+                        if (expected != done + 1) {
+                            throw new IOException("Bundle has " + (done + 1) + " chunks, expected " + expected);
+                        }
+                        ended = true;
+                        break;
+                    default:
+                        // Unknown chunk types from newer writers are checksummed and skipped
+                        break;
+                }
+
+                done++;
+                if (progress != null) progress.onProgress(done, result.manifest.totalChunks());
+            }
+
+            installCrops(staging, facultyRoot);
+            installGallery(result.gallery, facultyRoot);
+            return result;
+        } finally {
+            deleteRecursive(staging);
+        }
+    }
+
+    private static byte[] readChunk(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_CHUNK_BYTES) {
+            throw new IOException("Invalid chunk length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        int expectedCrc = in.readInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Checksum mismatch, bundle is corrupt");
+        }
+        return payload;
+    }
+
+    private static void decodeEmbeddings(byte[] payload, FaceGallery gallery) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String name = checkName(in.readUTF());
+        int count = in.readInt();
+        int dim = in.readInt();
+        // An identity without embeddings is written with dimension 0
+        if (count < 0 || (count > 0 && dim != FaceNet.EMBEDDING_SIZE)) {
+            throw new IOException("Invalid embeddings for " + name + ": " + count + " x " + dim);
+        }
+
+        List<float[]> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] emb = new float[dim];
+            for (int j = 0; j < dim; j++) emb[j] = in.readFloat();
+            embeddings.add(emb);
+        }
+        gallery.put(name, embeddings);
+    }
+
+    private static void stageCrop(byte[] payload, File staging) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String name = checkName(in.readUTF());
+        String fileName = checkName(in.readUTF());
+
+        File dir = new File(staging, name);
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+
+        try (OutputStream out = new FileOutputStream(new File(dir, fileName))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        }
+    }
+
+    // Names become directory and file names; never let a bundle escape facultyRoot
+    private static String checkName(String name) throws IOException {
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.startsWith(".")) {
+            throw new IOException("Invalid name in bundle: " + name);
+        }
+        return name;
+    }
+
+    private static void installCrops(File staging, File facultyRoot) throws IOException {
+        File[] dirs = staging.listFiles(File::isDirectory);
+        if (dirs == null) return;
+
+        for (File stagedDir : dirs) {
+            File targetDir = new File(facultyRoot, stagedDir.getName());
+            if (!targetDir.exists() && !targetDir.mkdirs()) throw new IOException("Cannot create " + targetDir);
+
+            File[] crops = stagedDir.listFiles();
+            if (crops == null) continue;
+            for (File crop : crops) {
+                File target = new File(targetDir, crop.getName());
+                if (!crop.renameTo(target)) throw new IOException("Cannot move " + crop + " to " + target);
+            }
+        }
+    }
+
+    private static void installGallery(FaceGallery imported, File facultyRoot) throws IOException {
+        File galleryFile = new File(facultyRoot, FaceGallery.FILE_NAME);
+        FaceGallery target = imported;
+
+        if (galleryFile.exists()) {
+            FaceGallery existing = FaceGallery.load(galleryFile);
+            if (existing.isCompatibleWith(imported.getModelFingerprint())) {
+                for (String name : imported.getNames()) existing.put(name, imported.get(name));
+                target = existing;
+            }
+        }
+
+        target.save(galleryFile);
+        // Any half-done migration was for the gallery we just replaced
+        new File(facultyRoot, FaceGallery.PENDING_FILE_NAME).delete();
+    }
+
+    private static void deleteRecursive(File fileOrDirectory) {
+        if (fileOrDirectory.isDirectory()) {
+            File[] children = fileOrDirectory.listFiles();
+            if (children != null) for (File child : children) deleteRecursive(child);
+        }
+        fileOrDirectory.delete();
+    }
+}
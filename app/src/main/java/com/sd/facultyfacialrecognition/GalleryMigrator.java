@@ -0,0 +1,163 @@
+package com.sd.facultyfacialrecognition;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * GalleryMigrator re-embeds every enrolled faculty with the running FaceNet model when
+ * embeddings.json was produced by a different model.
+ *
+ * The old gallery file is never touched while this runs. Progress goes to
+ * embeddings.pending.json (stamped with the new fingerprint) after each identity, so an
+ * interrupted migration resumes where it stopped, and the pending file replaces the old
+ * gallery once every identity is done. Each identity is handed to the listener as soon as
+ * its new embeddings exist, so recognition switches over one person at a time.
+ */
+public class GalleryMigrator {
+
+    private static final String TAG = "GalleryMigrator";
+
+    public interface Listener {
+        void onIdentityMigrated(String name, List<float[]> embeddings);
+
+        void onIdentityDropped(String name);
+
+        void onMigrationComplete(FaceGallery gallery);
+    }
+
+    private final File facultyRoot;
+    private final FaceNet faceNet;
+    private final Listener listener;
+    private final LinkedList<String> queue = new LinkedList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean cancelled = false;
+
+    public GalleryMigrator(File facultyRoot, FaceNet faceNet, Listener listener) {
+        this.facultyRoot = facultyRoot;
+        this.faceNet = faceNet;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts migrating the identities of oldGallery in the background. Identities already
+     * present in a compatible pending gallery are reported immediately and skipped.
+     */
+    public void start(FaceGallery oldGallery) {
+        String fingerprint = faceNet.getModelFingerprint();
+        FaceGallery pending = loadPending(fingerprint);
+
+        // Most recently enrolled first; recognition bumps people seen at the door via prioritize()
+        List<File> dirs = new ArrayList<>();
+        for (String name : oldGallery.getNames()) dirs.add(new File(facultyRoot, name));
+        dirs.sort((a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+
+        synchronized (queue) {
+            for (File dir : dirs) {
+                String name = dir.getName();
+                if (pending.get(name) != null) {
+                    listener.onIdentityMigrated(name, pending.get(name));
+                } else {
+                    queue.add(name);
+                }
+            }
+        }
+
+        Log.d(TAG, "Migrating gallery to model " + fingerprint + ", " + queue.size() + " identities left");
+        executor.execute(() -> run(pending));
+    }
+
+    /**
+     * Moves an identity to the front of the queue, e.g. because they are at the door now.
+     */
+    public void prioritize(String name) {
+        synchronized (queue) {
+            if (queue.remove(name)) queue.addFirst(name);
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+    }
+
+    private FaceGallery loadPending(String fingerprint) {
+        File pendingFile = new File(facultyRoot, FaceGallery.PENDING_FILE_NAME);
+        if (pendingFile.exists()) {
+            try {
+                FaceGallery pending = FaceGallery.load(pendingFile);
+                if (pending.isCompatibleWith(fingerprint)) return pending;
+            } catch (Exception e) {
+                Log.w(TAG, "Discarding unreadable pending gallery", e);
+            }
+        }
+        return new FaceGallery(fingerprint);
+    }
+
+    private void run(FaceGallery pending) {
+        File pendingFile = new File(facultyRoot, FaceGallery.PENDING_FILE_NAME);
+
+        while (!cancelled) {
+            String name;
+            synchronized (queue) {
+                name = queue.poll();
+            }
+            if (name == null) break;
+
+            List<float[]> embeddings = embedStoredCrops(new File(facultyRoot, name));
+            if (cancelled) return;
+
+            if (embeddings.isEmpty()) {
+                // Old vectors cannot be carried over; this person has to be enrolled again
+                Log.w(TAG, "No usable stored crops for " + name + ", dropping from new gallery");
+                listener.onIdentityDropped(name);
+                continue;
+            }
+
+            pending.put(name, embeddings);
+            try {
+                pending.save(pendingFile);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to save pending gallery", e);
+            }
+            listener.onIdentityMigrated(name, embeddings);
+        }
+
+        if (cancelled) return;
+
+        File galleryFile = new File(facultyRoot, FaceGallery.FILE_NAME);
+        try {
+            pending.save(galleryFile);
+            pendingFile.delete();
+            Log.d(TAG, "Gallery migration complete: " + pending.getNames().size() + " identities");
+            listener.onMigrationComplete(pending);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to replace gallery after migration", e);
+        }
+    }
+
+    private List<float[]> embedStoredCrops(File facultyDir) {
+        List<float[]> embeddings = new ArrayList<>();
+        File[] photos = facultyDir.listFiles((dir, n) -> n.endsWith(".jpg"));
+        if (photos == null) return embeddings;
+
+        for (File photo : photos) {
+            if (cancelled) break;
+            Bitmap bitmap = BitmapFactory.decodeFile(photo.getAbsolutePath());
+            if (bitmap == null) continue;
+
+            // Stored photos are already aligned 160x160 crops from enrollment
+            float[] emb = faceNet.getEmbedding(bitmap);
+            if (emb != null) embeddings.add(emb);
+            bitmap.recycle();
+        }
+        return embeddings;
+    }
+}
@@ -0,0 +1,248 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HotLog is a structured logger for the frame path, where one android.util.Log line per
+ * gallery comparison per frame costs more than the matching itself.
+ *
+ * A log call is an event name plus key/value fields, written into a pooled Record and
+ * queued for a background writer that does all of the formatting; the calling thread
+ * never concatenates or formats. When the pool is exhausted the record is dropped and
+ * counted, so a slow sink never stalls a frame. Levels are android.util.Log's.
+ *
+ * Cost control, cheapest first:
+ * - COMPILED_LEVEL: sites guarded by DEBUG_COMPILED are removed by javac when it is false.
+ * - Category level, changed at run time; below it a call is one volatile read.
+ * - Category sampling: sample() passes one call in sampleEvery, for per-frame events.
+ *
+ * Typical hot-path use, one sampling decision per frame:
+ *
+ *     boolean log = HotLog.DEBUG_COMPILED && MATCH_LOG.sample(HotLog.DEBUG);
+ *     ...
+ *     if (log) MATCH_LOG.event(HotLog.DEBUG, "compare").put("name", name).put("distance", d).commit();
+ */
+public class HotLog {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    // Lowest level compiled in; raise it to INFO to strip debug sites from a release
+    public static final int COMPILED_LEVEL = DEBUG;
+    public static final boolean DEBUG_COMPILED = COMPILED_LEVEL <= DEBUG;
+
+    private static final int POOL_SIZE = 256;
+    private static final int MAX_FIELDS = 8;
+
+    /** The app-wide logger; categories are usually static finals created from it. */
+    public static final HotLog GLOBAL = new HotLog(POOL_SIZE);
+
+    /** Receives formatted events on the writer thread. */
+    public interface Sink {
+        void write(long timeMillis, int level, String tag, CharSequence message);
+
+        /** Called when the queue has drained. */
+        void flush();
+    }
+
+    public class Category {
+        private final String tag;
+        private volatile int level;
+        private volatile int sampleEvery;
+        private final AtomicLong sampleCounter = new AtomicLong();
+
+        Category(String tag, int level, int sampleEvery) {
+            this.tag = tag;
+            this.level = level;
+            this.sampleEvery = Math.max(1, sampleEvery);
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        public void setSampleEvery(int sampleEvery) {
+            this.sampleEvery = Math.max(1, sampleEvery);
+        }
+
+        public boolean isLoggable(int level) {
+            return level >= COMPILED_LEVEL && level >= this.level && sinks.length > 0;
+        }
+
+        /** isLoggable(), then true for one call in sampleEvery. */
+        public boolean sample(int level) {
+            if (!isLoggable(level)) return false;
+            int every = sampleEvery;
+            return every == 1 || sampleCounter.getAndIncrement() % every == 0;
+        }
+
+        /**
+         * Starts an event if the level is enabled. Always returns a record; when the event
+         * is filtered out or the pool is exhausted, its put() and commit() do nothing.
+         */
+        public Record event(int level, String name) {
+            if (!isLoggable(level)) return discard;
+            Record record = free.poll();
+            if (record == null) {
+                dropped.incrementAndGet();
+                return discard;
+            }
+            record.start(this, level, name);
+            return record;
+        }
+    }
+
+    /** One pooled event. Fields are kept as given and formatted by the writer. */
+    public final class Record {
+        private Category category;
+        private int level;
+        private String name;
+        private long timeMillis;
+        private int fieldCount;
+        private final String[] keys = new String[MAX_FIELDS];
+        private final Object[] objects = new Object[MAX_FIELDS];
+        private final double[] numbers = new double[MAX_FIELDS];
+
+        void start(Category category, int level, String name) {
+            this.category = category;
+            this.level = level;
+            this.name = name;
+            this.timeMillis = System.currentTimeMillis();
+            fieldCount = 0;
+        }
+
+        public Record put(String key, double value) {
+            if (category != null && fieldCount < MAX_FIELDS) {
+                keys[fieldCount] = key;
+                objects[fieldCount] = null;
+                numbers[fieldCount++] = value;
+            }
+            return this;
+        }
+
+        /** The value's toString() runs on the writer thread, so pass immutable values. */
+        public Record put(String key, Object value) {
+            if (category != null && fieldCount < MAX_FIELDS) {
+                keys[fieldCount] = key;
+                objects[fieldCount++] = value != null ? value : "null";
+            }
+            return this;
+        }
+
+        public void commit() {
+            if (category == null) return;
+            if (!queued.offer(this)) {
+                // Only when more records are in flight than the pool holds; cannot happen
+                dropped.incrementAndGet();
+                release(this);
+            }
+        }
+    }
+
+    private final ArrayBlockingQueue<Record> free;
+    private final ArrayBlockingQueue<Record> queued;
+    private final Record discard = new Record();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile Sink[] sinks = new Sink[0];
+    private Thread writer;
+
+    public HotLog(int poolSize) {
+        free = new ArrayBlockingQueue<>(poolSize);
+        queued = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) free.add(new Record());
+    }
+
+    public Category category(String tag, int level, int sampleEvery) {
+        return new Category(tag, level, sampleEvery);
+    }
+
+    /** Sets where events go and starts the writer; with no sinks every category is off. */
+    public synchronized void setSinks(Sink... sinks) {
+        this.sinks = sinks.clone();
+        if (writer == null && sinks.length > 0) {
+            writer = new Thread(this::runWriter, "hot-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public int getSinkCount() {
+        return sinks.length;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    private void runWriter() {
+        StringBuilder message = new StringBuilder(256);
+        while (true) {
+            Record record = queued.poll();
+            if (record == null) {
+                for (Sink sink : sinks) sink.flush();
+                try {
+                    record = queued.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            message.setLength(0);
+            format(record, message);
+            for (Sink sink : sinks) {
+                try {
+                    sink.write(record.timeMillis, record.level, record.category.tag, message);
+                } catch (RuntimeException e) {
+                    // A failing sink must not take the writer down
+                }
+            }
+            written.incrementAndGet();
+            release(record);
+        }
+    }
+
+    private static void format(Record record, StringBuilder out) {
+        out.append(record.name);
+        for (int i = 0; i < record.fieldCount; i++) {
+            out.append(' ').append(record.keys[i]).append('=');
+            Object object = record.objects[i];
+            if (object != null) {
+                out.append(object);
+            } else {
+                double number = record.numbers[i];
+                if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                    out.append((long) number);
+                } else {
+                    out.append(String.format(Locale.US, "%.4f", number));
+                }
+            }
+        }
+    }
+
+    private void release(Record record) {
+        record.category = null;
+        for (int i = 0; i < record.fieldCount; i++) record.objects[i] = null;
+        record.fieldCount = 0;
+        free.offer(record);
+    }
+
+    public static char levelLetter(int level) {
+        switch (level) {
+            case VERBOSE: return 'V';
+            case DEBUG: return 'D';
+            case INFO: return 'I';
+            case WARN: return 'W';
+            default: return 'E';
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts durations in fixed memory, HDR-histogram style: values are kept in
+ * microseconds, exact below 2 * SUB_BUCKETS and in SUB_BUCKETS linear steps per power of two
+ * above, so every recorded value is within about 6% of its bucket whatever its magnitude.
+ * Values from 1 us to over an hour fit in BUCKET_COUNT counters; larger ones are clamped.
+ *
+ * record() is lock-free and allocation-free, so it can sit on the frame path; any thread
+ * may record or read. Percentiles read while others record are approximate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Highest bit of the largest tracked value: 2^32 us is about 72 minutes
+    private static final int MAX_HIGHEST_BIT = 31;
+    static final int BUCKET_COUNT = (MAX_HIGHEST_BIT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) micros = 0;
+        counts.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // Lost a race with a larger value; retry
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+        if (highestBit > MAX_HIGHEST_BIT) return BUCKET_COUNT - 1;
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift);
+        return (shift + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    /** Smallest value that falls in the bucket. */
+    static long lowestInBucket(int bucket) {
+        int group = bucket / SUB_BUCKETS;
+        if (group == 0) return bucket;
+        long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return subBucket << (group - 1);
+    }
+
+    /** Largest value that falls in the bucket. */
+    static long highestInBucket(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowestInBucket(bucket + 1) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long n = count.get();
+        return n > 0 ? (double) totalMicros.get() / n : 0;
+    }
+
+    /**
+     * The value below which the given fraction (0-1) of recorded values fall, as the top of
+     * its bucket, never above the largest value recorded. 0 when nothing was recorded.
+     */
+    public long getPercentileMicros(double fraction) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestInBucket(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts.set(i, 0);
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                getCount(), getMeanMicros() / 1000, getPercentileMicros(0.5) / 1000.0,
+                getPercentileMicros(0.9) / 1000.0, getPercentileMicros(0.99) / 1000.0, getMaxMicros() / 1000.0);
+    }
+}
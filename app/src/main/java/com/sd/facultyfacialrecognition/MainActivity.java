@@ -2,10 +2,11 @@ package com.sd.facultyfacialrecognition;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Size;
 import android.content.Intent;
@@ -19,44 +20,33 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.google.android.gms.tasks.Task;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
-import com.google.mlkit.vision.face.FaceLandmark;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.reflect.TypeToken;
-
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -78,40 +68,90 @@ public class MainActivity extends AppCompatActivity {
     private Button btnBreakDone;
 
     private FaceNet faceNet;
-    private ImageAligner imageAligner;
+    private final YuvFrame yuvFrame = new YuvFrame();
     private ExecutorService cameraExecutor;
 
-    private final Map<String, float[]> KNOWN_FACE_EMBEDDINGS = new HashMap<>();
+    // Idle the detector while the doorway is empty; only touched on the camera thread
+    private static final float MOTION_THRESHOLD = 6f;
+    private static final long MOTION_HEARTBEAT_MILLIS = 1000;
+    private static final long MOTION_HOLD_MILLIS = 3000;
+    private static final long MIN_EMBED_INTERVAL_MILLIS = 66;
+    private static final int TRACKER_DETECT_INTERVAL = 3;
+    private static final float TRACKER_MIN_CONFIDENCE = 0.5f;
+    private static final int TRACKER_MAX_MISSES = 2;
+    private final FaceTracker faceTracker = new FaceTracker(TRACKER_DETECT_INTERVAL, TRACKER_MIN_CONFIDENCE, TRACKER_MAX_MISSES);
+    // Small, turned, badly lit or blurred faces are tracked and drawn but not embedded
+    private final FaceQualityGate qualityGate = new FaceQualityGate(new FaceQualityGate.Thresholds());
+    private DetectionScheduler detectionScheduler;
+    private FramePreparer framePreparer;
+    private static final boolean USE_TFLITE_DETECTOR = false;
+    private ProcessCameraProvider cameraProvider;
+    private ImageAnalysis imageAnalysis;
+    // Camera and models outlive the dashboard and thank-you screens; analysis pauses while hidden
+    // and the camera closes while the app is in the background
+    private final RecognitionSession session = new RecognitionSession();
+    private boolean analysisPaused = false;
+    private static final CameraSelector CAMERA_SELECTOR = CameraSelector.DEFAULT_FRONT_CAMERA;
+
+    // Analysis resolution follows face size; the tracking detector only scans the doorway or the last face
+    private static final long RESOLUTION_HOLD_MILLIS = 1500;
+    private static final long RESOLUTION_REBIND_INTERVAL_MILLIS = 5000;
+    private static final long RESOLUTION_IDLE_RESET_MILLIS = 15000;
+    private static final int ROI_FULL_SCAN_INTERVAL = 15;
+    private final AdaptiveResolutionPolicy resolutionPolicy = new AdaptiveResolutionPolicy(
+            RESOLUTION_HOLD_MILLIS, RESOLUTION_REBIND_INTERVAL_MILLIS, RESOLUTION_IDLE_RESET_MILLIS);
+    private final MotionGate motionGate = new MotionGate(MOTION_THRESHOLD, MOTION_HEARTBEAT_MILLIS, MOTION_HOLD_MILLIS);
+
+    // Camera -> embed -> match; detection of frame N+1 overlaps embedding of frame N
+    private static final int PIPELINE_STATS_INTERVAL = 100;
+    private final PipelineMetrics metrics = new PipelineMetrics(TraceRecorder.GLOBAL);
+    private final ArrayDeque<FrameTask> freeTasks = new ArrayDeque<>();
+    private final PipelineStage<FrameTask> embedStage = new PipelineStage<>(
+            "embed", 2, PipelineStage.DropPolicy.KEEP_LATEST, this::embedFrame, this::releaseTask);
+    private final PipelineStage<FrameTask> matchStage = new PipelineStage<>(
+            "match", 4, PipelineStage.DropPolicy.DROP_NEWEST, this::matchFrame, this::releaseTask);
+
+    // Matching stage; its decisions are drained on the main thread without allocating
+    private FrameMatcher frameMatcher;
+    private final FrameMatcher.DecisionListener decisionListener = this::applyFrameResult;
+    private final Runnable drainDecisions = () -> frameMatcher.drainDecisions(decisionListener);
+
+    // Updated on the main thread; the matcher holds the snapshot the matching stage reads
+    private final Map<String, float[]> KNOWN_FACE_EMBEDDINGS = new ConcurrentHashMap<>();
     private Map<String, List<float[]>> facultyEmbeddings = new HashMap<>();
+    private volatile GalleryMigrator galleryMigrator;
 
     private float dynamicThreshold = 0.59f;
 
+    // Per-comparison match logging: off (INFO) by default; at DEBUG one face in 30 is logged
+    private static final int MATCH_LOG_SAMPLE_EVERY = 30;
+    private static final HotLog.Category MATCH_LOG =
+            HotLog.GLOBAL.category("FaceRecognition", HotLog.INFO, MATCH_LOG_SAMPLE_EVERY);
+    private static final long HOT_LOG_FILE_BYTES = 1 << 20;
+    private static final int HOT_LOG_FILES = 3;
+    private final FaceMatcher faceMatcher = new FaceMatcher(MATCH_LOG);
+
     private static final int STABILITY_FRAMES_NEEDED = 20;
     private static final long UNLOCK_COOLDOWN_MILLIS = 10000;
 
     private static final long CONFIRMATION_TIMEOUT_MILLIS = 10000;
     private static final int VISUAL_COUNTDOWN_SECONDS = 5;
 
-    private String stableMatchName = "Scanning...";
-    private String currentBestMatch = "Scanning...";
-    private int stableMatchCount = 0;
-    private String lastMatchName = "";
-
-    private boolean isDoorLocked = true;
-    private boolean isAwaitingLockConfirmation = false;
-    private boolean isAwaitingUnlockConfirmation = false;
-    private boolean isAwaitingLockerRecognition = false;
+    // Lock, unlock, confirmation and cooldown logic; main thread only. The handler just fires its timers
+    private final DoorStateMachine doorStateMachine = new DoorStateMachine(Clock.SYSTEM,
+            STABILITY_FRAMES_NEEDED, UNLOCK_COOLDOWN_MILLIS, CONFIRMATION_TIMEOUT_MILLIS, VISUAL_COUNTDOWN_SECONDS);
+    private Handler doorTimerHandler;
+    private final Runnable doorTimerRunnable = () -> {
+        doorStateMachine.tick();
+        scheduleDoorTimer();
+    };
     private boolean isReturningFromBreak = false;
 
-    private String authorizedLocker = null;
-    private String authorizedUnlocker = null;
-    private long lastLockTimestamp = 0;
+    // Debug: record embedded frames, user events and decisions for PipelineReplay
+    private static final boolean RECORD_SESSION = false;
+    private SessionRecorder sessionRecorder;
+    private final List<DetectedFace> recordedFaces = new ArrayList<>();
 
-    private Handler confirmationHandler;
-    private Runnable confirmationRunnable;
-    private Handler countdownDisplayHandler;
-    private Runnable countdownDisplayRunnable;
-    private int confirmationTimeRemaining = VISUAL_COUNTDOWN_SECONDS;
     private FirebaseFirestore db;
 
     private String currentLab = "CompLab3"; //CpeLab or CompLab3
@@ -123,6 +163,7 @@ public class MainActivity extends AppCompatActivity {
 
         previewView = findViewById(R.id.previewView);
         overlayView = findViewById(R.id.faceOverlayView);
+        frameMatcher = new FrameMatcher(faceMatcher, dynamicThreshold, overlayView, this::prioritizeMigration);
         statusTextView = findViewById(R.id.text_status_label);
         countdownTextView = findViewById(R.id.text_countdown_status);
 
@@ -134,15 +175,40 @@ public class MainActivity extends AppCompatActivity {
         confirmNoButton.setVisibility(View.GONE);
         btnBreakDone.setVisibility(View.GONE);
 
-        confirmationHandler = new Handler();
-        countdownDisplayHandler = new Handler();
+        doorTimerHandler = new Handler();
+        doorStateMachine.setListener(new DoorStateMachine.Listener() {
+            @Override
+            public void onDecision(DoorStateMachine.Decision decision, String facultyName, long timeMillis) {
+                Log.d("DoorLockDebug", "Decision: " + decision + " for " + facultyName);
+                if (sessionRecorder != null) sessionRecorder.recordDecision(timeMillis, decision, facultyName);
+                if (decision == DoorStateMachine.Decision.UNLOCKED) {
+                    handleUnlockConfirmation(facultyName);
+                } else if (decision == DoorStateMachine.Decision.LOCKED) {
+                    handleLockConfirmation(facultyName);
+                }
+            }
+
+            @Override
+            public void onUiState(String status, String countdown, boolean awaitingConfirmation) {
+                updateUiOnThread(status, countdown);
+            }
+        });
         cameraExecutor = Executors.newSingleThreadExecutor();
-        imageAligner = new ImageAligner();
+        // Boxes every frame, accurate landmarks at most every 66 ms (~15 embeddings per second)
+        detectionScheduler = createDetectionScheduler();
+        framePreparer = new FramePreparer(faceTracker, detectionScheduler, qualityGate, motionGate, metrics);
+        embedStage.start();
+        matchStage.start();
+        if (RECORD_SESSION) startSessionRecording();
+        installHotLogSinks();
 
 
         initializeSystem();
+        session.open(getApplication(), MainActivity.class, DashboardActivity.class, ThankYouActivity.class);
         startCamera();
+        long traceStart = TraceRecorder.GLOBAL.begin();
         testLoadEmbeddings();
+        TraceRecorder.GLOBAL.end("check gallery", traceStart);
 
         db = FirebaseFirestore.getInstance();
 
@@ -150,96 +216,40 @@ public class MainActivity extends AppCompatActivity {
 
     private void initializeSystem() {
         try {
+            long traceStart = TraceRecorder.GLOBAL.begin();
             faceNet = new FaceNet(this, "facenet.tflite");
+            TraceRecorder.GLOBAL.end("load model", traceStart);
 
             // Try loading from storage first
+            traceStart = TraceRecorder.GLOBAL.begin();
             boolean embeddingsLoaded = loadEmbeddingsFromStorage();
             if (!embeddingsLoaded) {
                 // Fallback to assets
                 embeddingsLoaded = loadEmbeddingsFromAssets();
             }
+            TraceRecorder.GLOBAL.end("load gallery", traceStart);
 
             Log.d(TAG, "FaceNet model and embeddings loaded successfully. Embeddings loaded: " + embeddingsLoaded);
         } catch (Exception e) {
             Log.e(TAG, "Error initializing FaceNet or embeddings", e);
         }
-
-        startCamera();
-    }
-
-
-
-    private void startConfirmationTimer(boolean isLock) {
-        stopConfirmationTimer();
-
-        confirmationRunnable = () -> {
-            if (isLock) {
-                onConfirmNoClicked(null);
-                updateUiOnThread("Lock Timed Out", "Lock request cancelled due to inactivity.");
-            } else {
-                onConfirmNoClicked(null);
-                updateUiOnThread("Unlock Timed Out", "Unlock request cancelled due to inactivity.");
-            }
-        };
-
-        confirmationHandler.postDelayed(confirmationRunnable, CONFIRMATION_TIMEOUT_MILLIS);
-    }
-
-    private void stopConfirmationTimer() {
-        if (confirmationRunnable != null) {
-            confirmationHandler.removeCallbacks(confirmationRunnable);
-            confirmationRunnable = null;
-        }
     }
 
-    private void startVisualCountdown(String action, String matchName) {
-        stopVisualCountdown();
-
-        confirmationTimeRemaining = VISUAL_COUNTDOWN_SECONDS;
-
-        countdownDisplayRunnable = new Runnable() {
-            @Override
-            public void run() {
-                String currentAction = isAwaitingLockConfirmation ? "Lock" : "Unlock";
-
-                if (confirmationTimeRemaining > 0) {
-                    String name = isAwaitingLockConfirmation ? authorizedLocker : stableMatchName;
 
-                    updateUiOnThread("Confirm " + currentAction + " Identity",
-                            "Is this you: " + name + "?\nAction auto-cancels in " + (CONFIRMATION_TIMEOUT_MILLIS / 1000) + "s (Visual countdown: " + confirmationTimeRemaining + "s).");
 
-                    confirmationTimeRemaining--;
-                    countdownDisplayHandler.postDelayed(this, 1000);
-                } else {
-                    String name = isAwaitingLockConfirmation ? authorizedLocker : stableMatchName;
-                    String finalStatus = isAwaitingLockConfirmation ? "Confirm Lock Identity" : "Confirm Unlock Identity";
-                    String finalCountdown = "Is this you: " + name + "? (Awaiting confirmation)";
-                    updateUiOnThread(finalStatus, finalCountdown);
-                    stopVisualCountdown();
-                }
-            }
-        };
-
-        countdownDisplayHandler.post(countdownDisplayRunnable);
+    // Fires the state machine's next countdown step or confirmation timeout on time
+    private void scheduleDoorTimer() {
+        doorTimerHandler.removeCallbacks(doorTimerRunnable);
+        long next = doorStateMachine.nextTimerMillis();
+        if (next == DoorStateMachine.NO_TIMER) return;
+        doorTimerHandler.postDelayed(doorTimerRunnable, Math.max(0, next - Clock.SYSTEM.nowMillis()));
     }
 
-    private void stopVisualCountdown() {
-        if (countdownDisplayRunnable != null) {
-            countdownDisplayHandler.removeCallbacks(countdownDisplayRunnable);
-            countdownDisplayRunnable = null;
-        }
-    }
 
     public void onConfirmYesClicked(View view) {
-        stopConfirmationTimer();
-        stopVisualCountdown();
-
-        if (isAwaitingLockConfirmation) {
-            handleLockConfirmation();
-
-        } else if (isAwaitingUnlockConfirmation) {
-            handleUnlockConfirmation();
-        }
+        recordEvent(ReplayDriver.YES);
+        doorStateMachine.confirmYes();
+        scheduleDoorTimer();
     }
 
     private String getCurrentTimestamp() {
@@ -247,7 +257,15 @@ public class MainActivity extends AppCompatActivity {
         return sdf.format(new Date());
     }
 
+    // Times a database write from the call to its completion callback
+    private static <T> Task<T> traceWrite(String name, Task<T> task) {
+        long traceStart = TraceRecorder.GLOBAL.begin();
+        task.addOnCompleteListener(done -> TraceRecorder.GLOBAL.endAsync(name, traceStart));
+        return task;
+    }
+
     private void updateRealtimeStatus(String facultyStatus, String doorStatus) {
+        String authorizedUnlocker = doorStateMachine.getAuthorizedUnlocker();
         if (authorizedUnlocker == null ||
                 authorizedUnlocker.equals("Scanning...") ||
                 authorizedUnlocker.equals("Unknown")) {
@@ -273,7 +291,7 @@ public class MainActivity extends AppCompatActivity {
                     .getReference(currentLab)
                     .child("Latest");
 
-            dbRef.setValue(data)
+            traceWrite("realtime db: Latest", dbRef.setValue(data))
                     .addOnSuccessListener(aVoid -> Log.d("DoorDebug", "Realtime DB successfully updated"))
                     .addOnFailureListener(e -> Log.e("DoorDebug", "Realtime DB update FAILED", e));
 
@@ -299,8 +317,7 @@ public class MainActivity extends AppCompatActivity {
         logEntry.put("timestamp", timestamp);
         logEntry.put("lab", currentLab);
 
-        db.collection("DoorLogs")
-                .add(logEntry)
+        traceWrite("firestore: DoorLogs", db.collection("DoorLogs").add(logEntry))
                 .addOnSuccessListener(docRef -> Log.d("DoorLockDebug",
                         "Door event logged: " + facultyName + " | " + facultyStatus + " | " + doorStatus + " | " + timestamp))
                 .addOnFailureListener(e -> Log.e("DoorLockDebug", "Error logging door event", e));
@@ -317,9 +334,8 @@ public class MainActivity extends AppCompatActivity {
         data.put("doorStatus", doorStatus);
         data.put("timestamp", timestamp);
 
-        db.collection(currentLab)
-                .document("Latest")   // Always overwrite the same document
-                .set(data)
+        // Always overwrite the same document
+        traceWrite("firestore: lab Latest", db.collection(currentLab).document("Latest").set(data))
                 .addOnSuccessListener(aVoid -> Log.d("DoorLockDebug",
                         "Updated " + currentLab + " Latest: " + facultyName + " | " + facultyStatus + " | " + doorStatus + " | " + timestamp))
                 .addOnFailureListener(e -> Log.e("DoorLockDebug",
@@ -327,32 +343,20 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
-    private void handleLockConfirmation() {
-        isDoorLocked = true;
-        isAwaitingLockConfirmation = false;
-        isAwaitingLockerRecognition = false;
-        lastLockTimestamp = System.currentTimeMillis();
-
-        final String facultyNameFinal = authorizedLocker; // make final for lambda
+    // DoorStateMachine has already locked the door and shown the status; this records it
+    private void handleLockConfirmation(String facultyNameFinal) {
         final String status = "LOCKED";
 
         Log.d("DoorLockDebug", "Handling LOCK confirmation for faculty: " + facultyNameFinal);
 
         // Log door event
-        logDoorEvent(authorizedLocker, "End Class", "LOCKED");
+        logDoorEvent(facultyNameFinal, "End Class", "LOCKED");
 
         // Update Firestore with debug
         updateFacultyStatusWithDebug(facultyNameFinal, status);
-
-        resetStateAfterAction();
-        updateUiOnThread("System Locked", "Door secured. Cooldown active.");
     }
 
-    private void handleUnlockConfirmation() {
-        isDoorLocked = false;
-        isAwaitingUnlockConfirmation = false;
-        final String facultyNameFinal = stableMatchName;
-        authorizedUnlocker = facultyNameFinal;
+    private void handleUnlockConfirmation(String facultyNameFinal) {
 
         String facultyStatus = "In Class";
         String doorStatus = "UNLOCKED";
@@ -369,10 +373,6 @@ public class MainActivity extends AppCompatActivity {
         // Realtime Database update
         updateRealtimeStatus(facultyStatus, doorStatus);
 
-        if (cameraExecutor != null) {
-            cameraExecutor.shutdown();
-        }
-
         boolean isRescanMode = getIntent().hasExtra("mode") &&
                 "rescan".equals(getIntent().getStringExtra("mode"));
         boolean isFromBreak = getIntent().getBooleanExtra("from_break", false);
@@ -390,18 +390,12 @@ public class MainActivity extends AppCompatActivity {
 
                 updateUiOnThread("What would you like to do?", "Select an option below.");
             });
-
-            resetStateAfterAction();
             return;
         }
 
         Intent intent = new Intent(MainActivity.this, DashboardActivity.class);
         intent.putExtra("profName", facultyNameFinal);
         startActivity(intent);
-
-        resetStateAfterAction();
-        updateUiOnThread("Access Granted:\n" + facultyNameFinal,
-                "Door UNLOCKED. Choose options below.");
     }
 
 
@@ -421,17 +415,15 @@ public class MainActivity extends AppCompatActivity {
         data.put("status", statusFinal); // will be "LOCKED", "UNLOCKED", or "BREAK"
         data.put("timestamp", System.currentTimeMillis());
 
-        db.collection(currentLab)
-                .document(facultyNameFinal)
-                .set(data)
+        traceWrite("firestore: faculty status", db.collection(currentLab).document(facultyNameFinal).set(data))
                 .addOnSuccessListener(aVoid -> Log.d("DoorLockDebug", "Successfully updated faculty status for " + facultyNameFinal))
                 .addOnFailureListener(e -> Log.e("DoorLockDebug", "Error updating faculty status for " + facultyNameFinal, e));
     }
 
     public void onTakeBreakClicked(View view) {
-        if (authorizedUnlocker == null) return;
+        String facultyNameFinal = doorStateMachine.getAuthorizedUnlocker();
+        if (facultyNameFinal == null) return;
 
-        String facultyNameFinal = authorizedUnlocker;
         String facultyStatus = "Break";
         String doorStatus = "UNLOCKED";
         String timestamp = new SimpleDateFormat("yyyy-MM-dd | EEEE | HH:mm:ss", Locale.getDefault()).format(new Date());
@@ -447,23 +439,19 @@ public class MainActivity extends AppCompatActivity {
         intent.putExtra("profName", facultyNameFinal);
         intent.putExtra("status", "Professor is on break. Please scan to resume class.");
         startActivity(intent);
-        finish();
     }
 
 
 
     public void onBackInClassScanned() {
-        stableMatchCount = 0;
-        authorizedUnlocker = null;
-        stableMatchName = "Scanning...";
-        currentBestMatch = "Scanning...";
-        updateUiOnThread("Professor Back in Class", "Please scan to confirm identity.");
+        recordEvent(ReplayDriver.BACK);
+        doorStateMachine.backInClass();
     }
 
     public void onEndClassClicked(View view) {
-        if (authorizedUnlocker == null) return;
+        String facultyNameFinal = doorStateMachine.getAuthorizedUnlocker();
+        if (facultyNameFinal == null) return;
 
-        String facultyNameFinal = authorizedUnlocker;
         String facultyStatus = "End Class";
         String doorStatus = "LOCKED";
         String timestamp = new SimpleDateFormat("yyyy-MM-dd | EEEE | HH:mm:ss", Locale.getDefault()).format(new Date());
@@ -477,17 +465,18 @@ public class MainActivity extends AppCompatActivity {
         // Realtime Database update
         updateRealtimeStatus(facultyStatus, doorStatus);
 
-        isDoorLocked = true;
+        recordEvent(ReplayDriver.END);
+        doorStateMachine.endClass();
 
         Intent intent = new Intent(MainActivity.this, ThankYouActivity.class);
         intent.putExtra("message", "Class ended and door is locked, thank you!");
         startActivity(intent);
-        finish();
     }
 
 
 
     public void onBreakDoneClicked(View view) {
+        String authorizedUnlocker = doorStateMachine.getAuthorizedUnlocker();
         if (authorizedUnlocker == null) return;
 
         isReturningFromBreak = true;
@@ -501,42 +490,52 @@ public class MainActivity extends AppCompatActivity {
         Intent intent = new Intent(MainActivity.this, DashboardActivity.class);
         intent.putExtra("profName", authorizedUnlocker);
         startActivity(intent);
-        finish();
     }
 
 
 
     public void onConfirmNoClicked(View view) {
-        stopConfirmationTimer();
-        stopVisualCountdown();
-
-        if (isAwaitingLockConfirmation) {
-            isAwaitingLockConfirmation = false;
-            isAwaitingLockerRecognition = false;
-            authorizedLocker = null;
+        recordEvent(ReplayDriver.NO);
+        doorStateMachine.confirmNo();
+        scheduleDoorTimer();
+    }
 
-            if (view != null) {
-                updateUiOnThread("Access Granted: " + authorizedUnlocker, "Lock cancelled by user. Door is UNLOCKED.");
-            }
+    // The dashboard and thank-you screens come back to this instance (CLEAR_TOP | SINGLE_TOP),
+    // so a new visit only resets the door state and the views; camera and models stay as they are
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        resetForNewVisit();
+    }
 
-        } else if (isAwaitingUnlockConfirmation) {
-            isAwaitingUnlockConfirmation = false;
+    private void resetForNewVisit() {
+        isReturningFromBreak = false;
+        frameMatcher.resetDoorCandidate();
+        recordEvent(ReplayDriver.RESET);
+        doorStateMachine.reset();
+        scheduleDoorTimer();
 
-            if (view != null) {
-                updateUiOnThread("Access Denied", "Unlock cancelled by user. Awaiting recognition.");
-            }
-        }
+        findViewById(R.id.btn_take_break).setVisibility(View.GONE);
+        findViewById(R.id.btn_end_class).setVisibility(View.GONE);
+        btnBreakDone.setVisibility(View.GONE);
+    }
 
-        stableMatchCount = 0;
-        stableMatchName = "Scanning...";
-        currentBestMatch = "Scanning...";
+    @Override
+    protected void onStart() {
+        super.onStart();
+        analysisPaused = false;
+        metrics.onCameraRestarted();
+        if (imageAnalysis != null) imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeFrame);
     }
 
-    private void resetStateAfterAction() {
-        stableMatchCount = 0;
-        authorizedLocker = null;
-        stableMatchName = "Scanning...";
-        currentBestMatch = "Scanning...";
+    // The camera stays open under the dashboard and thank-you screens, but frames are not
+    // analysed there; RecognitionSession closes it when the app goes to the background
+    @Override
+    protected void onStop() {
+        super.onStop();
+        analysisPaused = true;
+        if (imageAnalysis != null) imageAnalysis.clearAnalyzer();
     }
 
     private boolean allPermissionsGranted() {
@@ -556,266 +555,243 @@ public class MainActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
 
-    @OptIn(markerClass = ExperimentalGetImage.class)
     private void bindPreviewAndAnalyzer(ProcessCameraProvider cameraProvider) {
+        if (!session.isOpen()) return;
         cameraProvider.unbindAll();
+        this.cameraProvider = cameraProvider;
+        this.imageAnalysis = null;
 
         Preview preview = new Preview.Builder().build();
-        CameraSelector selector = CameraSelector.DEFAULT_FRONT_CAMERA;
         preview.setSurfaceProvider(previewView.getSurfaceProvider());
+        cameraProvider.bindToLifecycle(session, CAMERA_SELECTOR, preview);
 
-        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                .setTargetResolution(new Size(640, 480))
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build();
-
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
-                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
-                .enableTracking()
-                .build();
-
-        FaceDetector detector = FaceDetection.getClient(options);
-
-        imageAnalysis.setAnalyzer(cameraExecutor, image -> {
-            try {
-                final android.media.Image mediaImage = image.getImage();
-                if (mediaImage != null) {
-                    InputImage inputImage = InputImage.fromMediaImage(mediaImage, image.getImageInfo().getRotationDegrees());
-                    detector.process(inputImage)
-                            .addOnSuccessListener(faces -> handleFaces(faces, inputImage))
-                            .addOnFailureListener(e -> Log.e(TAG, "Face detection failed", e))
-                            .addOnCompleteListener(task -> image.close());
-                } else {
-                    image.close();
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Analyzer error", e);
-                image.close();
-            }
-        });
-
-        cameraProvider.bindToLifecycle(this, selector, preview, imageAnalysis);
+        bindAnalysis(resolutionPolicy.getTier());
     }
 
-    private void handleFaces(List<Face> faces, InputImage inputImage) {
-        List<FaceOverlayView.FaceGraphic> graphics = new ArrayList<>();
-        Bitmap fullBmp = InputImageUtils.getBitmapFromInputImage(this, inputImage);
-        if (fullBmp == null) return;
-
-        String currentBestFrameMatch = "Scanning...";
-        float bestDist = Float.MAX_VALUE;
-
-        if (faces.isEmpty() || faces.size() > 1) {
-            currentBestFrameMatch = "Scanning...";
-        } else {
-            Face face = faces.get(0);
-            android.graphics.PointF leftEye = face.getLandmark(FaceLandmark.LEFT_EYE) != null ? face.getLandmark(FaceLandmark.LEFT_EYE).getPosition() : null;
-            android.graphics.PointF rightEye = face.getLandmark(FaceLandmark.RIGHT_EYE) != null ? face.getLandmark(FaceLandmark.RIGHT_EYE).getPosition() : null;
-
-            Bitmap faceBmp = imageAligner.alignAndCropFace(fullBmp, face.getBoundingBox(), leftEye, rightEye);
-
-            if (faceBmp != null) {
-                float[] emb = faceNet.getEmbedding(faceBmp);
-                if (emb != null) {
-                    normalizeEmbedding(emb);
-
-                    for (Map.Entry<String, float[]> entry : KNOWN_FACE_EMBEDDINGS.entrySet()) {
-                        float d = FaceNet.distance(emb, entry.getValue());
-                        Log.d("FaceRecognition", "Comparing with: " + entry.getKey() + " | Distance = " + d);
-                        if (d < bestDist) {
-                            bestDist = d;
-                            currentBestFrameMatch = entry.getKey();
-                        }
-                    }
+    // Swaps only the analysis use case, so the preview keeps running while the resolution changes
+    private void bindAnalysis(int tier) {
+        if (cameraProvider == null || !session.isOpen()) return;
+        if (imageAnalysis != null) cameraProvider.unbind(imageAnalysis);
 
-                    Log.d("FaceRecognition", "Best match this frame: " + currentBestFrameMatch + " | Best Distance = " + bestDist);
-                    Log.d("FaceRecognition", "Using threshold = " + dynamicThreshold);
+        int width = AdaptiveResolutionPolicy.getWidth(tier);
+        int height = AdaptiveResolutionPolicy.getHeight(tier);
+        imageAnalysis = new ImageAnalysis.Builder()
+                .setTargetResolution(new Size(width, height))
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+        if (!analysisPaused) imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeFrame);
 
-                    if (bestDist > dynamicThreshold) {
-                        currentBestFrameMatch = "Unknown";
-                    }
+        metrics.onCameraRestarted();
+        cameraProvider.bindToLifecycle(session, CAMERA_SELECTOR, imageAnalysis);
+        Log.d(TAG, "Analysis bound at " + width + "x" + height);
+    }
 
-                }
-            }
-            String label = currentBestFrameMatch;
-            if (!currentBestFrameMatch.equals("Scanning...") && !currentBestFrameMatch.equals("Unknown")) {
-                label = String.format(Locale.US, "%s (%.2f)", currentBestFrameMatch, bestDist);
-            }
-            graphics.add(new FaceOverlayView.FaceGraphic(face.getBoundingBox(), label, bestDist));
+    // Camera stage: detect and sample the face tensor, then release the frame so the
+    // next one can be detected while this one is still being embedded
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    private void analyzeFrame(ImageProxy image) {
+        long traceStart = TraceRecorder.GLOBAL.begin();
+        final android.media.Image mediaImage = image.getImage();
+        long now = SystemClock.uptimeMillis();
+        long sensorNanos = image.getImageInfo().getTimestamp();
+        metrics.onCameraFrame(sensorNanos);
+        if (mediaImage == null || !motionGate.shouldProcess(mediaImage.getPlanes()[0].getBuffer(),
+                mediaImage.getPlanes()[0].getRowStride(), mediaImage.getWidth(), mediaImage.getHeight(), now)) {
+            // Static doorway: skip detection until motion or the next heartbeat
+            metrics.onFrameGated();
+            image.close();
+            TraceRecorder.GLOBAL.end("analyze (gated)", traceStart);
+            return;
         }
 
-        this.currentBestMatch = currentBestFrameMatch;
-
-        String finalMessage = "";
-        String countdownMessage = "";
-
-        if (isAwaitingLockConfirmation || isAwaitingUnlockConfirmation) {
-
-            String authorizedName = isAwaitingLockConfirmation ? authorizedLocker : stableMatchName;
+        FrameTask task = acquireTask();
+        long captureNanos = PipelineMetrics.sensorToNanoTime(sensorNanos, System.nanoTime(),
+                SystemClock.elapsedRealtimeNanos());
+        try {
+            long start = PipelineMetrics.now();
+            InputImageUtils.toYuvFrame(mediaImage, image.getImageInfo().getRotationDegrees(), yuvFrame);
+            metrics.record(PipelineMetrics.Stage.CONVERSION, start);
+
+            List<DetectedFace> faces = framePreparer.prepare(yuvFrame, task, mediaImage.getWidth(),
+                    mediaImage.getHeight(), embedStage.getQueueDepth() == 0, now);
+            if (sessionRecorder != null) recordFrame(task, faces);
+            adaptResolution(faces, now);
+        } catch (Exception e) {
+            Log.e(TAG, "Analyzer error", e);
+            task.reset();
+        } finally {
+            image.close();
+        }
+        task.captureNanos = captureNanos;
+        embedStage.submit(task);
+        TraceRecorder.GLOBAL.end("analyze", traceStart);
+    }
 
-            if (countdownDisplayRunnable == null) {
-                finalMessage = isAwaitingLockConfirmation ? "Confirm Lock Identity" : "Confirm Unlock Identity";
-                countdownMessage = "Is this you: " + authorizedName + "? (Awaiting confirmation)";
-            } else {
-                runOnUiThread(() -> overlayView.setFaces(graphics));
-                return;
+    // Once per process: HotLog is app-wide and outlives the activity
+    private void installHotLogSinks() {
+        if (HotLog.GLOBAL.getSinkCount() > 0) return;
+        RotatingLogFile file = new RotatingLogFile(new File(getFilesDir(), "logs"), "hot",
+                HOT_LOG_FILE_BYTES, HOT_LOG_FILES);
+        HotLog.Sink logcat = new HotLog.Sink() {
+            @Override
+            public void write(long timeMillis, int level, String tag, CharSequence message) {
+                Log.println(level, tag, message.toString());
             }
 
-        } else if (isAwaitingLockerRecognition) {
-
-            updateStabilityState(currentBestFrameMatch);
-
-            if (stableMatchCount >= STABILITY_FRAMES_NEEDED) {
-
-                boolean isLockerIdentityConfirmed = !stableMatchName.equals("Unknown") &&
-                        !stableMatchName.equals("Scanning...") &&
-                        stableMatchName.equals(currentBestMatch);
+            @Override
+            public void flush() {
+            }
+        };
+        HotLog.GLOBAL.setSinks(file, logcat);
+    }
 
-                if (isLockerIdentityConfirmed) {
-                    isAwaitingLockerRecognition = false;
-                    isAwaitingLockConfirmation = true;
-                    authorizedLocker = stableMatchName;
-                    stableMatchCount = 0;
+    private void startSessionRecording() {
+        String name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(getExternalFilesDir("sessions"), name + SessionRecorder.FILE_EXTENSION);
+        try {
+            sessionRecorder = SessionRecorder.create(file);
+            Log.d(TAG, "Recording session to " + file);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot record session", e);
+        }
+    }
 
-                    startConfirmationTimer(true);
-                    startVisualCountdown("Lock", authorizedLocker);
+    // Only frames that reach the door decision: the embedded faces, or an empty doorway
+    private void recordFrame(FrameTask task, List<DetectedFace> faces) {
+        if (task.faceCount > 0 && !task.embedded) return;
+        recordedFaces.clear();
+        for (int i = 0; i < task.faceCount; i++) {
+            if (task.faces[i].hasTensor) recordedFaces.add(faces.get(i));
+        }
+        sessionRecorder.recordFrame(Clock.SYSTEM.nowMillis(), yuvFrame, recordedFaces);
+    }
 
-                } else {
-                    isAwaitingLockerRecognition = false;
-                    finalMessage = "Recognition Failed";
-                    countdownMessage = "Lock initiation failed. Please try again.";
-                }
-            } else if (stableMatchCount > 0 && !currentBestFrameMatch.equals("Unknown") && !currentBestFrameMatch.equals("Scanning...")) {
-                int remainingFrames = STABILITY_FRAMES_NEEDED - stableMatchCount;
-                finalMessage = "Recognizing: " + currentBestMatch;
-                countdownMessage = String.format("Hold Steady to LOCK! (%d frames remaining)", remainingFrames);
-            } else {
-                finalMessage = "Awaiting Locker Recognition";
-                countdownMessage = "Please hold a faculty face steady for 5 seconds to initiate lock.";
-            }
+    private void recordEvent(String type) {
+        if (sessionRecorder != null) sessionRecorder.recordEvent(Clock.SYSTEM.nowMillis(), type, null);
+    }
 
-        } else if (isDoorLocked) {
+    private void adaptResolution(List<DetectedFace> faces, long now) {
+        float largest = 0;
+        for (DetectedFace face : faces) largest = Math.max(largest, face.height());
 
-            long timeSinceLock = System.currentTimeMillis() - lastLockTimestamp;
-            if (timeSinceLock < UNLOCK_COOLDOWN_MILLIS) {
-                long remainingSeconds = (UNLOCK_COOLDOWN_MILLIS - timeSinceLock) / 1000 + 1;
-                finalMessage = "System Locked";
-                countdownMessage = String.format("Unlock Cooldown Active: %d seconds remaining.", remainingSeconds);
+        int tier = resolutionPolicy.onFrame(largest, now);
+        if (tier >= 0) runOnUiThread(() -> bindAnalysis(tier));
+    }
 
-                updateUiOnThread(finalMessage, countdownMessage);
-                runOnUiThread(() -> overlayView.setFaces(graphics));
-                return;
+    // Inference stage: every face of the frame in one interpreter call
+    private void embedFrame(FrameTask task) {
+        boolean forwarded = false;
+        try {
+            if (task.batchCount > 0) {
+                long start = PipelineMetrics.now();
+                float[][] embeddings = faceNet.getEmbeddings(task.batch, task.batchCount);
+                metrics.record(PipelineMetrics.Stage.INFERENCE, start);
+                task.setEmbeddings(embeddings);
             }
+            // submit() recycles the task itself when the match queue is full
+            matchStage.submit(task);
+            forwarded = true;
+        } finally {
+            if (!forwarded) releaseTask(task);
+        }
+    }
 
-            updateStabilityState(currentBestFrameMatch);
-
-            if (stableMatchCount >= STABILITY_FRAMES_NEEDED) {
+    // Matching stage
+    private void matchFrame(FrameTask task) {
+        try {
+            long start = PipelineMetrics.now();
+            matchAndPublish(task);
+            metrics.record(PipelineMetrics.Stage.MATCHING, start);
+        } finally {
+            releaseTask(task);
+        }
 
-                boolean isUnlockIdentityConfirmed = !stableMatchName.equals("Unknown") &&
-                        !stableMatchName.equals("Scanning...") &&
-                        stableMatchName.equals(currentBestMatch);
+        // processed is counted after the handler returns, so this frame is not in it yet
+        if ((matchStage.getProcessedCount() + 1) % PIPELINE_STATS_INTERVAL == 0) {
+            Log.d("Pipeline", embedStage.toString());
+            Log.d("Pipeline", matchStage.toString());
+            Log.d("Pipeline", qualityGate.toString());
+            Log.d("Pipeline", metrics.toString());
+        }
+    }
 
-                if (isUnlockIdentityConfirmed) {
-                    isAwaitingUnlockConfirmation = true;
-                    stableMatchCount = 0;
+    private void matchAndPublish(FrameTask task) {
+        if (frameMatcher.process(task)) runOnUiThread(drainDecisions);
+    }
 
-                    startConfirmationTimer(false);
-                    startVisualCountdown("Unlock", stableMatchName);
+    // Whoever is at the door gets re-embedded next
+    private void prioritizeMigration(FaceMatcher.Result result) {
+        GalleryMigrator migrator = galleryMigrator;
+        if (migrator != null) migrator.prioritize(result.nearestName);
+    }
 
-                } else {
-                    finalMessage = "Access Denied";
-                    countdownMessage = "Recognition Failed. Please try again.";
-                    stableMatchCount = 0;
-                }
-            } else if (stableMatchCount > 0 && !currentBestFrameMatch.equals("Unknown") && !currentBestFrameMatch.equals("Scanning...")) {
-                int remainingFrames = STABILITY_FRAMES_NEEDED - stableMatchCount;
-                finalMessage = "Recognizing: " + currentBestMatch;
-                countdownMessage = String.format("Hold Steady for unlock! (%d frames remaining)", remainingFrames);
-            } else {
-                finalMessage = "Awaiting Recognition";
-                countdownMessage = "Scanning for faculty...";
+    // ML Kit by default; the TFLite backend shares FaceNet's runtime and can be benchmarked off-device
+    private DetectionScheduler createDetectionScheduler() {
+        DetectionRoi roi = DetectionRoi.wholeFrame(ROI_FULL_SCAN_INTERVAL);
+        if (USE_TFLITE_DETECTOR) {
+            try {
+                String modelPath = new File(getFilesDir(), BlazeFaceDetectorBackend.MODEL_ASSET).getAbsolutePath();
+                FaceDetectorBackend blazeFace = new BlazeFaceDetectorBackend(
+                        TfliteRuntime.loadModel(this, modelPath, BlazeFaceDetectorBackend.MODEL_ASSET));
+                // BlazeFace returns eyes with every box, so one instance serves both tiers
+                return new DetectionScheduler(blazeFace, blazeFace, roi, MIN_EMBED_INTERVAL_MILLIS);
+            } catch (Exception e) {
+                Log.e(TAG, "TFLite face detector unavailable, using ML Kit", e);
             }
-        } else {
-            finalMessage = "Access Granted: " + authorizedUnlocker;
-            countdownMessage = "Door UNLOCKED. Choose options below.";
         }
-
-        updateUiOnThread(finalMessage, countdownMessage);
-
-        overlayView.setImageSourceInfo(inputImage.getWidth(), inputImage.getHeight(), true);
-        runOnUiThread(() -> overlayView.setFaces(graphics));
+        return new DetectionScheduler(MlKitFaceDetectorBackend.tracking(), MlKitFaceDetectorBackend.landmarks(),
+                roi, MIN_EMBED_INTERVAL_MILLIS);
     }
 
-    private synchronized void updateStabilityState(String newMatch) {
-        if (!newMatch.equals(lastMatchName)) {
-            stableMatchCount = 0;
-            lastMatchName = newMatch;
-        }
-        if (newMatch.equals(currentBestMatch)) {
-            stableMatchCount++;
-        } else {
-            currentBestMatch = newMatch;
-            stableMatchCount = 1;
+    private FrameTask acquireTask() {
+        synchronized (freeTasks) {
+            FrameTask task = freeTasks.poll();
+            return task != null ? task : new FrameTask();
         }
+    }
 
-        if (stableMatchCount >= STABILITY_FRAMES_NEEDED) {
-            stableMatchName = currentBestMatch;
-        } else if (stableMatchCount == 0 || newMatch.equals("Scanning...")) {
-            stableMatchName = "Scanning...";
+    private void releaseTask(FrameTask task) {
+        synchronized (freeTasks) {
+            freeTasks.push(task);
         }
     }
 
+    // The decision state is shared with the button handlers and timers, so it is only touched on the main thread
+    private void applyFrameResult(String candidate, long captureNanos, long queuedNanos) {
+        metrics.record(PipelineMetrics.Stage.UI_DISPATCH, queuedNanos);
+        doorStateMachine.onFrame(candidate);
+        scheduleDoorTimer();
+        metrics.onFrameDecided(captureNanos);
+    }
+
+    // Most frames repeat the previous status, so only touch the views when something changed
     private void updateUiOnThread(final String status, final String countdown) {
         runOnUiThread(() -> {
-            statusTextView.setText(status);
-            countdownTextView.setText(countdown);
+            if (!TextUtils.equals(statusTextView.getText(), status)) statusTextView.setText(status);
+            if (!TextUtils.equals(countdownTextView.getText(), countdown)) countdownTextView.setText(countdown);
 
-            if (isAwaitingLockConfirmation || isAwaitingUnlockConfirmation) {
-                confirmYesButton.setVisibility(View.VISIBLE);
-                confirmNoButton.setVisibility(View.VISIBLE);
-            } else {
-                confirmYesButton.setVisibility(View.GONE);
-                confirmNoButton.setVisibility(View.GONE);
-            }
+            int confirmVisibility = doorStateMachine.isAwaitingConfirmation() ? View.VISIBLE : View.GONE;
+            if (confirmYesButton.getVisibility() != confirmVisibility) confirmYesButton.setVisibility(confirmVisibility);
+            if (confirmNoButton.getVisibility() != confirmVisibility) confirmNoButton.setVisibility(confirmVisibility);
         });
     }
 
-    private void normalizeEmbedding(float[] emb) {
-        float norm = 0;
-        for (float v : emb) norm += v * v;
-        norm = (float) Math.sqrt(norm);
-        if (norm > 0) {
-            for (int i = 0; i < emb.length; i++) emb[i] /= norm;
-        }
-    }
-
     private boolean loadEmbeddingsFromAssets() {
-        try {
-            InputStream is = getAssets().open("embeddings.json");
-            String json = readStreamToString(is);
-            is.close();
-
-            // Parse JSON as Map<String, List<List<Double>>> first
-            Map<String, List<List<Double>>> temp = new Gson().fromJson(
-                    json,
-                    new TypeToken<Map<String, List<List<Double>>>>() {}.getType()
-            );
+        try (Reader reader = new InputStreamReader(getAssets().open(FaceGallery.FILE_NAME), StandardCharsets.UTF_8)) {
+            FaceGallery gallery = FaceGallery.read(reader);
 
-            KNOWN_FACE_EMBEDDINGS.clear();
+            if (!gallery.isCompatibleWith(faceNet.getModelFingerprint())) {
+                Log.w(TAG, "Bundled embeddings were not built with the running model; matches may be unreliable.");
+            }
 
-            for (Map.Entry<String, List<List<Double>>> entry : temp.entrySet()) {
-                String name = entry.getKey();
-                List<List<Double>> embeddingsList = entry.getValue();
+            KNOWN_FACE_EMBEDDINGS.clear();
 
-                List<Double> firstEmb = embeddingsList.get(0);
-                float[] embArr = new float[firstEmb.size()];
-                for (int j = 0; j < firstEmb.size(); j++) {
-                    embArr[j] = firstEmb.get(j).floatValue();
-                }
-                KNOWN_FACE_EMBEDDINGS.put(name, embArr);
+            for (String name : gallery.getNames()) {
+                List<float[]> embeddingsList = gallery.get(name);
+                if (embeddingsList == null || embeddingsList.isEmpty()) continue;
+                KNOWN_FACE_EMBEDDINGS.put(name, embeddingsList.get(0));
             }
+            faceMatcher.setGallery(KNOWN_FACE_EMBEDDINGS);
 
             Log.i(TAG, "✅ Loaded embeddings from assets: " + KNOWN_FACE_EMBEDDINGS.size());
             return true;
@@ -829,57 +805,26 @@ public class MainActivity extends AppCompatActivity {
 
     private boolean loadEmbeddingsFromStorage() {
         try {
-            File embeddingsFile = new File(getExternalFilesDir("Pictures/FacultyPhotos"), "embeddings.json");
+            File facultyRoot = getExternalFilesDir("Pictures/FacultyPhotos");
+            File embeddingsFile = new File(facultyRoot, FaceGallery.FILE_NAME);
             if (!embeddingsFile.exists()) {
                 Log.d(TAG, "Embeddings file does not exist");
                 return false;
             }
 
-            String jsonStr = new String(Files.readAllBytes(embeddingsFile.toPath()), StandardCharsets.UTF_8);
-            JSONObject jsonObj = new JSONObject(jsonStr);
-
-            facultyEmbeddings.clear();
-            KNOWN_FACE_EMBEDDINGS.clear();
-
-            Iterator<String> keys = jsonObj.keys();
-            while (keys.hasNext()) {
-                String facultyName = keys.next();
-                JSONArray embeddingsArray = jsonObj.getJSONArray(facultyName);
-
-                if (embeddingsArray.length() == 0) continue;
-
-                // Store all embeddings in facultyEmbeddings
-                List<float[]> allEmbeddings = new ArrayList<>();
-                for (int i = 0; i < embeddingsArray.length(); i++) {
-                    JSONArray arr = embeddingsArray.getJSONArray(i);
-                    float[] emb = new float[arr.length()];
-                    for (int j = 0; j < arr.length(); j++) {
-                        emb[j] = (float) arr.getDouble(j);
-                    }
-                    allEmbeddings.add(emb);
-                }
-                facultyEmbeddings.put(facultyName, allEmbeddings);
-
-                // Compute the average embedding for KNOWN_FACE_EMBEDDINGS
-                int embSize = allEmbeddings.get(0).length;
-                float[] avgEmb = new float[embSize];
-                for (float[] emb : allEmbeddings) {
-                    for (int j = 0; j < embSize; j++) {
-                        avgEmb[j] += emb[j];
-                    }
-                }
-                for (int j = 0; j < embSize; j++) {
-                    avgEmb[j] /= allEmbeddings.size();
-                }
-
-                // Put only one key per person
-                KNOWN_FACE_EMBEDDINGS.put(facultyName, avgEmb);
-            }
+            FaceGallery gallery = FaceGallery.load(embeddingsFile);
+            applyGallery(gallery);
 
             Log.d(TAG, "✅ Embeddings loaded successfully from storage.");
             Log.d(TAG, "Faculties loaded: " + facultyEmbeddings.keySet().size());
             Log.d(TAG, "KNOWN_FACE_EMBEDDINGS loaded: " + KNOWN_FACE_EMBEDDINGS.size());
 
+            if (!gallery.isCompatibleWith(faceNet.getModelFingerprint())) {
+                // Keep serving the old vectors and swap each person over as they are re-embedded
+                Log.w(TAG, "Gallery model " + gallery.getModelFingerprint() + " differs from running model, re-embedding in background.");
+                startGalleryMigration(facultyRoot, gallery);
+            }
+
             return true;
 
         } catch (Exception e) {
@@ -888,19 +833,56 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private String readStreamToString(InputStream is) throws Exception {
-        StringBuilder sb = new StringBuilder();
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = is.read(buffer)) != -1) {
-            sb.append(new String(buffer, 0, length, StandardCharsets.UTF_8));
+    private void applyGallery(FaceGallery gallery) {
+        facultyEmbeddings.clear();
+        KNOWN_FACE_EMBEDDINGS.clear();
+
+        for (String facultyName : gallery.getNames()) {
+            List<float[]> allEmbeddings = gallery.get(facultyName);
+            if (allEmbeddings == null || allEmbeddings.isEmpty()) continue;
+
+            facultyEmbeddings.put(facultyName, allEmbeddings);
+            // Put only one key per person
+            KNOWN_FACE_EMBEDDINGS.put(facultyName, FaceGallery.centroid(allEmbeddings));
         }
-        return sb.toString();
+        faceMatcher.setGallery(KNOWN_FACE_EMBEDDINGS);
+    }
+
+    private void startGalleryMigration(File facultyRoot, FaceGallery oldGallery) {
+        if (galleryMigrator != null) galleryMigrator.cancel();
+
+        galleryMigrator = new GalleryMigrator(facultyRoot, faceNet, new GalleryMigrator.Listener() {
+            @Override
+            public void onIdentityMigrated(String name, List<float[]> embeddings) {
+                runOnUiThread(() -> {
+                    facultyEmbeddings.put(name, embeddings);
+                    KNOWN_FACE_EMBEDDINGS.put(name, FaceGallery.centroid(embeddings));
+                    faceMatcher.setGallery(KNOWN_FACE_EMBEDDINGS);
+                    Log.d(TAG, "Switched " + name + " to re-embedded gallery");
+                });
+            }
+
+            @Override
+            public void onIdentityDropped(String name) {
+                Log.w(TAG, name + " could not be re-embedded and must be enrolled again");
+            }
+
+            @Override
+            public void onMigrationComplete(FaceGallery gallery) {
+                runOnUiThread(() -> {
+                    applyGallery(gallery);
+                    galleryMigrator = null;
+                    Log.d(TAG, "Gallery migration complete.");
+                });
+            }
+        });
+        galleryMigrator.start(oldGallery);
     }
 
 
 
 
+
     private float computeDynamicThreshold(Map<String, float[]> embeddingsMap) {
         List<Float> intraDists = new ArrayList<>();
         List<Float> interDists = new ArrayList<>();
@@ -995,7 +977,7 @@ public class MainActivity extends AppCompatActivity {
         try {
             File embeddingsFile = new File(
                     getExternalFilesDir(Environment.DIRECTORY_PICTURES),
-                    "FacultyPhotos/embeddings.json"
+                    "FacultyPhotos/" + FaceGallery.FILE_NAME
             );
 
             Log.d(TAG, "Embeddings file exists: " + embeddingsFile.exists());
@@ -1003,31 +985,21 @@ public class MainActivity extends AppCompatActivity {
 
             if (!embeddingsFile.exists()) return;
 
-            FileInputStream fis = new FileInputStream(embeddingsFile);
-            String json = readStreamToString(fis);
-            fis.close();
-
-            Log.d(TAG, "JSON content snippet: " + json.substring(0, Math.min(json.length(), 200)) + "...");
+            FaceGallery gallery = FaceGallery.load(embeddingsFile);
+            Log.d(TAG, "Gallery model fingerprint: " + gallery.getModelFingerprint());
 
-            // Try parsing as Map<String, List<List<Double>>>
-            Map<String, List<List<Double>>> temp = new Gson().fromJson(
-                    json,
-                    new TypeToken<Map<String, List<List<Double>>>>(){}.getType()
-            );
-
-            if (temp == null || temp.isEmpty()) {
+            if (gallery.isEmpty()) {
                 Log.e(TAG, "Parsed JSON is null or empty!");
                 return;
             }
 
-            for (Map.Entry<String, List<List<Double>>> entry : temp.entrySet()) {
-                String name = entry.getKey();
-                List<List<Double>> embeddingsList = entry.getValue();
+            for (String name : gallery.getNames()) {
+                List<float[]> embeddingsList = gallery.get(name);
                 Log.d(TAG, "Person: " + name + " | # of embeddings: " + embeddingsList.size());
 
                 if (!embeddingsList.isEmpty()) {
-                    List<Double> firstEmb = embeddingsList.get(0);
-                    Log.d(TAG, "First embedding sample: " + firstEmb.subList(0, Math.min(firstEmb.size(), 10)));
+                    float[] firstEmb = embeddingsList.get(0);
+                    Log.d(TAG, "First embedding sample: " + Arrays.toString(Arrays.copyOf(firstEmb, Math.min(firstEmb.length, 10))));
                 }
             }
 
@@ -1040,10 +1012,22 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        stopConfirmationTimer();
-        stopVisualCountdown();
-        if (cameraExecutor != null) cameraExecutor.shutdown();
+        doorTimerHandler.removeCallbacks(doorTimerRunnable);
+        session.close();
+        if (imageAnalysis != null) imageAnalysis.clearAnalyzer();
+        // Close the detector on the camera thread, after any frame it is still analysing
+        if (cameraExecutor != null) {
+            if (detectionScheduler != null) cameraExecutor.execute(detectionScheduler::close);
+            cameraExecutor.shutdown();
+        }
+        embedStage.stop();
+        matchStage.stop();
+        if (galleryMigrator != null) galleryMigrator.cancel();
         if (faceNet != null) faceNet.close();
+        if (sessionRecorder != null) {
+            sessionRecorder.close();
+            Log.d(TAG, sessionRecorder.toString());
+        }
     }
 
     @Override
@@ -0,0 +1,101 @@
+package com.sd.facultyfacialrecognition;
+
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.face.FaceLandmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MlKitFaceDetectorBackend wraps an ML Kit FaceDetector. Camera regions are copied out of
+ * the YUV planes as NV21 with YuvCropper and detection blocks until ML Kit is done, so it
+ * behaves like any other backend on the calling thread.
+ */
+public class MlKitFaceDetectorBackend implements FaceDetectorBackend {
+
+    private final FaceDetector detector;
+    private final YuvCropper cropper = new YuvCropper();
+
+    public MlKitFaceDetectorBackend(FaceDetectorOptions options) {
+        detector = FaceDetection.getClient(options);
+    }
+
+    /** Fast, landmark-free, with tracking: the per-frame tier. */
+    public static MlKitFaceDetectorBackend tracking() {
+        return new MlKitFaceDetectorBackend(new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .enableTracking()
+                .build());
+    }
+
+    /** Accurate, with landmarks: for alignment. */
+    public static MlKitFaceDetectorBackend landmarks() {
+        return new MlKitFaceDetectorBackend(new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .build());
+    }
+
+    @Override
+    public List<DetectedFace> detect(YuvFrame frame, float left, float top, float right, float bottom) throws Exception {
+        if (!cropper.crop(frame, left, top, right, bottom, 0f)) return new ArrayList<>();
+
+        InputImage image = InputImage.fromByteArray(cropper.getNv21(),
+                cropper.getCropWidth(), cropper.getCropHeight(),
+                frame.rotationDegrees, InputImage.IMAGE_FORMAT_NV21);
+        return convert(Tasks.await(detector.process(image)), cropper.getOffsetX(), cropper.getOffsetY());
+    }
+
+    @Override
+    public List<DetectedFace> detect(int[] argb, int width, int height) throws Exception {
+        Bitmap bitmap = Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888);
+        try {
+            return convert(Tasks.await(detector.process(InputImage.fromBitmap(bitmap, 0))), 0, 0);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    @Override
+    public void close() {
+        detector.close();
+    }
+
+    private static List<DetectedFace> convert(List<Face> faces, int offsetX, int offsetY) {
+        List<DetectedFace> result = new ArrayList<>(faces.size());
+        for (Face face : faces) {
+            Rect box = face.getBoundingBox();
+            DetectedFace out = new DetectedFace().setBox(
+                    box.left + offsetX, box.top + offsetY, box.right + offsetX, box.bottom + offsetY);
+            out.trackingId = face.getTrackingId() != null ? face.getTrackingId() : DetectedFace.NO_TRACKING_ID;
+            out.eulerX = face.getHeadEulerAngleX();
+            out.eulerY = face.getHeadEulerAngleY();
+            out.eulerZ = face.getHeadEulerAngleZ();
+
+            PointF leftEye = position(face, FaceLandmark.LEFT_EYE);
+            PointF rightEye = position(face, FaceLandmark.RIGHT_EYE);
+            if (leftEye != null && rightEye != null) {
+                out.setEyes(leftEye.x + offsetX, leftEye.y + offsetY, rightEye.x + offsetX, rightEye.y + offsetY);
+            }
+            result.add(out);
+        }
+        return result;
+    }
+
+    private static PointF position(Face face, int landmarkType) {
+        FaceLandmark landmark = face.getLandmark(landmarkType);
+        return landmark != null ? landmark.getPosition() : null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MotionGate decides whether a camera frame is worth running the face detector on.
+ *
+ * Each frame's Y plane is reduced to a GRID_WIDTH x GRID_HEIGHT thumbnail by point sampling
+ * and compared with the previous thumbnail. While the scene is static the detector only
+ * runs at the heartbeat interval; any motion, or a face seen recently, brings it back to
+ * every frame for at least activeHoldMillis.
+ *
+ * The mean difference is compared after removing the global brightness change, so auto
+ * exposure steps and lights switching on do not count as motion. Not thread-safe: call
+ * from the analysis thread only.
+ */
+public class MotionGate {
+
+    public static final int GRID_WIDTH = 32;
+    public static final int GRID_HEIGHT = 24;
+
+    private final float motionThreshold;
+    private final long heartbeatMillis;
+    private final long activeHoldMillis;
+
+    private int[] previous = new int[GRID_WIDTH * GRID_HEIGHT];
+    private int[] current = new int[GRID_WIDTH * GRID_HEIGHT];
+    private boolean hasPrevious = false;
+
+    private long lastActiveMillis = Long.MIN_VALUE / 2;
+    private long lastDetectMillis = Long.MIN_VALUE / 2;
+    private float lastDifference;
+    private long framesSeen;
+    private long framesGated;
+
+    /**
+     * @param motionThreshold  mean absolute luma difference (0-255) that counts as motion
+     * @param heartbeatMillis  how often the detector still runs while the scene is static
+     * @param activeHoldMillis how long to keep detecting every frame after motion or a face
+     */
+    public MotionGate(float motionThreshold, long heartbeatMillis, long activeHoldMillis) {
+        this.motionThreshold = motionThreshold;
+        this.heartbeatMillis = heartbeatMillis;
+        this.activeHoldMillis = activeHoldMillis;
+    }
+
+    /**
+     * Samples the frame and returns true if the detector should run on it. The plane's
+     * position is left unchanged.
+     */
+    public boolean shouldProcess(ByteBuffer yPlane, int rowStride, int width, int height, long nowMillis) {
+        framesSeen++;
+        sample(yPlane, rowStride, width, height);
+
+        boolean motion = !hasPrevious || difference() > motionThreshold;
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+        hasPrevious = true;
+
+        if (motion) lastActiveMillis = nowMillis;
+
+        boolean active = nowMillis - lastActiveMillis < activeHoldMillis;
+        if (active || nowMillis - lastDetectMillis >= heartbeatMillis) {
+            lastDetectMillis = nowMillis;
+            return true;
+        }
+        framesGated++;
+        return false;
+    }
+
+    /**
+     * Keeps the gate open while someone stands still in front of the camera.
+     */
+    public void onFaceSeen(long nowMillis) {
+        lastActiveMillis = nowMillis;
+    }
+
+    /**
+     * Forgets the reference frame, e.g. after the camera was rebound.
+     */
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    public float getLastDifference() {
+        return lastDifference;
+    }
+
+    public long getFramesSeen() {
+        return framesSeen;
+    }
+
+    public long getFramesGated() {
+        return framesGated;
+    }
+
+    private void sample(ByteBuffer yPlane, int rowStride, int width, int height) {
+        int base = yPlane.position();
+        for (int gy = 0; gy < GRID_HEIGHT; gy++) {
+            int row = base + ((2 * gy + 1) * height / (2 * GRID_HEIGHT)) * rowStride;
+            for (int gx = 0; gx < GRID_WIDTH; gx++) {
+                int col = (2 * gx + 1) * width / (2 * GRID_WIDTH);
+                current[gy * GRID_WIDTH + gx] = yPlane.get(row + col) & 0xFF;
+            }
+        }
+    }
+
+    private float difference() {
+        int n = current.length;
+        long sumDelta = 0;
+        for (int i = 0; i < n; i++) sumDelta += current[i] - previous[i];
+        float meanDelta = sumDelta / (float) n;
+
+        float sumAbs = 0;
+        for (int i = 0; i < n; i++) sumAbs += Math.abs(current[i] - previous[i] - meanDelta);
+        lastDifference = sumAbs / n;
+        return lastDifference;
+    }
+}
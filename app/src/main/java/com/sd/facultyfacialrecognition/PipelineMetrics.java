@@ -0,0 +1,205 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PipelineMetrics is the measurement surface of the frame pipeline: one LatencyHistogram per
+ * stage, timed with System.nanoTime(), and the frame counters that explain where frames go.
+ *
+ * Timing a stage is one call around it, with no allocation:
+ *
+ *     long start = PipelineMetrics.now();
+ *     ...
+ *     start = metrics.record(PipelineMetrics.Stage.DETECTION, start);
+ *
+ * END_TO_END runs from the sensor timestamp of the frame (ImageInfo.getTimestamp(), see
+ * sensorToNanoTime()) to the door decision. CameraX does not report the frames its
+ * KEEP_ONLY_LATEST strategy replaced, so onCameraFrame() estimates them from gaps in the
+ * sensor timestamps.
+ *
+ * Given a TraceRecorder, every timed stage is also recorded there as a span, so the same
+ * calls give the per-frame timeline.
+ *
+ * Every method is thread-safe except onCameraFrame(), which belongs to the camera thread.
+ */
+public class PipelineMetrics {
+
+    public enum Stage {
+        // Camera thread
+        CONVERSION, DETECTION, ALIGNMENT, PREPROCESSING,
+        // Inference stage
+        INFERENCE,
+        // Matching stage
+        MATCHING,
+        // runOnUiThread until the main thread ran the decision
+        UI_DISPATCH,
+        // Sensor capture to door decision
+        END_TO_END
+    }
+
+    // A frame older than this at the analyzer was stamped by the other clock
+    private static final long MAX_SENSOR_AGE_NANOS = 1_000_000_000L;
+    // Capture-to-decision times beyond this are a clock mix-up, not a slow frame
+    private static final long MAX_END_TO_END_NANOS = 10_000_000_000L;
+    // A gap counts as dropped frames once it is this many frame periods long
+    private static final float DROP_GAP_PERIODS = 1.5f;
+
+    private static final String[] SPAN_NAMES = new String[Stage.values().length];
+
+    static {
+        for (Stage stage : Stage.values()) SPAN_NAMES[stage.ordinal()] = stage.name().toLowerCase(Locale.US);
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final TraceRecorder trace;
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesGated = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesDecided = new AtomicLong();
+    private final AtomicLong endToEndOutOfRange = new AtomicLong();
+
+    private volatile boolean cameraRestarted = false;
+    // Camera thread only
+    private long lastSensorNanos = Long.MIN_VALUE;
+    private float framePeriodNanos = 0;
+
+    public PipelineMetrics() {
+        this(null);
+    }
+
+    public PipelineMetrics(TraceRecorder trace) {
+        this.trace = trace;
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /** Records the time since start for the stage and returns now, to start the next stage. */
+    public long record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].recordNanos(now - startNanos);
+        if (trace != null) {
+            // UI dispatch starts on the matching thread and ends on the main thread
+            if (stage == Stage.UI_DISPATCH) {
+                trace.asyncSpan(SPAN_NAMES[stage.ordinal()], startNanos, now);
+            } else {
+                trace.span(SPAN_NAMES[stage.ordinal()], startNanos, now);
+            }
+        }
+        return now;
+    }
+
+    public void recordNanos(Stage stage, long nanos) {
+        histograms[stage.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * Called for every frame the analyzer receives, gated or not, with its sensor timestamp.
+     * The frame period follows the shortest recent gaps, falling fast and rising slowly, so
+     * an auto-exposure frame rate drop is not counted as a burst of drops for long.
+     */
+    public void onCameraFrame(long sensorNanos) {
+        framesReceived.incrementAndGet();
+        if (cameraRestarted) {
+            cameraRestarted = false;
+            lastSensorNanos = Long.MIN_VALUE;
+            framePeriodNanos = 0;
+        }
+        long previous = lastSensorNanos;
+        lastSensorNanos = sensorNanos;
+        if (previous == Long.MIN_VALUE || sensorNanos <= previous) return;
+
+        float gap = sensorNanos - previous;
+        if (framePeriodNanos == 0 || gap < framePeriodNanos) {
+            framePeriodNanos = framePeriodNanos == 0 ? gap : (framePeriodNanos + gap) / 2;
+            return;
+        }
+        if (gap >= DROP_GAP_PERIODS * framePeriodNanos) {
+            framesDropped.addAndGet(Math.max(1, Math.round(gap / framePeriodNanos) - 1));
+        }
+        framePeriodNanos += (gap - framePeriodNanos) / 64;
+    }
+
+    /** The gap before the next frame is a restart, e.g. the analysis use case was rebound. */
+    public void onCameraRestarted() {
+        cameraRestarted = true;
+    }
+
+    public void onFrameGated() {
+        framesGated.incrementAndGet();
+    }
+
+    /**
+     * Converts a sensor timestamp to the System.nanoTime() timebase. Camera HALs stamp frames
+     * with either CLOCK_BOOTTIME (SystemClock.elapsedRealtimeNanos()) or CLOCK_MONOTONIC
+     * (System.nanoTime()); a frame reaching the analyzer is milliseconds old in the right one.
+     * Returns 0 if the timestamp fits neither.
+     */
+    public static long sensorToNanoTime(long sensorNanos, long nanoTimeNow, long bootTimeNow) {
+        long bootAge = bootTimeNow - sensorNanos;
+        if (bootAge >= 0 && bootAge <= MAX_SENSOR_AGE_NANOS) return nanoTimeNow - bootAge;
+        long monotonicAge = nanoTimeNow - sensorNanos;
+        if (monotonicAge >= 0 && monotonicAge <= MAX_SENSOR_AGE_NANOS) return sensorNanos;
+        return 0;
+    }
+
+    /** A frame reached the door decision; captureNanos is from sensorToNanoTime(), 0 if unknown. */
+    public void onFrameDecided(long captureNanos) {
+        framesDecided.incrementAndGet();
+        long latency = System.nanoTime() - captureNanos;
+        if (captureNanos == 0 || latency < 0 || latency > MAX_END_TO_END_NANOS) {
+            endToEndOutOfRange.incrementAndGet();
+            return;
+        }
+        histograms[Stage.END_TO_END.ordinal()].recordNanos(latency);
+        if (trace != null) trace.asyncSpan(SPAN_NAMES[Stage.END_TO_END.ordinal()], captureNanos, captureNanos + latency);
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getFramesGated() {
+        return framesGated.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesDecided() {
+        return framesDecided.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+        framesReceived.set(0);
+        framesGated.set(0);
+        framesDropped.set(0);
+        framesDecided.set(0);
+        endToEndOutOfRange.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                "frames: received=%d gated=%d camera-dropped~%d decided=%d",
+                framesReceived.get(), framesGated.get(), framesDropped.get(), framesDecided.get()));
+        if (endToEndOutOfRange.get() > 0) {
+            builder.append(" (").append(endToEndOutOfRange.get()).append(" without end-to-end time)");
+        }
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            if (histogram.getCount() == 0) continue;
+            builder.append('\n').append(stage.name().toLowerCase(Locale.US)).append(": ").append(histogram);
+        }
+        return builder.toString();
+    }
+}
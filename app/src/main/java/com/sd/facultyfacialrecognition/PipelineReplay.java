@@ -0,0 +1,189 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * PipelineReplay feeds a SessionRecorder recording back through the recognition pipeline
+ * with no camera attached. For every recorded frame, it samples the aligned face tensors
+ * from the crop using the recorded boxes and eyes (FaceAlignment, FaceTensorSampler). It
+ * embeds them as one batch, matches them against a gallery, and hands the door candidate
+ * to DoorStateMachine through a ReplayDriver. Recorded user events replay at their times.
+ *
+ * The replayed decisions can be compared with the ones recorded on the device to
+ * reproduce field problems, and the per-stage times make a recording a repeatable
+ * benchmark. The matching stage (FrameMatcher) is the device's own. Pure Java; the embedder is FaceNet on a device or any stand-in.
+ */
+public class PipelineReplay implements SessionReader.Listener {
+
+    private final FaceEmbedder embedder;
+    private final FaceMatcher matcher = new FaceMatcher();
+    private final FrameMatcher frameMatcher;
+    private final ReplayDriver driver;
+    private final FrameMatcher.DecisionListener decisionListener = this::feedDecision;
+    private long frameMillis;
+
+    private final YuvFrame yuvFrame = new YuvFrame();
+    private final FaceAlignment alignment = new FaceAlignment();
+    private final FrameTask task = new FrameTask();
+    private final List<ReplayDriver.DecisionRecord> recordedDecisions = new ArrayList<>();
+    private long lastTimeMillis = Long.MIN_VALUE;
+
+    private long frames = 0;
+    private long facesEmbedded = 0;
+    private long samplingNanos = 0;
+    private long embeddingNanos = 0;
+    private long matchingNanos = 0;
+    private long decisionNanos = 0;
+
+    public PipelineReplay(FaceEmbedder embedder, Map<String, float[]> gallery, float threshold, ReplayDriver driver) {
+        this.embedder = embedder;
+        matcher.setGallery(gallery);
+        frameMatcher = new FrameMatcher(matcher, threshold, null, null);
+        this.driver = driver;
+    }
+
+    /** Centroid per enrolled name, as MainActivity builds its match table. */
+    public static Map<String, float[]> centroids(FaceGallery faceGallery) {
+        Map<String, float[]> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<float[]>> entry : faceGallery.getEmbeddings().entrySet()) {
+            float[] centroid = FaceGallery.centroid(entry.getValue());
+            if (centroid != null) result.put(entry.getKey(), centroid);
+        }
+        return result;
+    }
+
+    public void run(File recording) throws IOException {
+        SessionReader.read(recording, this);
+        finish();
+    }
+
+    public void run(InputStream recording) throws IOException {
+        SessionReader.read(recording, this);
+        finish();
+    }
+
+    // Fires the timers due by the last record, as the device's handler would have
+    private void finish() {
+        if (lastTimeMillis != Long.MIN_VALUE) driver.advanceTo(lastTimeMillis);
+    }
+
+    @Override
+    public void onFrame(SessionReader.Frame frame) {
+        frames++;
+        lastTimeMillis = Math.max(lastTimeMillis, frame.timeMillis);
+
+        long start = System.nanoTime();
+        task.reset();
+        if (frame.hasCrop()) {
+            frame.toYuvFrame(yuvFrame);
+            int count = Math.min(frame.faces.size(), FrameTask.MAX_FACES);
+            for (int i = 0; i < count; i++) {
+                // Recorded coordinates are frame-upright; the crop starts at the offset
+                DetectedFace face = frame.faces.get(i);
+                float dx = -frame.offsetX, dy = -frame.offsetY;
+                alignment.setFromDetection(face.left + dx, face.top + dy, face.right + dx, face.bottom + dy,
+                        face.leftEyeX + dx, face.leftEyeY + dy, face.rightEyeX + dx, face.rightEyeY + dy);
+
+                FrameTask.FaceSlot slot = task.faces[i];
+                slot.trackingId = face.trackingId;
+                slot.boxLeft = (int) face.left;
+                slot.boxTop = (int) face.top;
+                slot.boxRight = (int) face.right;
+                slot.boxBottom = (int) face.bottom;
+                slot.tensorBuffer.rewind();
+                FaceTensorSampler.sample(yuvFrame, alignment, slot.tensorBuffer);
+                slot.hasTensor = true;
+                task.batch[task.batchCount++] = slot.tensor;
+            }
+            task.faceCount = count;
+            task.embedded = task.batchCount > 0;
+        }
+        long sampled = System.nanoTime();
+
+        if (task.batchCount > 0) task.setEmbeddings(embedder.getEmbeddings(task.batch, task.batchCount));
+        long embedded = System.nanoTime();
+
+        frameMatcher.process(task);
+        long matched = System.nanoTime();
+
+        frameMillis = frame.timeMillis;
+        frameMatcher.drainDecisions(decisionListener);
+        long decided = System.nanoTime();
+
+        facesEmbedded += task.batchCount;
+        samplingNanos += sampled - start;
+        embeddingNanos += embedded - sampled;
+        matchingNanos += matched - embedded;
+        decisionNanos += decided - matched;
+    }
+
+    @Override
+    public void onEvent(ReplayDriver.Event event) {
+        lastTimeMillis = Math.max(lastTimeMillis, event.timeMillis);
+        driver.feed(event);
+    }
+
+    @Override
+    public void onDecision(ReplayDriver.DecisionRecord decision) {
+        recordedDecisions.add(decision);
+    }
+
+    private void feedDecision(String candidate, long captureNanos, long queuedNanos) {
+        driver.feedFrame(frameMillis, candidate);
+    }
+
+    public ReplayDriver getDriver() {
+        return driver;
+    }
+
+    /** Decisions the device made during the recording. */
+    public List<ReplayDriver.DecisionRecord> getRecordedDecisions() {
+        return recordedDecisions;
+    }
+
+    /** Decisions this replay made. */
+    public List<ReplayDriver.DecisionRecord> getReplayedDecisions() {
+        return driver.getDecisions();
+    }
+
+    /**
+     * Whether the replay made the same decisions, for the same faculty, in the same order as
+     * the device. Times are not compared; they shift by the device's pipeline latency.
+     */
+    public boolean matchesRecording() {
+        List<ReplayDriver.DecisionRecord> replayed = getReplayedDecisions();
+        if (replayed.size() != recordedDecisions.size()) return false;
+        for (int i = 0; i < replayed.size(); i++) {
+            ReplayDriver.DecisionRecord a = replayed.get(i);
+            ReplayDriver.DecisionRecord b = recordedDecisions.get(i);
+            if (a.decision != b.decision || !String.valueOf(a.facultyName).equals(String.valueOf(b.facultyName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getFacesEmbedded() {
+        return facesEmbedded;
+    }
+
+    @Override
+    public String toString() {
+        double perFrame = frames > 0 ? 1e6 * frames : 1;
+        return String.format(Locale.US,
+                "replay: %d frames, %d faces; per frame sampling %.2f ms, embedding %.2f ms, matching %.3f ms, decision %.4f ms",
+                frames, facesEmbedded, samplingNanos / perFrame, embeddingNanos / perFrame,
+                matchingNanos / perFrame, decisionNanos / perFrame);
+    }
+}
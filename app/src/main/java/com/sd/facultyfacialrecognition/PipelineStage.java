@@ -0,0 +1,219 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PipelineStage is one step of the frame pipeline: a worker thread fed by a bounded
+ * SpscQueue. Exactly one upstream thread may call submit().
+ *
+ * Each stage has its own drop policy and keeps its own queue-depth and latency counters,
+ * so a slow stage shows up as drops and wait time on its own queue instead of stalling
+ * the camera.
+ *
+ * A handler that throws is counted and logged with its stack trace, at most once per
+ * ERROR_LOG_INTERVAL_MS per stage; the handler itself must return its item to the pool.
+ */
+public class PipelineStage<I extends PipelineStage.Item> {
+
+    public enum DropPolicy {
+        // A full queue rejects the incoming item
+        DROP_NEWEST,
+        // The worker skips to the newest queued item and drops the older ones
+        KEEP_LATEST
+    }
+
+    /**
+     * Work items carry the time they were queued so the stage can report wait time.
+     */
+    public interface Item {
+        void setEnqueuedNanos(long nanos);
+
+        long getEnqueuedNanos();
+    }
+
+    public interface Handler<I> {
+        void process(I item) throws Exception;
+    }
+
+    /**
+     * Receives items the stage dropped, so pooled resources can be returned.
+     */
+    public interface Recycler<I> {
+        void recycle(I item);
+    }
+
+    private static final HotLog.Category LOG = HotLog.GLOBAL.category("Pipeline", HotLog.WARN, 1);
+    private static final long ERROR_LOG_INTERVAL_MS = 5000;
+
+    private final String name;
+    private final SpscQueue<I> queue;
+    private final DropPolicy dropPolicy;
+    private final Handler<I> handler;
+    private final Recycler<I> recycler;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalProcessNanos = new AtomicLong();
+    private final AtomicLong maxProcessNanos = new AtomicLong();
+    // Only the worker touches these
+    private long lastErrorLogMillis = Long.MIN_VALUE;
+    private long errorsSinceLog;
+
+    public PipelineStage(String name, int capacity, DropPolicy dropPolicy,
+                         Handler<I> handler, Recycler<I> recycler) {
+        this.name = name;
+        this.queue = new SpscQueue<>(capacity);
+        this.dropPolicy = dropPolicy;
+        this.handler = handler;
+        this.recycler = recycler;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::runLoop, "pipeline-" + name);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker after its current item; the worker recycles anything still queued
+     * as it exits.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = worker;
+            worker = null;
+        }
+        if (thread == null) return;
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The queue has one consumer: only drain here once the worker is gone, for items
+        // submitted while it was exiting
+        if (!thread.isAlive()) drain();
+    }
+
+    /**
+     * Queues an item for this stage. Returns false if the drop policy rejected it, in which
+     * case it has already been recycled.
+     */
+    public boolean submit(I item) {
+        submitted.incrementAndGet();
+        item.setEnqueuedNanos(System.nanoTime());
+
+        if (!running || !queue.offer(item)) {
+            dropped.incrementAndGet();
+            recycler.recycle(item);
+            return false;
+        }
+
+        long depth = queue.size();
+        if (depth > maxDepth.get()) maxDepth.set(depth);
+
+        Thread thread = worker;
+        if (thread != null) LockSupport.unpark(thread);
+        return true;
+    }
+
+    private void runLoop() {
+        while (running) {
+            I item = queue.poll();
+            if (item == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            if (dropPolicy == DropPolicy.KEEP_LATEST) {
+                I newer;
+                while ((newer = queue.poll()) != null) {
+                    dropped.incrementAndGet();
+                    recycler.recycle(item);
+                    item = newer;
+                }
+            }
+
+            long start = System.nanoTime();
+            totalWaitNanos.addAndGet(start - item.getEnqueuedNanos());
+            try {
+                handler.process(item);
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                logError(e);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            totalProcessNanos.addAndGet(elapsed);
+            if (elapsed > maxProcessNanos.get()) maxProcessNanos.set(elapsed);
+            processed.incrementAndGet();
+        }
+        drain();
+    }
+
+    private void drain() {
+        I item;
+        while ((item = queue.poll()) != null) recycler.recycle(item);
+    }
+
+    // Off the normal path: formatting the trace only costs when a handler has failed
+    private void logError(Exception e) {
+        errorsSinceLog++;
+        long now = System.currentTimeMillis();
+        if (lastErrorLogMillis != Long.MIN_VALUE && now - lastErrorLogMillis < ERROR_LOG_INTERVAL_MS) return;
+
+        StringWriter trace = new StringWriter();
+        e.printStackTrace(new PrintWriter(trace));
+        LOG.event(HotLog.ERROR, "handler failed").put("stage", name)
+                .put("errors", errorsSinceLog).put("exception", trace.toString()).commit();
+        lastErrorLogMillis = now;
+        errorsSinceLog = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public String toString() {
+        long done = Math.max(1, processed.get());
+        return String.format(Locale.US,
+                "%s: depth=%d/%d (max %d) in=%d done=%d dropped=%d errors=%d wait=%.1fms proc=%.1fms (max %.1fms)",
+                name, queue.size(), queue.capacity(), maxDepth.get(),
+                submitted.get(), processed.get(), dropped.get(), errors.get(),
+                totalWaitNanos.get() / 1e6 / done,
+                totalProcessNanos.get() / 1e6 / done,
+                maxProcessNanos.get() / 1e6);
+    }
+}
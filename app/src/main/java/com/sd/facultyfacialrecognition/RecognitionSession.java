@@ -0,0 +1,113 @@
+package com.sd.facultyfacialrecognition;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+/**
+ * RecognitionSession is the lifecycle the camera is bound to instead of MainActivity's.
+ *
+ * Between open() and close() it is resumed while any of the session's screens (the
+ * recognition, dashboard and thank-you screens) is started, so the camera, detector and
+ * FaceNet stay warm while one of the others is shown on top and "Scan again" starts
+ * recognising immediately. When none is started, e.g. after Home, it drops to created
+ * and CameraX closes the camera; the use cases stay bound and reopen on return.
+ * Main thread only.
+ */
+public class RecognitionSession implements LifecycleOwner {
+
+    private final LifecycleRegistry lifecycle = new LifecycleRegistry(this);
+    private Application application;
+    private Class<?>[] screens = new Class<?>[0];
+    private int startedScreens;
+
+    // Moving from one screen to another starts the next before the previous one stops,
+    // so the count only reaches zero when the app leaves the foreground
+    private final Application.ActivityLifecycleCallbacks callbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+            if (!isScreen(activity)) return;
+            startedScreens++;
+            update();
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+            if (!isScreen(activity)) return;
+            startedScreens = Math.max(0, startedScreens - 1);
+            update();
+        }
+
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) {
+        }
+    };
+
+    /**
+     * Opens the session from the onCreate() of one of the screens; it resumes once that
+     * screen starts.
+     */
+    public void open(Application application, Class<?>... screens) {
+        this.application = application;
+        this.screens = screens.clone();
+        application.registerActivityLifecycleCallbacks(callbacks);
+        lifecycle.setCurrentState(Lifecycle.State.CREATED);
+    }
+
+    /** Unbinds everything bound to this session; it cannot be reopened. */
+    public void close() {
+        if (application != null) {
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+            application = null;
+        }
+        // The registry only moves to DESTROYED from CREATED or above
+        if (lifecycle.getCurrentState().isAtLeast(Lifecycle.State.CREATED)) {
+            lifecycle.setCurrentState(Lifecycle.State.DESTROYED);
+        }
+    }
+
+    /** Opened and not yet closed, whether or not the app is in the foreground. */
+    public boolean isOpen() {
+        return lifecycle.getCurrentState().isAtLeast(Lifecycle.State.CREATED);
+    }
+
+    @NonNull
+    @Override
+    public Lifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    private void update() {
+        if (!isOpen()) return;
+        lifecycle.setCurrentState(startedScreens > 0 ? Lifecycle.State.RESUMED : Lifecycle.State.CREATED);
+    }
+
+    private boolean isScreen(Activity activity) {
+        for (Class<?> screen : screens) {
+            if (screen.isInstance(activity)) return true;
+        }
+        return false;
+    }
+}
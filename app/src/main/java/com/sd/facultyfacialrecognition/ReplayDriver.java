@@ -0,0 +1,210 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReplayDriver runs a recorded event stream through a DoorStateMachine on a simulated
+ * clock, as fast as the machine can take it (millions of frames per second on a laptop).
+ * Timers fire at their own due time between events, exactly as the activity's handler
+ * would fire them, so decision latency in a replay matches the device.
+ *
+ * Streams are text, one event per line: a timestamp in milliseconds, the event type and,
+ * for frames, the door candidate, e.g. "1200 frame Juan Dela Cruz". Types are frame, yes,
+ * no, lock, end, back and reset; blank lines and lines starting with # are skipped.
+ */
+public class ReplayDriver implements DoorStateMachine.Listener {
+
+    public static final String FRAME = "frame";
+    public static final String YES = "yes";
+    public static final String NO = "no";
+    public static final String LOCK = "lock";
+    public static final String END = "end";
+    public static final String BACK = "back";
+    public static final String RESET = "reset";
+
+    public static class Event {
+        public final long timeMillis;
+        public final String type;
+        public final String candidate;
+
+        public Event(long timeMillis, String type, String candidate) {
+            this.timeMillis = timeMillis;
+            this.type = type;
+            this.candidate = candidate;
+        }
+
+        public static Event frame(long timeMillis, String candidate) {
+            return new Event(timeMillis, FRAME, candidate);
+        }
+
+        @Override
+        public String toString() {
+            return candidate != null ? timeMillis + " " + type + " " + candidate : timeMillis + " " + type;
+        }
+    }
+
+    public static class DecisionRecord {
+        public final DoorStateMachine.Decision decision;
+        public final String facultyName;
+        public final long timeMillis;
+
+        DecisionRecord(DoorStateMachine.Decision decision, String facultyName, long timeMillis) {
+            this.decision = decision;
+            this.facultyName = facultyName;
+            this.timeMillis = timeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return timeMillis + " " + decision + " " + facultyName;
+        }
+    }
+
+    private long nowMillis = 0;
+    private final DoorStateMachine machine;
+    private final List<DecisionRecord> decisions = new ArrayList<>();
+    private long eventCount = 0;
+    private long uiChangeCount = 0;
+    private String status = "";
+    private String countdown = "";
+
+    public ReplayDriver(int stabilityFrames, long cooldownMillis, long confirmationTimeoutMillis, int countdownSeconds) {
+        machine = new DoorStateMachine(() -> nowMillis, stabilityFrames, cooldownMillis,
+                confirmationTimeoutMillis, countdownSeconds);
+        machine.setListener(this);
+    }
+
+    public static List<Event> parse(Reader reader) throws IOException {
+        List<Event> events = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] parts = line.split(" ", 3);
+            if (parts.length < 2) throw new IOException("Line " + lineNumber + ": expected '<millis> <type>'");
+            try {
+                events.add(new Event(Long.parseLong(parts[0]), parts[1], parts.length == 3 ? parts[2] : null));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": bad timestamp '" + parts[0] + "'");
+            }
+        }
+        return events;
+    }
+
+    /** Runs the events in order, then any timers due up to endMillis. */
+    public void run(List<Event> events, long endMillis) {
+        for (Event event : events) feed(event);
+        advanceTo(endMillis);
+    }
+
+    /**
+     * Runs one event, after the timers due before it. Events slightly out of order (recorded
+     * from different threads) are applied at the latest time seen so far.
+     */
+    public void feed(Event event) {
+        advanceTo(event.timeMillis);
+        apply(event);
+        eventCount++;
+    }
+
+    /** Runs one frame without allocating an Event. */
+    public void feedFrame(long timeMillis, String candidate) {
+        advanceTo(timeMillis);
+        machine.onFrame(candidate);
+        eventCount++;
+    }
+
+    public void run(List<Event> events) {
+        run(events, events.isEmpty() ? nowMillis : events.get(events.size() - 1).timeMillis);
+    }
+
+    /** Fires every timer due up to timeMillis at its own time, then moves the clock there. */
+    public void advanceTo(long timeMillis) {
+        long next;
+        while ((next = machine.nextTimerMillis()) <= timeMillis) {
+            nowMillis = Math.max(nowMillis, next);
+            machine.tick();
+        }
+        nowMillis = Math.max(nowMillis, timeMillis);
+    }
+
+    private void apply(Event event) {
+        switch (event.type) {
+            case FRAME:
+                machine.onFrame(event.candidate != null ? event.candidate : DoorStateMachine.SCANNING);
+                break;
+            case YES:
+                machine.confirmYes();
+                break;
+            case NO:
+                machine.confirmNo();
+                break;
+            case LOCK:
+                machine.requestLock();
+                break;
+            case END:
+                machine.endClass();
+                break;
+            case BACK:
+                machine.backInClass();
+                break;
+            case RESET:
+                machine.reset();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + event.type);
+        }
+    }
+
+    @Override
+    public void onDecision(DoorStateMachine.Decision decision, String facultyName, long timeMillis) {
+        decisions.add(new DecisionRecord(decision, facultyName, timeMillis));
+    }
+
+    @Override
+    public void onUiState(String status, String countdown, boolean awaitingConfirmation) {
+        this.status = status;
+        this.countdown = countdown;
+        uiChangeCount++;
+    }
+
+    public DoorStateMachine getMachine() {
+        return machine;
+    }
+
+    public List<DecisionRecord> getDecisions() {
+        return decisions;
+    }
+
+    /** The first decision of the given kind, or null. */
+    public DecisionRecord first(DoorStateMachine.Decision decision) {
+        for (DecisionRecord record : decisions) {
+            if (record.decision == decision) return record;
+        }
+        return null;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    public long getUiChangeCount() {
+        return uiChangeCount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getCountdown() {
+        return countdown;
+    }
+}
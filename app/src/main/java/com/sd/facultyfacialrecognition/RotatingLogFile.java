@@ -0,0 +1,99 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * RotatingLogFile is a HotLog sink that appends lines to name.log in a directory. When the
+ * file passes maxBytes it becomes name.log.1, the older ones shift up, and any beyond
+ * name.log.maxFiles is deleted, so the logs never take more than about
+ * maxBytes * (maxFiles + 1).
+ *
+ * Only the HotLog writer thread calls it. An I/O error disables the sink rather than
+ * throwing into the writer; getError() reports it.
+ */
+public class RotatingLogFile implements HotLog.Sink {
+
+    private final File dir;
+    private final String name;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+    private final Date date = new Date();
+    private final StringBuilder line = new StringBuilder(256);
+
+    private Writer out;
+    private long bytes;
+    private IOException error;
+
+    public RotatingLogFile(File dir, String name, long maxBytes, int maxFiles) {
+        this.dir = dir;
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    @Override
+    public void write(long timeMillis, int level, String tag, CharSequence message) {
+        if (error != null) return;
+        date.setTime(timeMillis);
+        line.setLength(0);
+        line.append(timeFormat.format(date)).append(' ').append(HotLog.levelLetter(level)).append('/')
+                .append(tag).append(": ").append(message).append('\n');
+        try {
+            if (out == null) open();
+            out.append(line);
+            // Close enough for rotation: the log is almost all ASCII
+            bytes += line.length();
+            if (bytes >= maxBytes) rotate();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (out == null || error != null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    public IOException getError() {
+        return error;
+    }
+
+    public File getFile() {
+        return new File(dir, name + ".log");
+    }
+
+    private void open() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        File file = getFile();
+        bytes = file.length();
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        new File(dir, name + ".log." + maxFiles).delete();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File older = new File(dir, name + ".log." + i);
+            if (older.exists()) older.renameTo(new File(dir, name + ".log." + (i + 1)));
+        }
+        getFile().renameTo(new File(dir, name + ".log.1"));
+        // The next write opens a fresh file
+        bytes = 0;
+    }
+}
@@ -0,0 +1,144 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * SessionReader streams a SessionRecorder file back, record by record, to a Listener.
+ * Recordings can be long, so frames are not collected: one Frame instance and its buffer
+ * are refilled for every frame record. Pure Java.
+ */
+public class SessionReader {
+
+    public interface Listener {
+        /** The frame is only valid during the call. */
+        void onFrame(Frame frame) throws IOException;
+
+        void onEvent(ReplayDriver.Event event) throws IOException;
+
+        void onDecision(ReplayDriver.DecisionRecord decision) throws IOException;
+    }
+
+    /**
+     * One recorded frame. The crop holds the raw (unrotated) pixels around the faces; faces
+     * are in upright frame coordinates, and offsetX/offsetY is where the crop's upright
+     * top-left lies in the frame.
+     */
+    public static class Frame {
+        public long timeMillis;
+        public int rotationDegrees;
+        public int uprightWidth;
+        public int uprightHeight;
+        public int cropWidth;
+        public int cropHeight;
+        public int offsetX;
+        public int offsetY;
+        /** Only the first cropWidth * cropHeight * 3 / 2 bytes are valid. */
+        public byte[] nv21 = new byte[0];
+        public final List<DetectedFace> faces = new ArrayList<>();
+
+        public boolean hasCrop() {
+            return cropWidth > 0 && cropHeight > 0;
+        }
+
+        /** Points frame at the NV21 crop, without copying. */
+        public YuvFrame toYuvFrame(YuvFrame frame) {
+            int lumaSize = cropWidth * cropHeight;
+            int chromaSize = lumaSize / 2;
+            ByteBuffer y = ByteBuffer.wrap(nv21, 0, lumaSize).slice();
+            // NV21 interleaves V then U, so both planes are views with a pixel stride of 2
+            ByteBuffer v = ByteBuffer.wrap(nv21, lumaSize, chromaSize).slice();
+            ByteBuffer u = ByteBuffer.wrap(nv21, lumaSize + 1, chromaSize - 1).slice();
+            return frame.set(y, cropWidth, u, v, cropWidth, 2, cropWidth, cropHeight, rotationDegrees);
+        }
+    }
+
+    private final Frame frame = new Frame();
+
+    public static void read(File file, Listener listener) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            read(in, listener);
+        }
+    }
+
+    public static void read(InputStream stream, Listener listener) throws IOException {
+        new SessionReader().readAll(stream, listener);
+    }
+
+    private void readAll(InputStream stream, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream, 1 << 16)));
+        if (in.readInt() != SessionRecorder.MAGIC) throw new IOException("Not a session recording");
+        int version = in.readInt();
+        if (version != SessionRecorder.VERSION) throw new IOException("Unsupported recording version " + version);
+
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+
+            switch (type) {
+                case SessionRecorder.RECORD_FRAME:
+                    readFrame(in);
+                    listener.onFrame(frame);
+                    break;
+                case SessionRecorder.RECORD_EVENT: {
+                    long time = in.readLong();
+                    String eventType = in.readUTF();
+                    String candidate = in.readUTF();
+                    listener.onEvent(new ReplayDriver.Event(time, eventType, candidate.isEmpty() ? null : candidate));
+                    break;
+                }
+                case SessionRecorder.RECORD_DECISION: {
+                    long time = in.readLong();
+                    DoorStateMachine.Decision decision;
+                    try {
+                        decision = DoorStateMachine.Decision.valueOf(in.readUTF());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Unknown decision in recording", e);
+                    }
+                    listener.onDecision(new ReplayDriver.DecisionRecord(decision, in.readUTF(), time));
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+        }
+    }
+
+    private void readFrame(DataInputStream in) throws IOException {
+        frame.timeMillis = in.readLong();
+        frame.rotationDegrees = in.readShort();
+        frame.uprightWidth = in.readShort();
+        frame.uprightHeight = in.readShort();
+        frame.cropWidth = in.readShort();
+        frame.cropHeight = in.readShort();
+        frame.offsetX = in.readShort();
+        frame.offsetY = in.readShort();
+
+        int size = frame.cropWidth * frame.cropHeight * 3 / 2;
+        if (frame.nv21.length < size) frame.nv21 = new byte[size];
+        in.readFully(frame.nv21, 0, size);
+
+        int count = in.readUnsignedByte();
+        frame.faces.clear();
+        for (int i = 0; i < count; i++) {
+            DetectedFace face = new DetectedFace();
+            face.trackingId = in.readInt();
+            face.setBox(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+            face.setEyes(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+            frame.faces.add(face);
+        }
+    }
+}
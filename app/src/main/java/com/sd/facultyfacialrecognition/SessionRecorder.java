@@ -0,0 +1,220 @@
+package com.sd.facultyfacialrecognition;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SessionRecorder writes a debug recording of a recognition session for PipelineReplay.
+ *
+ * Each recorded frame keeps what the matcher saw: the faces that were embedded, with their
+ * refined boxes and eyes, and an NV21 crop of the raw planes around them (with the
+ * frame's rotation and the crop's upright offset), so alignment and embedding can be
+ * rerun without a camera. Frames without faces are recorded without a crop. The user's
+ * confirmations and class actions are recorded as ReplayDriver events, and
+ * DoorStateMachine's decisions are recorded for comparison with the replay.
+ *
+ * The file is a gzipped stream: a header (MAGIC, VERSION) followed by records, each
+ * starting with its type byte; see SessionReader. Cropping and copying happen on the
+ * calling thread, compression and writing on a background thread. Frames are dropped
+ * rather than queued when the writer falls behind. All methods are thread-safe.
+ */
+public class SessionRecorder {
+
+    public static final String FILE_EXTENSION = ".session";
+
+    static final int MAGIC = 0x46465253; // "FFRS"
+    static final int VERSION = 1;
+    static final byte RECORD_FRAME = 1;
+    static final byte RECORD_EVENT = 2;
+    static final byte RECORD_DECISION = 3;
+
+    // Context kept around the faces, per side, as a fraction of their bounding box
+    private static final float CROP_MARGIN = 0.3f;
+    private static final int MAX_PENDING_FRAMES = 8;
+
+    private final DataOutputStream out;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final YuvCropper cropper = new YuvCropper();
+    private final AtomicInteger pendingFrames = new AtomicInteger();
+    private final AtomicLong framesRecorded = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private volatile IOException error;
+    private volatile boolean closed = false;
+
+    public SessionRecorder(OutputStream stream) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(stream, 1 << 16)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    public static SessionRecorder create(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        return new SessionRecorder(new FileOutputStream(file));
+    }
+
+    /**
+     * Records one frame and the faces on it, in upright frame coordinates. Must be called
+     * while the frame's planes are still valid; nothing is kept after it returns.
+     */
+    public synchronized void recordFrame(long timeMillis, YuvFrame frame, List<DetectedFace> faces) {
+        if (closed || error != null) return;
+        if (pendingFrames.get() >= MAX_PENDING_FRAMES) {
+            framesDropped.incrementAndGet();
+            return;
+        }
+
+        int count = faces.size();
+        byte[] nv21 = new byte[0];
+        int cropWidth = 0, cropHeight = 0, offsetX = 0, offsetY = 0;
+        if (count > 0) {
+            float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+            for (DetectedFace face : faces) {
+                left = Math.min(left, face.left);
+                top = Math.min(top, face.top);
+                right = Math.max(right, face.right);
+                bottom = Math.max(bottom, face.bottom);
+            }
+            if (cropper.crop(frame, left, top, right, bottom, CROP_MARGIN)) {
+                cropWidth = cropper.getCropWidth();
+                cropHeight = cropper.getCropHeight();
+                offsetX = cropper.getOffsetX();
+                offsetY = cropper.getOffsetY();
+                nv21 = Arrays.copyOf(cropper.getNv21(), cropWidth * cropHeight * 3 / 2);
+            }
+        }
+
+        int[] trackingIds = new int[count];
+        float[] values = new float[count * 8];
+        for (int i = 0; i < count; i++) {
+            DetectedFace face = faces.get(i);
+            trackingIds[i] = face.trackingId;
+            values[8 * i] = face.left;
+            values[8 * i + 1] = face.top;
+            values[8 * i + 2] = face.right;
+            values[8 * i + 3] = face.bottom;
+            values[8 * i + 4] = face.leftEyeX;
+            values[8 * i + 5] = face.leftEyeY;
+            values[8 * i + 6] = face.rightEyeX;
+            values[8 * i + 7] = face.rightEyeY;
+        }
+
+        final int rotation = frame.rotationDegrees;
+        final int uprightWidth = frame.getUprightWidth();
+        final int uprightHeight = frame.getUprightHeight();
+        final byte[] crop = nv21;
+        final int width = cropWidth, height = cropHeight, x = offsetX, y = offsetY;
+        pendingFrames.incrementAndGet();
+        write(() -> {
+            try {
+                out.writeByte(RECORD_FRAME);
+                out.writeLong(timeMillis);
+                out.writeShort(rotation);
+                out.writeShort(uprightWidth);
+                out.writeShort(uprightHeight);
+                out.writeShort(width);
+                out.writeShort(height);
+                out.writeShort(x);
+                out.writeShort(y);
+                out.write(crop);
+                out.writeByte(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(trackingIds[i]);
+                    for (int k = 0; k < 8; k++) out.writeFloat(values[8 * i + k]);
+                }
+                framesRecorded.incrementAndGet();
+            } finally {
+                pendingFrames.decrementAndGet();
+            }
+        });
+    }
+
+    /** Records a user or class event; type is one of the ReplayDriver event types. */
+    public synchronized void recordEvent(long timeMillis, String type, String candidate) {
+        if (closed || error != null) return;
+        write(() -> {
+            out.writeByte(RECORD_EVENT);
+            out.writeLong(timeMillis);
+            out.writeUTF(type);
+            out.writeUTF(candidate != null ? candidate : "");
+        });
+    }
+
+    public synchronized void recordDecision(long timeMillis, DoorStateMachine.Decision decision, String facultyName) {
+        if (closed || error != null) return;
+        write(() -> {
+            out.writeByte(RECORD_DECISION);
+            out.writeLong(timeMillis);
+            out.writeUTF(decision.name());
+            out.writeUTF(facultyName != null ? facultyName : "");
+        });
+    }
+
+    /** Finishes the file in the background; further records are ignored. */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        writer.execute(() -> {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+        });
+        writer.shutdown();
+    }
+
+    /** Waits for close() to finish writing; true if it did within the timeout. */
+    public boolean awaitClosed(long timeoutMillis) throws InterruptedException {
+        return writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getFramesRecorded() {
+        return framesRecorded.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /** The first write error, after which recording stopped; null if none. */
+    public IOException getError() {
+        return error;
+    }
+
+    private interface Write {
+        void run() throws IOException;
+    }
+
+    private void write(Write write) {
+        writer.execute(() -> {
+            if (error != null) return;
+            try {
+                write.run();
+            } catch (IOException e) {
+                error = e;
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "session recorder: " + framesRecorded.get() + " frames recorded, "
+                + framesDropped.get() + " dropped" + (error != null ? ", failed: " + error.getMessage() : "");
+    }
+}
@@ -0,0 +1,60 @@
+package com.sd.facultyfacialrecognition;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free ring buffer for exactly one producer thread and one consumer thread.
+ * offer() never blocks; it returns false when the queue is full.
+ */
+public class SpscQueue<T> {
+
+    private final Object[] buffer;
+    private final int mask;
+    private final int capacity;
+
+    // Next slot to read (consumer) and next slot to write (producer)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public SpscQueue(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Producer side. Returns false without blocking when the queue is full.
+     */
+    public boolean offer(T item) {
+        long t = tail.get();
+        if (t - head.get() >= capacity) return false;
+        buffer[(int) t & mask] = item;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Returns null when the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h >= tail.get()) return null;
+        int index = (int) h & mask;
+        T item = (T) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,61 @@
+package com.sd.facultyfacialrecognition;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * TfliteRuntime is the one place TFLite models are loaded and interpreters are configured,
+ * so FaceNet and the TFLite face detector run with the same runtime and split the same
+ * CPU budget. Each model runs on its own pipeline thread, so each gets THREADS_PER_MODEL
+ * threads rather than all cores.
+ */
+public class TfliteRuntime {
+
+    private static final String TAG = "TfliteRuntime";
+
+    public static final int THREADS_PER_MODEL = 2;
+
+    public static Interpreter.Options createOptions() {
+        return new Interpreter.Options().setNumThreads(THREADS_PER_MODEL);
+    }
+
+    /**
+     * Maps modelPath if it exists, else the asset of the same name.
+     */
+    public static MappedByteBuffer loadModel(Context context, String modelPath, String assetName) throws IOException {
+        try {
+            MappedByteBuffer model = loadModelFile(modelPath);
+            Log.d(TAG, assetName + " loaded from file path.");
+            return model;
+        } catch (Exception e) {
+            Log.w(TAG, "Could not load " + assetName + " from file, trying assets...");
+            MappedByteBuffer model = loadModelFromAssets(context, assetName);
+            Log.d(TAG, assetName + " loaded from assets.");
+            return model;
+        }
+    }
+
+    private static MappedByteBuffer loadModelFile(String modelPath) throws IOException {
+        try (FileInputStream fis = new FileInputStream(modelPath)) {
+            FileChannel fc = fis.getChannel();
+            return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+    }
+
+    private static MappedByteBuffer loadModelFromAssets(Context context, String assetName) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(assetName);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        }
+    }
+}
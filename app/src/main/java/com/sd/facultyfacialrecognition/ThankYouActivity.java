@@ -3,11 +3,15 @@ package com.sd.facultyfacialrecognition;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.widget.TextView;
+import androidx.activity.OnBackPressedCallback;
 import androidx.appcompat.app.AppCompatActivity;
 
 public class ThankYouActivity extends AppCompatActivity {
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -17,11 +21,23 @@ public class ThankYouActivity extends AppCompatActivity {
         TextView msg = findViewById(R.id.text_goodbye);
         msg.setText(message);
 
-        new Handler().postDelayed(() -> {
-            // Return to face recognition screen
-            Intent intent = new Intent(ThankYouActivity.this, MainActivity.class);
-            startActivity(intent);
-            finish();
-        }, 3000);
+        handler.postDelayed(this::returnToScanner, 3000);
+
+        // Back returns the same way, so the recognition screen is reset for a new visit
+        getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
+            @Override
+            public void handleOnBackPressed() {
+                handler.removeCallbacksAndMessages(null);
+                returnToScanner();
+            }
+        });
+    }
+
+    private void returnToScanner() {
+        // Return to face recognition screen
+        Intent intent = new Intent(ThankYouActivity.this, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        startActivity(intent);
+        finish();
     }
 }
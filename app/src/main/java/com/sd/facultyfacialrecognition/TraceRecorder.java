@@ -0,0 +1,196 @@
+package com.sd.facultyfacialrecognition;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TraceRecorder keeps the most recent timed spans of the app in a fixed ring buffer, for
+ * per-frame timelines next to PipelineMetrics' aggregates. It exports them in the Chrome
+ * trace event JSON format, which chrome://tracing and ui.perfetto.dev open directly.
+ *
+ * A span is begin() on any thread, then end() on the same thread, or endAsync() on any
+ * thread for work that completes in a callback (Firestore writes). Async spans get their
+ * own rows in the viewer, so overlapping writes stay readable.
+ *
+ * Recording claims a slot with one atomic increment and writes primitives into parallel
+ * arrays, with no lock and no allocation after a thread's first span. A per-slot sequence
+ * number lets the exporter skip slots that are being overwritten while it reads.
+ */
+public class TraceRecorder {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** The app-wide trace the pipeline, admin screen and database writes record into. */
+    public static final TraceRecorder GLOBAL = new TraceRecorder(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final String[] names;
+    private final long[] startNanos;
+    private final long[] durationNanos;
+    private final long[] threadIds;
+    private final boolean[] async;
+    // Sequence number of the span in each slot, -1 while it is being written
+    private final AtomicLongArray sequences;
+    private final AtomicLong next = new AtomicLong();
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> threadNamed = new ThreadLocal<>();
+    private volatile boolean enabled = true;
+
+    public TraceRecorder(int capacity) {
+        this.capacity = capacity;
+        names = new String[capacity];
+        startNanos = new long[capacity];
+        durationNanos = new long[capacity];
+        threadIds = new long[capacity];
+        async = new boolean[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) sequences.set(i, -1);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Start time for end(); 0 while tracing is disabled, which end() ignores. */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Records a span from begin() to now on the current thread. Names should be constants. */
+    public void end(String name, long beginNanos) {
+        if (beginNanos != 0) add(name, beginNanos, System.nanoTime(), Thread.currentThread(), false);
+    }
+
+    /** Records a span from begin() to now, for work finished on another thread than it began. */
+    public void endAsync(String name, long beginNanos) {
+        if (beginNanos != 0) add(name, beginNanos, System.nanoTime(), null, true);
+    }
+
+    /** Records a span already timed by the caller, on the current thread. */
+    public void span(String name, long beginNanos, long endNanos) {
+        if (enabled) add(name, beginNanos, endNanos, Thread.currentThread(), false);
+    }
+
+    /** Records a span already timed by the caller that crossed threads. */
+    public void asyncSpan(String name, long beginNanos, long endNanos) {
+        if (enabled) add(name, beginNanos, endNanos, null, true);
+    }
+
+    private void add(String name, long begin, long end, Thread thread, boolean isAsync) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+
+        long threadId = 0;
+        if (thread != null) {
+            threadId = thread.getId();
+            if (threadNamed.get() == null) {
+                threadNames.put(threadId, thread.getName());
+                threadNamed.set(Boolean.TRUE);
+            }
+        }
+
+        sequences.set(slot, -1);
+        names[slot] = name;
+        startNanos[slot] = begin;
+        durationNanos[slot] = Math.max(0, end - begin);
+        threadIds[slot] = threadId;
+        async[slot] = isAsync;
+        sequences.set(slot, sequence);
+    }
+
+    /** Number of spans recorded since the start, including ones the ring has overwritten. */
+    public long getSpanCount() {
+        return next.get();
+    }
+
+    public void clear() {
+        for (int i = 0; i < capacity; i++) sequences.set(i, -1);
+    }
+
+    public void writeChromeJson(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeChromeJson(writer);
+        }
+    }
+
+    /**
+     * Writes the spans still in the ring, oldest first, as a Chrome trace: complete ("X")
+     * events per thread, async begin/end ("b"/"e") pairs, and thread name metadata.
+     * Timestamps are whole microseconds on the System.nanoTime() clock.
+     */
+    public void writeChromeJson(Writer out) throws IOException {
+        long last = next.get();
+        long first = Math.max(0, last - capacity);
+
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("displayTimeUnit").value("ms");
+        json.name("traceEvents").beginArray();
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            json.beginObject();
+            json.name("name").value("thread_name");
+            json.name("ph").value("M");
+            json.name("pid").value(1);
+            json.name("tid").value(thread.getKey());
+            json.name("args").beginObject().name("name").value(thread.getValue()).endObject();
+            json.endObject();
+        }
+
+        for (long sequence = first; sequence < last; sequence++) {
+            int slot = (int) (sequence % capacity);
+            if (sequences.get(slot) != sequence) continue;
+            String name = names[slot];
+            long start = startNanos[slot];
+            long duration = durationNanos[slot];
+            long threadId = threadIds[slot];
+            boolean isAsync = async[slot];
+            // Overwritten while reading
+            if (sequences.get(slot) != sequence) continue;
+
+            if (isAsync) {
+                writeAsyncEvent(json, name, "b", sequence, start);
+                writeAsyncEvent(json, name, "e", sequence, start + duration);
+            } else {
+                json.beginObject();
+                json.name("name").value(name);
+                json.name("ph").value("X");
+                json.name("pid").value(1);
+                json.name("tid").value(threadId);
+                json.name("ts").value(start / 1000);
+                json.name("dur").value(duration / 1000.0);
+                json.endObject();
+            }
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeAsyncEvent(JsonWriter json, String name, String phase, long id, long nanos) throws IOException {
+        json.beginObject();
+        json.name("name").value(name);
+        json.name("cat").value("async");
+        json.name("ph").value(phase);
+        json.name("id").value(id);
+        json.name("pid").value(1);
+        json.name("tid").value(0);
+        json.name("ts").value(nanos / 1000);
+        json.endObject();
+    }
+}
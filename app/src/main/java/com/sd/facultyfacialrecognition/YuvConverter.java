@@ -0,0 +1,30 @@
+package com.sd.facultyfacialrecognition;
+
+/**
+ * YuvConverter holds the YUV to ARGB colour conversion shared by the camera frame
+ * samplers. Frames are no longer converted as a whole; FaceTensorSampler reads the
+ * YUV planes directly and converts only the pixels it samples.
+ */
+public class YuvConverter {
+
+    private YuvConverter() {
+    }
+
+    /**
+     * Full-range BT.601 (what Android cameras produce) in 10-bit fixed point.
+     */
+    static int yuvToArgb(int y, int u, int v) {
+        int d = u - 128;
+        int e = v - 128;
+        int yScaled = y << 10;
+
+        int r = (yScaled + 1436 * e) >> 10;
+        int g = (yScaled - 352 * d - 731 * e) >> 10;
+        int b = (yScaled + 1815 * d) >> 10;
+
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,151 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YuvCropper copies the region around a face out of a YUV_420_888 frame into a small NV21
+ * buffer, so a second detector can look at just that region.
+ *
+ * The region is given in upright coordinates and cut from the raw (unrotated) planes; the
+ * crop keeps the frame's rotation, so a detector run on it reports upright coordinates
+ * relative to the crop. Add getOffsetX()/getOffsetY() to map them back onto the frame.
+ *
+ * The output buffer is reused between calls. Not thread-safe.
+ */
+public class YuvCropper {
+
+    private byte[] nv21 = new byte[0];
+    private int cropWidth;
+    private int cropHeight;
+    private int offsetX;
+    private int offsetY;
+
+    /**
+     * Crops the upright box grown by margin (a fraction of the box size on every side),
+     * clamped to the frame. Returns false if nothing is left of the region.
+     */
+    public boolean crop(YuvFrame frame, float left, float top, float right, float bottom, float margin) {
+        float padX = (right - left) * margin;
+        float padY = (bottom - top) * margin;
+
+        // Upright corners -> raw sensor rectangle
+        float ax = toRawX(frame, left - padX, top - padY);
+        float ay = toRawY(frame, left - padX, top - padY);
+        float bx = toRawX(frame, right + padX, bottom + padY);
+        float by = toRawY(frame, right + padX, bottom + padY);
+
+        // Even origin and size keep the 2x2 chroma blocks intact
+        int x0 = clampEven((int) Math.floor(Math.min(ax, bx)), frame.width);
+        int y0 = clampEven((int) Math.floor(Math.min(ay, by)), frame.height);
+        int x1 = clampEven((int) Math.ceil(Math.max(ax, bx)) + 1, frame.width);
+        int y1 = clampEven((int) Math.ceil(Math.max(ay, by)) + 1, frame.height);
+        if (x1 - x0 < 2 || y1 - y0 < 2) return false;
+
+        cropWidth = x1 - x0;
+        cropHeight = y1 - y0;
+        int size = cropWidth * cropHeight * 3 / 2;
+        if (nv21.length < size) nv21 = new byte[size];
+
+        copyLuma(frame, x0, y0);
+        copyChroma(frame, x0, y0);
+
+        // Top-left of the raw rectangle once rotated upright
+        switch (frame.rotationDegrees) {
+            case 90:
+                offsetX = frame.height - y1;
+                offsetY = x0;
+                break;
+            case 180:
+                offsetX = frame.width - x1;
+                offsetY = frame.height - y1;
+                break;
+            case 270:
+                offsetX = y0;
+                offsetY = frame.width - x1;
+                break;
+            default:
+                offsetX = x0;
+                offsetY = y0;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * NV21 bytes of the last crop; only the first getCropWidth() * getCropHeight() * 3 / 2
+     * bytes are valid.
+     */
+    public byte[] getNv21() {
+        return nv21;
+    }
+
+    /** Raw (unrotated) width of the last crop. */
+    public int getCropWidth() {
+        return cropWidth;
+    }
+
+    /** Raw (unrotated) height of the last crop. */
+    public int getCropHeight() {
+        return cropHeight;
+    }
+
+    public int getOffsetX() {
+        return offsetX;
+    }
+
+    public int getOffsetY() {
+        return offsetY;
+    }
+
+    private void copyLuma(YuvFrame frame, int x0, int y0) {
+        ByteBuffer y = frame.yPlane;
+        int base = y.position();
+        int dst = 0;
+        for (int row = 0; row < cropHeight; row++) {
+            int src = base + (y0 + row) * frame.yRowStride + x0;
+            for (int col = 0; col < cropWidth; col++) {
+                nv21[dst++] = y.get(src + col);
+            }
+        }
+    }
+
+    private void copyChroma(YuvFrame frame, int x0, int y0) {
+        ByteBuffer u = frame.uPlane;
+        ByteBuffer v = frame.vPlane;
+        int uBase = u.position();
+        int vBase = v.position();
+        int dst = cropWidth * cropHeight;
+        for (int row = 0; row < cropHeight / 2; row++) {
+            int rowOffset = ((y0 >> 1) + row) * frame.uvRowStride;
+            for (int col = 0; col < cropWidth / 2; col++) {
+                int src = rowOffset + ((x0 >> 1) + col) * frame.uvPixelStride;
+                nv21[dst++] = v.get(vBase + src);
+                nv21[dst++] = u.get(uBase + src);
+            }
+        }
+    }
+
+    // Inverse of the upright rotation, same mapping as FaceTensorSampler
+    static float toRawX(YuvFrame frame, float x, float y) {
+        switch (frame.rotationDegrees) {
+            case 90: return y;
+            case 180: return frame.width - x;
+            case 270: return frame.width - y;
+            default: return x;
+        }
+    }
+
+    static float toRawY(YuvFrame frame, float x, float y) {
+        switch (frame.rotationDegrees) {
+            case 90: return frame.height - x;
+            case 180: return frame.height - y;
+            case 270: return x;
+            default: return y;
+        }
+    }
+
+    private static int clampEven(int value, int max) {
+        value = value < 0 ? 0 : (value > max ? max : value);
+        return value & ~1;
+    }
+}
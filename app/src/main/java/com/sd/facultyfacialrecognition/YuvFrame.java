@@ -0,0 +1,46 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YuvFrame holds the planes and layout of one YUV_420_888 camera frame without copying
+ * them. It is mutable so one instance can be refilled for every frame.
+ *
+ * width and height are the raw sensor dimensions; rotationDegrees is the clockwise
+ * rotation that makes the frame upright, which is the space ML Kit reports faces in.
+ */
+public class YuvFrame {
+
+    public ByteBuffer yPlane;
+    public ByteBuffer uPlane;
+    public ByteBuffer vPlane;
+    public int yRowStride;
+    public int uvRowStride;
+    public int uvPixelStride;
+    public int width;
+    public int height;
+    public int rotationDegrees;
+
+    public YuvFrame set(ByteBuffer yPlane, int yRowStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int width, int height, int rotationDegrees) {
+        this.yPlane = yPlane;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        return this;
+    }
+
+    public int getUprightWidth() {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+    }
+
+    public int getUprightHeight() {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+    }
+}
@@ -0,0 +1,169 @@
+package com.sd.facultyfacialrecognition;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays synthetic event streams through DoorStateMachine with the same settings as
+ * MainActivity: 20 stable frames, 10 s cooldown, 10 s confirmation timeout, 5 s countdown.
+ */
+public class DoorStateMachineTest {
+
+    private static final long FRAME_MILLIS = 66;
+
+    private static ReplayDriver newDriver() {
+        return new ReplayDriver(20, 10000, 10000, 5);
+    }
+
+    private static void addFrames(List<ReplayDriver.Event> events, long startMillis, int count, String candidate) {
+        for (int i = 0; i < count; i++) {
+            events.add(ReplayDriver.Event.frame(startMillis + i * FRAME_MILLIS, candidate));
+        }
+    }
+
+    @Test
+    public void stableKnownFace_asksForConfirmation_thenUnlocks() {
+        ReplayDriver driver = newDriver();
+        List<ReplayDriver.Event> events = new ArrayList<>();
+        addFrames(events, 0, 20, "Juan Dela Cruz");
+        events.add(new ReplayDriver.Event(3000, ReplayDriver.YES, null));
+        driver.run(events);
+
+        ReplayDriver.DecisionRecord confirm = driver.first(DoorStateMachine.Decision.CONFIRM_UNLOCK);
+        assertNotNull(confirm);
+        assertEquals("Juan Dela Cruz", confirm.facultyName);
+        assertEquals(19 * FRAME_MILLIS, confirm.timeMillis);
+
+        ReplayDriver.DecisionRecord unlocked = driver.first(DoorStateMachine.Decision.UNLOCKED);
+        assertNotNull(unlocked);
+        assertEquals("Juan Dela Cruz", unlocked.facultyName);
+        assertFalse(driver.getMachine().isLocked());
+        assertEquals("Juan Dela Cruz", driver.getMachine().getAuthorizedUnlocker());
+    }
+
+    @Test
+    public void oneFlickeringFrame_restartsStability() {
+        ReplayDriver driver = newDriver();
+        List<ReplayDriver.Event> events = new ArrayList<>();
+        addFrames(events, 0, 15, "Juan Dela Cruz");
+        addFrames(events, 15 * FRAME_MILLIS, 1, "Unknown");
+        addFrames(events, 16 * FRAME_MILLIS, 19, "Juan Dela Cruz");
+        driver.run(events);
+
+        assertNull(driver.first(DoorStateMachine.Decision.CONFIRM_UNLOCK));
+        assertEquals(19, driver.getMachine().getStableMatchCount());
+        assertTrue(driver.getStatus().startsWith("Recognizing: Juan Dela Cruz"));
+    }
+
+    @Test
+    public void stableUnknownFace_isDenied() {
+        ReplayDriver driver = newDriver();
+        List<ReplayDriver.Event> events = new ArrayList<>();
+        addFrames(events, 0, 20, DoorStateMachine.UNKNOWN);
+        driver.run(events);
+
+        assertNotNull(driver.first(DoorStateMachine.Decision.DENIED));
+        assertNull(driver.first(DoorStateMachine.Decision.CONFIRM_UNLOCK));
+        assertEquals("Access Denied", driver.getStatus());
+        assertTrue(driver.getMachine().isLocked());
+    }
+
+    @Test
+    public void unansweredConfirmation_timesOutAfterTenSeconds() {
+        ReplayDriver driver = newDriver();
+        List<ReplayDriver.Event> events = new ArrayList<>();
+        addFrames(events, 0, 20, "Juan Dela Cruz");
+        long confirmAt = 19 * FRAME_MILLIS;
+        driver.run(events, confirmAt + 4500);
+
+        assertTrue(driver.getMachine().isAwaitingConfirmation());
+        assertTrue(driver.getCountdown().contains("Visual countdown: 1s"));
+
+        driver.run(new ArrayList<>(), confirmAt + 10000);
+        ReplayDriver.DecisionRecord timedOut = driver.first(DoorStateMachine.Decision.TIMED_OUT);
+        assertNotNull(timedOut);
+        assertEquals(confirmAt + 10000, timedOut.timeMillis);
+        assertEquals("Unlock Timed Out", driver.getStatus());
+        assertFalse(driver.getMachine().isAwaitingConfirmation());
+        assertTrue(driver.getMachine().isLocked());
+    }
+
+    @Test
+    public void cancelledConfirmation_keepsDoorLocked() {
+        ReplayDriver driver = newDriver();
+        List<ReplayDriver.Event> events = new ArrayList<>();
+        addFrames(events, 0, 20, "Juan Dela Cruz");
+        events.add(new ReplayDriver.Event(2000, ReplayDriver.NO, null));
+        driver.run(events);
+
+        assertNotNull(driver.first(DoorStateMachine.Decision.CANCELLED));
+        assertNull(driver.first(DoorStateMachine.Decision.UNLOCKED));
+        assertEquals("Access Denied", driver.getStatus());
+        assertEquals(0, driver.getMachine().getStableMatchCount());
+    }
+
+    @Test
+    public void lockFlow_startsCooldown() throws IOException {
+        String stream = "# unlock, then lock again by face\n"
+                + "0 reset\n";
+        List<ReplayDriver.Event> events = new ArrayList<>(ReplayDriver.parse(new StringReader(stream)));
+        addFrames(events, 100, 20, "Juan Dela Cruz");
+        events.add(new ReplayDriver.Event(2000, ReplayDriver.YES, null));
+        events.add(new ReplayDriver.Event(3000, ReplayDriver.LOCK, null));
+        addFrames(events, 3100, 20, "Juan Dela Cruz");
+        events.add(new ReplayDriver.Event(6000, ReplayDriver.YES, null));
+        // Inside the cooldown: no confirmation however stable the face
+        addFrames(events, 7000, 40, "Juan Dela Cruz");
+
+        ReplayDriver driver = newDriver();
+        driver.run(events);
+
+        ReplayDriver.DecisionRecord locked = driver.first(DoorStateMachine.Decision.LOCKED);
+        assertNotNull(locked);
+        assertEquals(6000, locked.timeMillis);
+        assertEquals("Juan Dela Cruz", locked.facultyName);
+        assertTrue(driver.getMachine().isLocked());
+        assertEquals("System Locked", driver.getStatus());
+
+        int confirmations = 0;
+        for (ReplayDriver.DecisionRecord record : driver.getDecisions()) {
+            if (record.decision == DoorStateMachine.Decision.CONFIRM_UNLOCK) confirmations++;
+        }
+        assertEquals(1, confirmations);
+    }
+
+    @Test
+    public void parse_readsTypesAndNamesWithSpaces() throws IOException {
+        List<ReplayDriver.Event> events = ReplayDriver.parse(new StringReader(
+                "\n# comment\n1200 frame Juan Dela Cruz\n1300 frame\n1400 yes\n"));
+
+        assertEquals(3, events.size());
+        assertEquals(1200, events.get(0).timeMillis);
+        assertEquals("Juan Dela Cruz", events.get(0).candidate);
+        assertNull(events.get(1).candidate);
+        assertEquals(ReplayDriver.YES, events.get(2).type);
+    }
+
+    @Test
+    public void replay_runsFarFasterThanRealTime() {
+        List<ReplayDriver.Event> events = new ArrayList<>();
+        String[] faces = {"Juan Dela Cruz", DoorStateMachine.SCANNING, "Maria Santos", DoorStateMachine.UNKNOWN};
+        for (int i = 0; i < 200_000; i++) {
+            events.add(ReplayDriver.Event.frame(i * FRAME_MILLIS, faces[(i / 25) % faces.length]));
+        }
+
+        ReplayDriver driver = newDriver();
+        long start = System.nanoTime();
+        driver.run(events);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(events.size(), driver.getEventCount());
+        assertTrue("replay ran at " + (events.size() / seconds) + " frames/s", events.size() / seconds > 1000);
+    }
+}
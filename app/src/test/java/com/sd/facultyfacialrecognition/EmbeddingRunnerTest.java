@@ -0,0 +1,164 @@
+package com.sd.facultyfacialrecognition;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs EmbeddingRunner against a stand-in model that checks the input holds exactly the
+ * batch it was resized to, and can refuse batches the way some TFLite models do.
+ */
+public class EmbeddingRunnerTest {
+
+    private static final int EMBEDDING_SIZE = 4;
+    private static final int MAX_BATCH = 4;
+
+    // Embeds each face as the first floats of its tensor, so results can be told apart
+    private static class FakeModel implements EmbeddingRunner.Model {
+        final int maxBatch;
+        int batch = 1;
+        int runs;
+        final List<Integer> resizes = new ArrayList<>();
+
+        FakeModel(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+
+        @Override
+        public void resizeBatch(int count) {
+            resizes.add(count);
+            if (count > maxBatch) throw new IllegalArgumentException("Batch of " + count + " not supported");
+            batch = count;
+        }
+
+        @Override
+        public void run(ByteBuffer input, float[][] output) {
+            runs++;
+            assertEquals("input size", 4L * EmbeddingRunner.TENSOR_LENGTH * batch, input.capacity());
+            assertEquals("output size", batch, output.length);
+            FloatBuffer floats = input.asFloatBuffer();
+            for (int i = 0; i < batch; i++) {
+                for (int j = 0; j < EMBEDDING_SIZE; j++) {
+                    output[i][j] = floats.get(i * EmbeddingRunner.TENSOR_LENGTH + j);
+                }
+            }
+        }
+    }
+
+    private final List<String> errors = new ArrayList<>();
+
+    @Test
+    public void batchRunsInOneCall() {
+        FakeModel model = new FakeModel(8);
+        EmbeddingRunner runner = runner(model);
+
+        float[][] embeddings = runner.getEmbeddings(tensors(3), 3);
+
+        assertEquals(1, model.runs);
+        assertFaces(embeddings, 3);
+        assertTrue(errors.isEmpty());
+        assertTrue(runner.isBatchSupported());
+    }
+
+    @Test
+    public void refusedBatchFallsBackToOneFaceAtATime() {
+        FakeModel model = new FakeModel(1);
+        EmbeddingRunner runner = runner(model);
+
+        float[][] embeddings = runner.getEmbeddings(tensors(3), 3);
+
+        assertEquals("one run per face", 3, model.runs);
+        assertFaces(embeddings, 3);
+        assertFalse(runner.isBatchSupported());
+        assertEquals(1, errors.size());
+
+        // Later batches go straight to single faces without resizing again
+        model.resizes.clear();
+        assertFaces(runner.getEmbeddings(tensors(2), 2), 2);
+        assertTrue(model.resizes.isEmpty());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void smallerBatchesKeepTheModelShape() {
+        FakeModel model = new FakeModel(8);
+        EmbeddingRunner runner = runner(model);
+
+        assertFaces(runner.getEmbeddings(tensors(2), 2), 2);
+        // Someone leaves and comes back: the model stays at two faces
+        assertFaces(runner.getEmbeddings(tensors(1), 1), 1);
+        assertFaces(runner.getEmbeddings(tensors(2), 2), 2);
+        assertEquals(Collections.singletonList(2), model.resizes);
+
+        // Alone for a while: the model shrinks back once
+        for (int i = 0; i < EmbeddingRunner.SHRINK_AFTER_RUNS; i++) assertFaces(runner.getEmbeddings(tensors(1), 1), 1);
+        assertEquals(Arrays.asList(2, 1), model.resizes);
+        assertEquals(1, model.batch);
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void failedFallbackStopsRetrying() {
+        // Runs its initial single face but cannot be resized at all
+        FakeModel model = new FakeModel(0);
+        EmbeddingRunner runner = runner(model);
+
+        float[][] embeddings = runner.getEmbeddings(tensors(2), 2);
+
+        assertNull(embeddings[0]);
+        assertNull(embeddings[1]);
+        assertEquals(Arrays.asList(2, 1), model.resizes);
+        assertEquals(2, errors.size());
+
+        // Nothing is retried or logged again
+        assertNull(runner.getEmbeddings(tensors(1), 1)[0]);
+        assertNull(runner.getEmbedding(input -> input.put(tensors(1)[0])));
+        assertEquals(2, model.resizes.size());
+        assertEquals(2, errors.size());
+        assertEquals(0, model.runs);
+    }
+
+    @Test
+    public void unusableModelGivesNullEntries() {
+        FakeModel model = new FakeModel(0);
+        model.batch = -1;
+        EmbeddingRunner runner = runner(model);
+
+        float[][] embeddings = runner.getEmbeddings(tensors(2), 2);
+
+        assertNull(embeddings[0]);
+        assertNull(embeddings[1]);
+        assertEquals(0, model.runs);
+    }
+
+    private EmbeddingRunner runner(FakeModel model) {
+        return new EmbeddingRunner(model, EMBEDDING_SIZE, MAX_BATCH, (message, e) -> errors.add(message));
+    }
+
+    // Tensor i starts with (1, i, 0, 0); everything else is zero
+    private static float[][] tensors(int count) {
+        float[][] tensors = new float[count][EmbeddingRunner.TENSOR_LENGTH];
+        for (int i = 0; i < count; i++) {
+            tensors[i][0] = 1;
+            tensors[i][1] = i;
+        }
+        return tensors;
+    }
+
+    // The first count entries are every face embedded, in order and normalized
+    private static void assertFaces(float[][] embeddings, int count) {
+        assertTrue(embeddings.length >= count);
+        for (int i = 0; i < count; i++) {
+            assertNotNull("face " + i, embeddings[i]);
+            assertEquals("face " + i, i, embeddings[i][1] / embeddings[i][0], 1e-5f);
+            assertEquals(1f, embeddings[i][0] * embeddings[i][0] + embeddings[i][1] * embeddings[i][1], 1e-5f);
+        }
+    }
+}
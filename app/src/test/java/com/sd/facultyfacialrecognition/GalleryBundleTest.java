@@ -0,0 +1,222 @@
+package com.sd.facultyfacialrecognition;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exports galleries with GalleryBundle and imports them into a fresh faculty directory,
+ * then checks that damaged or inconsistent bundles are rejected without touching the
+ * gallery already installed there.
+ */
+public class GalleryBundleTest {
+
+    private static final String MODEL = "model-a";
+    private static final String FACULTY = "Juan Dela Cruz";
+    private static final String NEWCOMER = "Maria Santos";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void export_thenImport_roundTripsEmbeddingsAndCrops() throws Exception {
+        File source = folder.newFolder("source");
+        FaceGallery gallery = new FaceGallery(MODEL);
+        gallery.put(FACULTY, Arrays.asList(embedding(1), embedding(2)));
+        // Enrolled but not embedded yet: written with dimension 0
+        gallery.put(NEWCOMER, new ArrayList<>());
+        byte[] crop = writeCrop(source, FACULTY, "photo_1.jpg");
+
+        List<Integer> exported = new ArrayList<>();
+        byte[] bundle = export(gallery, source, true, (done, total) -> exported.add(total - done));
+        assertEquals("ends on the last chunk", Integer.valueOf(0), exported.get(exported.size() - 1));
+
+        File target = folder.newFolder("target");
+        List<Integer> imported = new ArrayList<>();
+        GalleryBundle.ImportResult result = GalleryBundle.importBundle(new ByteArrayInputStream(bundle), target,
+                (done, total) -> imported.add(total - done));
+
+        assertEquals(exported, imported);
+        assertEquals(MODEL, result.manifest.modelFingerprint);
+        assertTrue(result.manifest.includesCrops);
+        assertEquals(1, result.cropsImported);
+
+        FaceGallery installed = FaceGallery.load(new File(target, FaceGallery.FILE_NAME));
+        assertEquals(MODEL, installed.getModelFingerprint());
+        assertEquals(2, installed.get(FACULTY).size());
+        assertArrayEquals(embedding(1), installed.get(FACULTY).get(0), 0f);
+        assertArrayEquals(embedding(2), installed.get(FACULTY).get(1), 0f);
+        assertTrue(installed.get(NEWCOMER).isEmpty());
+        assertArrayEquals(crop, Files.readAllBytes(new File(target, FACULTY + "/photo_1.jpg").toPath()));
+        assertFalse("staging is cleaned up", new File(target, ".bundle_import").exists());
+    }
+
+    @Test
+    public void import_mergesIntoAGalleryOfTheSameModel() throws Exception {
+        File target = folder.newFolder("target");
+        FaceGallery existing = new FaceGallery(MODEL);
+        existing.put(NEWCOMER, Collections.singletonList(embedding(3)));
+        existing.save(new File(target, FaceGallery.FILE_NAME));
+
+        FaceGallery gallery = new FaceGallery(MODEL);
+        gallery.put(FACULTY, Collections.singletonList(embedding(1)));
+        GalleryBundle.importBundle(new ByteArrayInputStream(export(gallery, target, false, null)), target, null);
+
+        FaceGallery installed = FaceGallery.load(new File(target, FaceGallery.FILE_NAME));
+        assertEquals(1, installed.get(FACULTY).size());
+        assertEquals(1, installed.get(NEWCOMER).size());
+    }
+
+    @Test
+    public void corruptedChunk_isRejectedAndLeavesTheGalleryUntouched() throws Exception {
+        File source = folder.newFolder("source");
+        FaceGallery gallery = new FaceGallery(MODEL);
+        gallery.put(FACULTY, Collections.singletonList(embedding(1)));
+        writeCrop(source, FACULTY, "photo_1.jpg");
+        byte[] bundle = export(gallery, source, true, null);
+        // A byte in the middle of the crop chunk
+        bundle[bundle.length / 2] ^= 0x40;
+
+        File target = installedGallery();
+        byte[] before = Files.readAllBytes(new File(target, FaceGallery.FILE_NAME).toPath());
+
+        IOException error = assertImportFails(bundle, target);
+
+        assertTrue(error.getMessage(), error.getMessage().contains("Checksum"));
+        assertArrayEquals(before, Files.readAllBytes(new File(target, FaceGallery.FILE_NAME).toPath()));
+        assertFalse(new File(target, FACULTY).exists());
+    }
+
+    @Test
+    public void truncatedBundle_isRejected() throws Exception {
+        FaceGallery gallery = new FaceGallery(MODEL);
+        gallery.put(FACULTY, Collections.singletonList(embedding(1)));
+        byte[] bundle = export(gallery, folder.newFolder("source"), false, null);
+
+        File target = folder.newFolder("target");
+        assertImportFails(Arrays.copyOf(bundle, bundle.length - 12), target);
+        assertFalse(new File(target, FaceGallery.FILE_NAME).exists());
+    }
+
+    @Test
+    public void wrongDimension_isRejected() throws Exception {
+        // Written by a different model with smaller embeddings
+        FaceGallery gallery = new FaceGallery(MODEL);
+        gallery.put(FACULTY, Collections.singletonList(new float[FaceNet.EMBEDDING_SIZE / 2]));
+        byte[] bundle = export(gallery, folder.newFolder("source"), false, null);
+
+        File target = installedGallery();
+        IOException error = assertImportFails(bundle, target);
+
+        assertTrue(error.getMessage(), error.getMessage().contains("1 x " + FaceNet.EMBEDDING_SIZE / 2));
+        assertNull(FaceGallery.load(new File(target, FaceGallery.FILE_NAME)).get(FACULTY));
+    }
+
+    @Test
+    public void negativeCount_isRejected() throws Exception {
+        ByteArrayOutputStream embeddings = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(embeddings);
+        out.writeUTF(FACULTY);
+        out.writeInt(-1);
+        out.writeInt(FaceNet.EMBEDDING_SIZE);
+
+        File target = installedGallery();
+        IOException error = assertImportFails(handWrittenBundle(embeddings.toByteArray()), target);
+
+        assertTrue(error.getMessage(), error.getMessage().contains("-1 x " + FaceNet.EMBEDDING_SIZE));
+        assertNull(FaceGallery.load(new File(target, FaceGallery.FILE_NAME)).get(FACULTY));
+    }
+
+    @Test
+    public void nameThatLeavesTheFacultyDirectory_isRejected() throws Exception {
+        ByteArrayOutputStream embeddings = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(embeddings);
+        out.writeUTF("../" + FACULTY);
+        out.writeInt(0);
+        out.writeInt(0);
+
+        IOException error = assertImportFails(handWrittenBundle(embeddings.toByteArray()), installedGallery());
+        assertTrue(error.getMessage(), error.getMessage().contains("Invalid name"));
+    }
+
+    private static byte[] export(FaceGallery gallery, File facultyRoot, boolean includeCrops,
+                                 GalleryBundle.ProgressListener progress) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GalleryBundle.export(gallery, facultyRoot, includeCrops, bytes, progress);
+        return bytes.toByteArray();
+    }
+
+    private static IOException assertImportFails(byte[] bundle, File target) {
+        try {
+            GalleryBundle.importBundle(new ByteArrayInputStream(bundle), target, null);
+        } catch (IOException e) {
+            assertFalse("staging is cleaned up", new File(target, ".bundle_import").exists());
+            return e;
+        }
+        throw new AssertionError("Bundle was accepted");
+    }
+
+    // A target directory that already holds someone else's gallery
+    private File installedGallery() throws IOException {
+        File target = folder.newFolder("installed");
+        FaceGallery existing = new FaceGallery(MODEL);
+        existing.put(NEWCOMER, Collections.singletonList(embedding(3)));
+        existing.save(new File(target, FaceGallery.FILE_NAME));
+        return target;
+    }
+
+    private static byte[] writeCrop(File facultyRoot, String name, String fileName) throws IOException {
+        File dir = new File(facultyRoot, name);
+        assertTrue(dir.mkdirs());
+        byte[] crop = new byte[10_000];
+        for (int i = 0; i < crop.length; i++) crop[i] = (byte) (i * 31);
+        Files.write(new File(dir, fileName).toPath(), crop);
+        return crop;
+    }
+
+    private static float[] embedding(int seed) {
+        float[] embedding = new float[FaceNet.EMBEDDING_SIZE];
+        for (int i = 0; i < embedding.length; i++) embedding[i] = (float) Math.sin(seed * 7 + i);
+        return embedding;
+    }
+
+    // A bundle with one hand-written embeddings chunk, in the layout GalleryBundle documents
+    private static byte[] handWrittenBundle(byte[] embeddingsChunk) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[]{'F', 'F', 'R', 'B'});
+        out.writeInt(1);
+        String manifest = "{\"formatVersion\":1,\"modelFingerprint\":\"" + MODEL + "\",\"faculty\":"
+                + "[{\"name\":\"" + FACULTY + "\",\"embeddings\":0,\"crops\":0}]}";
+        writeChunk(out, 1, manifest.getBytes(StandardCharsets.UTF_8));
+        writeChunk(out, 2, embeddingsChunk);
+        ByteArrayOutputStream end = new ByteArrayOutputStream();
+        new DataOutputStream(end).writeInt(3);
+        writeChunk(out, 4, end.toByteArray());
+        return bytes.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, int type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+}
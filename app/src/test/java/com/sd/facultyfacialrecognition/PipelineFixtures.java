@@ -0,0 +1,93 @@
+package com.sd.facultyfacialrecognition;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Synthetic camera input and a FaceNet stand-in shared by the pipeline tests: one rotated
+ * YUV frame with a textured "face", its detection, and a model that embeds a face as block
+ * means of its tensor, so the same face gives the same vector and a different one does
+ * not. The model runs behind FaceNet's own EmbeddingRunner.
+ */
+final class PipelineFixtures {
+
+    static final int WIDTH = 320;
+    static final int HEIGHT = 240;
+    static final int ROTATION = 90;
+    static final int EMBEDDING_SIZE = 128;
+    static final int FACE_TRACKING_ID = 7;
+
+    // FaceNet's model: each face is embedded as the means of blocks of its tensor
+    static final EmbeddingRunner.Model BLOCK_MEANS_MODEL = new EmbeddingRunner.Model() {
+        @Override
+        public void resizeBatch(int count) {
+        }
+
+        @Override
+        public void run(ByteBuffer input, float[][] output) {
+            int block = EmbeddingRunner.TENSOR_LENGTH / EMBEDDING_SIZE;
+            for (int i = 0; i < output.length; i++) {
+                int tensor = i * EmbeddingRunner.TENSOR_LENGTH;
+                for (int k = 0; k < EMBEDDING_SIZE; k++) {
+                    float sum = 0;
+                    for (int j = 0; j < block; j++) sum += input.getFloat(4 * (tensor + k * block + j));
+                    output[i][k] = sum / block;
+                }
+            }
+        }
+    };
+
+    private static final EmbeddingRunner SHARED_RUNNER = runner();
+
+    // The same path with new arrays for every result, for tests that keep them
+    static final FaceEmbedder BLOCK_MEANS = (tensors, count) -> {
+        float[][] embeddings = new float[count][];
+        synchronized (SHARED_RUNNER) {
+            float[][] results = SHARED_RUNNER.getEmbeddings(tensors, count);
+            for (int i = 0; i < count; i++) embeddings[i] = results[i] != null ? results[i].clone() : null;
+        }
+        return embeddings;
+    };
+
+    private PipelineFixtures() {
+    }
+
+    /** FaceNet's embedding path around the stand-in model, for up to FrameTask.MAX_FACES faces. */
+    static EmbeddingRunner runner() {
+        return new EmbeddingRunner(BLOCK_MEANS_MODEL, EMBEDDING_SIZE, FrameTask.MAX_FACES, (message, e) -> {
+            throw new AssertionError(message, e);
+        });
+    }
+
+    static YuvFrame syntheticFrame() {
+        ByteBuffer y = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y.put(row * WIDTH + col, (byte) ((col * 7 + row * 3 + (col * row) / 50) & 0xFF));
+            }
+        }
+        ByteBuffer u = ByteBuffer.allocate(WIDTH * HEIGHT / 4);
+        ByteBuffer v = ByteBuffer.allocate(WIDTH * HEIGHT / 4);
+        for (int i = 0; i < u.capacity(); i++) {
+            u.put(i, (byte) (100 + i % 40));
+            v.put(i, (byte) (150 - i % 30));
+        }
+        return new YuvFrame().set(y, WIDTH, u, v, WIDTH / 2, 1, WIDTH, HEIGHT, ROTATION);
+    }
+
+    /** The face in the synthetic frame, in upright coordinates. */
+    static DetectedFace face() {
+        DetectedFace face = new DetectedFace().setBox(60, 100, 170, 230).setEyes(90, 145, 140, 147);
+        face.trackingId = FACE_TRACKING_ID;
+        return face;
+    }
+
+    /** The normalized stand-in embedding of a face, sampled from the full frame. */
+    static float[] embeddingOf(YuvFrame frame, DetectedFace face) {
+        FaceAlignment alignment = new FaceAlignment().setFromDetection(face.left, face.top, face.right, face.bottom,
+                face.leftEyeX, face.leftEyeY, face.rightEyeX, face.rightEyeY);
+        float[] tensor = new float[EmbeddingRunner.TENSOR_LENGTH];
+        FaceTensorSampler.sample(frame, alignment, FloatBuffer.wrap(tensor));
+        return BLOCK_MEANS.getEmbeddings(new float[][]{tensor}, 1)[0];
+    }
+}
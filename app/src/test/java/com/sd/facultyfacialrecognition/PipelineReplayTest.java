@@ -0,0 +1,133 @@
+package com.sd.facultyfacialrecognition;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.sd.facultyfacialrecognition.PipelineFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * Records a synthetic session with SessionRecorder, then replays it through alignment,
+ * embedding, matching and the door decision with no camera. A deterministic stand-in
+ * (PipelineFixtures) replaces FaceNet so the test runs on the JVM.
+ */
+public class PipelineReplayTest {
+
+    private static final long FRAME_MILLIS = 66;
+    private static final String FACULTY = "Juan Dela Cruz";
+
+    private static byte[] recordSession(YuvFrame frame, int faceFrames) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionRecorder recorder = new SessionRecorder(bytes);
+        recorder.recordFrame(0, frame, Collections.<DetectedFace>emptyList());
+        List<DetectedFace> faces = Collections.singletonList(face());
+        for (int i = 1; i <= faceFrames; i++) {
+            recorder.recordFrame(i * FRAME_MILLIS, frame, faces);
+            // The writer drops frames when it lags; keep this recording complete
+            while (recorder.getFramesRecorded() < i + 1) Thread.sleep(1);
+        }
+        recorder.recordDecision(20 * FRAME_MILLIS, DoorStateMachine.Decision.CONFIRM_UNLOCK, FACULTY);
+        recorder.recordEvent(3000, ReplayDriver.YES, null);
+        recorder.recordDecision(3000, DoorStateMachine.Decision.UNLOCKED, FACULTY);
+        recorder.close();
+        assertTrue(recorder.awaitClosed(5000));
+        assertNull(recorder.getError());
+        assertEquals(0, recorder.getFramesDropped());
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void recording_roundTripsFramesEventsAndDecisions() throws Exception {
+        YuvFrame frame = syntheticFrame();
+        byte[] recording = recordSession(frame, 3);
+
+        List<String> records = new ArrayList<>();
+        SessionReader.read(new ByteArrayInputStream(recording), new SessionReader.Listener() {
+            @Override
+            public void onFrame(SessionReader.Frame recorded) {
+                assertEquals(ROTATION, recorded.rotationDegrees);
+                assertEquals(HEIGHT, recorded.uprightWidth);
+                assertEquals(WIDTH, recorded.uprightHeight);
+                if (recorded.faces.isEmpty()) {
+                    assertFalse(recorded.hasCrop());
+                } else {
+                    DetectedFace face = recorded.faces.get(0);
+                    assertEquals(FACE_TRACKING_ID, face.trackingId);
+                    assertEquals(60, face.left, 0);
+                    assertEquals(147, face.rightEyeY, 0);
+                    // The crop covers the face and stays far smaller than the frame
+                    assertTrue(recorded.offsetX <= face.left && recorded.offsetY <= face.top);
+                    assertTrue(recorded.cropWidth * recorded.cropHeight < WIDTH * HEIGHT);
+                }
+                records.add("frame " + recorded.timeMillis + " " + recorded.faces.size());
+            }
+
+            @Override
+            public void onEvent(ReplayDriver.Event event) {
+                records.add(event.toString());
+            }
+
+            @Override
+            public void onDecision(ReplayDriver.DecisionRecord decision) {
+                records.add(decision.toString());
+            }
+        });
+
+        assertEquals(7, records.size());
+        assertEquals("frame 0 0", records.get(0));
+        assertEquals("frame 198 1", records.get(3));
+        assertEquals("3000 yes", records.get(5));
+        assertEquals("3000 UNLOCKED " + FACULTY, records.get(6));
+    }
+
+    @Test
+    public void replay_reproducesTheRecordedDecisions() throws Exception {
+        YuvFrame frame = syntheticFrame();
+        byte[] recording = recordSession(frame, 20);
+
+        Map<String, float[]> gallery = new HashMap<>();
+        float[] enrolled = embeddingOf(frame, face());
+        gallery.put(FACULTY, enrolled);
+        float[] stranger = new float[enrolled.length];
+        for (int i = 0; i < stranger.length; i++) stranger[i] = i % 2 == 0 ? enrolled[i] : -enrolled[i];
+        gallery.put("Maria Santos", stranger);
+
+        PipelineReplay replay = new PipelineReplay(BLOCK_MEANS, gallery, 0.59f, new ReplayDriver(20, 10000, 10000, 5));
+        replay.run(new ByteArrayInputStream(recording));
+
+        assertEquals(21, replay.getFrames());
+        assertEquals(20, replay.getFacesEmbedded());
+        ReplayDriver.DecisionRecord confirm = replay.getDriver().first(DoorStateMachine.Decision.CONFIRM_UNLOCK);
+        assertNotNull(confirm);
+        assertEquals(FACULTY, confirm.facultyName);
+        assertEquals(20 * FRAME_MILLIS, confirm.timeMillis);
+        assertNotNull(replay.getDriver().first(DoorStateMachine.Decision.UNLOCKED));
+        assertEquals(2, replay.getRecordedDecisions().size());
+        assertTrue(replay.toString(), replay.matchesRecording());
+    }
+
+    @Test
+    public void replay_withAnotherGallery_deniesTheFace() throws Exception {
+        YuvFrame frame = syntheticFrame();
+        byte[] recording = recordSession(frame, 20);
+
+        Map<String, float[]> gallery = new HashMap<>();
+        float[] other = new float[EMBEDDING_SIZE];
+        other[0] = 1;
+        gallery.put("Maria Santos", other);
+
+        PipelineReplay replay = new PipelineReplay(BLOCK_MEANS, gallery, 0.59f, new ReplayDriver(20, 10000, 10000, 5));
+        replay.run(new ByteArrayInputStream(recording));
+
+        assertNotNull(replay.getDriver().first(DoorStateMachine.Decision.DENIED));
+        assertNull(replay.getDriver().first(DoorStateMachine.Decision.CONFIRM_UNLOCK));
+        assertFalse(replay.matchesRecording());
+    }
+}
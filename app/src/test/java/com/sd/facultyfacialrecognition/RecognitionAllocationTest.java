@@ -0,0 +1,207 @@
+package com.sd.facultyfacialrecognition;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.sd.facultyfacialrecognition.PipelineFixtures.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the Android-free part of the recognition path per frame with the device's own
+ * stages: FramePreparer (tracking, quality gate, landmarks, alignment and tensor sampling),
+ * FaceNet's EmbeddingRunner, FrameMatcher (matching, labels, the overlay hand-off and
+ * candidate selection) and the door decision, on synthetic frames. After a warm-up it
+ * measures the bytes this thread allocates per frame with the JVM's per-thread allocation
+ * counter and fails above the budget, so allocations cannot creep back into the steady
+ * state.
+ *
+ * The budget is the allocation.budget.bytes system property, 0 by default. Only what is
+ * Android or TFLite is replaced: the detector backends by one returning a fixed detection
+ * list, the FaceNet model by the block-means model of PipelineFixtures, and the overlay
+ * view by one that keeps the labels it is given.
+ */
+public class RecognitionAllocationTest {
+
+    private static final String BUDGET_PROPERTY = "allocation.budget.bytes";
+    private static final long FRAME_MILLIS = 33;
+    private static final int WARMUP_FRAMES = 2000;
+    // Windows of frames measured; the quietest one counts, so one-off allocations by class
+    // loading or the JIT do not fail the test but anything repeating per frame does
+    private static final int WINDOWS = 5;
+    private static final int WINDOW_FRAMES = 200;
+    private static final String FACULTY = "Juan Dela Cruz";
+
+    private final YuvFrame frame = syntheticFrame();
+    private final List<DetectedFace> detections = new ArrayList<>();
+    private final DetectedFace detection = new DetectedFace();
+    // Tracking and landmark tier alike: whatever is in view, eyes included
+    private final FaceDetectorBackend detector = new FaceDetectorBackend() {
+        @Override
+        public List<DetectedFace> detect(YuvFrame frame, float left, float top, float right, float bottom) {
+            return detections;
+        }
+
+        @Override
+        public List<DetectedFace> detect(int[] argb, int width, int height) {
+            return detections;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private final FaceQualityGate qualityGate = new FaceQualityGate(new FaceQualityGate.Thresholds());
+    private final FramePreparer preparer = new FramePreparer(new FaceTracker(3, 0.5f, 2),
+            new DetectionScheduler(detector, detector, DetectionRoi.wholeFrame(15), 66), qualityGate,
+            new MotionGate(6f, 1000, 3000), new PipelineMetrics());
+    private final FrameTask task = new FrameTask();
+    private final EmbeddingRunner embedder = runner();
+    private final FaceMatcher matcher = new FaceMatcher();
+    private final String[] overlayLabels = new String[FrameTask.MAX_FACES];
+    private int overlayFaces;
+    private final FrameMatcher.Overlay overlay = new FrameMatcher.Overlay() {
+        @Override
+        public void beginFrame(int imageWidth, int imageHeight) {
+            overlayFaces = 0;
+        }
+
+        @Override
+        public void addFace(int trackingId, float left, float top, float right, float bottom, String label) {
+            overlayLabels[overlayFaces++] = label;
+        }
+
+        @Override
+        public void endFrame() {
+        }
+    };
+    private long matchesSeen;
+    private final FrameMatcher frameMatcher = new FrameMatcher(matcher, 0.59f, overlay, result -> matchesSeen++);
+
+    private long nowMillis = 1_000;
+    private final DoorStateMachine door = new DoorStateMachine(() -> nowMillis, 20, 10_000, 10_000, 5);
+    private DoorStateMachine.Decision lastDecision;
+    private long framesDecided;
+    private final FrameMatcher.DecisionListener decisionListener = (candidate, captureNanos, queuedNanos) -> {
+        door.onFrame(candidate);
+        framesDecided++;
+    };
+
+    @Before
+    public void setUp() {
+        door.setListener(new DoorStateMachine.Listener() {
+            @Override
+            public void onDecision(DoorStateMachine.Decision decision, String facultyName, long timeMillis) {
+                lastDecision = decision;
+            }
+
+            @Override
+            public void onUiState(String status, String countdown, boolean awaitingConfirmation) {
+            }
+        });
+        door.reset();
+    }
+
+    @Test
+    public void emptyDoorwayStaysWithinBudget() {
+        matcher.setGallery(Collections.singletonMap(FACULTY, embeddingOf(frame, face())));
+        assertWithinBudget("empty doorway", () -> runFrame(false));
+        assertEquals(DoorStateMachine.SCANNING, door.getStableMatchName());
+    }
+
+    @Test
+    public void unknownFaceStaysWithinBudget() {
+        // Someone else is enrolled: every embedded frame is an Unknown vote
+        float[] other = embeddingOf(frame, face());
+        for (int i = 0; i < other.length; i += 2) other[i] = -other[i];
+        matcher.setGallery(Collections.singletonMap("Someone Else", other));
+
+        assertWithinBudget("unknown face", () -> runFrame(true));
+        assertTrue(qualityGate.getCount(FaceQualityGate.Verdict.OK) > 0);
+        assertEquals(DoorStateMachine.Decision.DENIED, lastDecision);
+        assertEquals(DoorStateMachine.UNKNOWN, overlayLabels[0]);
+    }
+
+    @Test
+    public void unlockedDoorStaysWithinBudget() {
+        Map<String, float[]> gallery = new HashMap<>();
+        gallery.put(FACULTY, embeddingOf(frame, face()));
+        matcher.setGallery(gallery);
+
+        // Recognised, confirmed and unlocked before measuring; then the face stays in view
+        for (int i = 0; i < 100 && !door.isAwaitingConfirmation(); i++) runFrame(true);
+        assertEquals(DoorStateMachine.Decision.CONFIRM_UNLOCK, lastDecision);
+        door.confirmYes();
+        assertEquals(DoorStateMachine.Decision.UNLOCKED, lastDecision);
+
+        assertWithinBudget("unlocked door", () -> runFrame(true));
+        assertFalse(door.isLocked());
+        assertEquals(FACULTY, door.getAuthorizedUnlocker());
+        assertTrue(overlayLabels[0], overlayLabels[0].startsWith(FACULTY + " ("));
+        assertTrue(matchesSeen > 0);
+    }
+
+    private void assertWithinBudget(String scenario, Runnable step) {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        long budget = Long.getLong(BUDGET_PROPERTY, 0);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) step.run();
+        long decidedBefore = framesDecided;
+
+        long threadId = Thread.currentThread().getId();
+        // What reading the counter itself costs
+        long overhead = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+        long least = Long.MAX_VALUE;
+        for (int window = 0; window < WINDOWS; window++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < WINDOW_FRAMES; i++) step.run();
+            least = Math.min(least, threads.getThreadAllocatedBytes(threadId) - before - overhead);
+        }
+
+        assertTrue(scenario + ": no frame reached the door", framesDecided > decidedBefore);
+        double perFrame = Math.max(0, least) / (double) WINDOW_FRAMES;
+        assertTrue(String.format("%s: %.1f bytes allocated per frame (%d over %d frames), budget %d",
+                        scenario, perFrame, least, WINDOW_FRAMES, budget),
+                perFrame <= budget);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    // One camera frame, as analyzeFrame, embedFrame and matchAndPublish run it, then the
+    // main thread's drain of the decisions
+    private void runFrame(boolean faceInView) {
+        nowMillis += FRAME_MILLIS;
+        if (door.nextTimerMillis() <= nowMillis) door.tick();
+
+        detections.clear();
+        if (faceInView) detections.add(moveDetection());
+        try {
+            preparer.prepare(frame, task, WIDTH, HEIGHT, true, nowMillis);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+
+        if (task.batchCount > 0) task.setEmbeddings(embedder.getEmbeddings(task.batch, task.batchCount));
+        frameMatcher.process(task);
+        frameMatcher.drainDecisions(decisionListener);
+    }
+
+    // The detector's box wobbles by a pixel, as a real one does
+    private DetectedFace moveDetection() {
+        float wobble = (nowMillis / FRAME_MILLIS) % 2;
+        return detection.setBox(60 + wobble, 100, 170 + wobble, 230).setEyes(90 + wobble, 145, 140 + wobble, 147);
+    }
+}